@@ -0,0 +1,121 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Bump arena for objects allocated during one method activation. ExecutionEnvironment
+// hands an arena to each activation while arena allocation is on, allocates into it
+// until the method returns and then resets it in one step. An object that escapes
+// (returned, stored in a global or into an object outside this arena) is copied to the
+// global heap first, and its arena slot forwards to the copy for the rest of the
+// activation.
+//
+// Arena handles are negative so they never collide with HandleTable handles: bit 63,
+// then the arena id, an epoch bumped on every reset (so handles from an earlier
+// activation read as stale), and the slot + 1. An arena belongs to the thread running
+// its activation; the collector only reads it to find global objects it refers to.
+final class ActivationArena {
+  private static final int INDEX_BITS = 24;
+  private static final int EPOCH_BITS = 16;
+  private static final int ID_BITS = 63 - INDEX_BITS - EPOCH_BITS;
+  static final int MAX_OBJECTS = (1 << INDEX_BITS) - 1;
+  static final int MAX_ARENAS = 1 << ID_BITS;
+
+  final int id;
+  private int epoch;
+  private volatile Object[] values = new Object[32];
+  // Global handle an escaped object was promoted to, 0 while it is arena-local
+  private volatile long[] forwards = new long[32];
+  private volatile int count;
+
+  ActivationArena(int id) {
+    this.id = id;
+  }
+
+  static boolean isArenaHandle(long handle) {
+    return handle < 0;
+  }
+
+  static int arenaIdOf(long handle) {
+    return (int) ((handle >>> (INDEX_BITS + EPOCH_BITS)) & (MAX_ARENAS - 1));
+  }
+
+  boolean hasRoom() {
+    return count < MAX_OBJECTS;
+  }
+
+  long allocate(Object value) {
+    int index = count;
+    if (index == values.length) {
+      values = Arrays.copyOf(values, index * 2);
+      forwards = Arrays.copyOf(forwards, index * 2);
+    }
+    values[index] = value;
+    forwards[index] = 0;
+    count = index + 1;
+    return Long.MIN_VALUE | (long) id << (INDEX_BITS + EPOCH_BITS) | (long) epoch << INDEX_BITS | (index + 1);
+  }
+
+  // True if the handle was allocated in this arena since its last reset
+  boolean owns(long handle) {
+    if (!isArenaHandle(handle) || arenaIdOf(handle) != id ||
+        ((handle >>> INDEX_BITS) & ((1 << EPOCH_BITS) - 1)) != epoch) {
+      return false;
+    }
+    int index = indexOf(handle);
+    return index >= 0 && index < count;
+  }
+
+  Object get(long handle) {
+    return values[indexOf(handle)];
+  }
+
+  void set(long handle, Object value) {
+    values[indexOf(handle)] = value;
+  }
+
+  long forwardOf(long handle) {
+    return forwards[indexOf(handle)];
+  }
+
+  void forward(long handle, long global) {
+    forwards[indexOf(handle)] = global;
+  }
+
+  int size() {
+    return count;
+  }
+
+  // Drops every object at once; handles into the arena become stale
+  void reset() {
+    Arrays.fill(values, 0, count, null);
+    count = 0;
+    epoch = (epoch + 1) & ((1 << EPOCH_BITS) - 1);
+  }
+
+  // For root scanning: values of objects still local to the arena
+  void forEachValue(Consumer<Object> action) {
+    Object[] current = values;
+    int limit = Math.min(count, current.length);
+    for (int i = 0; i < limit; i++) {
+      Object value = current[i];
+      if (value != null) {
+        action.accept(value);
+      }
+    }
+  }
+
+  // For root scanning: heap handles of the objects promoted so far, which the activation
+  // may not have stored anywhere yet
+  void forEachForward(Consumer<Long> action) {
+    long[] current = forwards;
+    int limit = Math.min(count, current.length);
+    for (int i = 0; i < limit; i++) {
+      if (current[i] != 0) {
+        action.accept(current[i]);
+      }
+    }
+  }
+
+  private static int indexOf(long handle) {
+    return (int) (handle & MAX_OBJECTS) - 1;
+  }
+}
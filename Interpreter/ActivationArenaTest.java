@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActivationArenaTest {
+
+    @Test
+    void testActivationArenaPromotesOnlyEscapingObjects() {
+        ExecutionEnvironment env = new ExecutionEnvironment(1 << 20, Integer.MAX_VALUE);
+        long[] leaked = new long[1];
+        env.registerMethod("summarize", new MethodNode("summarize", new String[] { "int" }, "long") {
+            @Override
+            public Object execute(ExecutionEnvironment env, Object... args) {
+                int n = (Integer) args[0];
+                int sum = 0;
+                for (int i = 0; i < n; i++) {
+                    long temp = env.allocateObject(i);
+                    sum += (Integer) env.getObject(temp);
+                }
+                long label = env.allocateObject("sum");
+                long pair = env.allocateObject(new Object[] { label, env.allocateObject(sum) });
+                env.setGlobalVariable("last", env.allocateObject(new Object[] { label }));
+                leaked[0] = env.allocateObject("local");
+                return pair;
+            }
+        });
+        try {
+            env.setArenaAllocation(true);
+            long pair = (Long) env.executeMethod("summarize", 100);
+            // The result and the global keep label, the pair, the sum and the global's array
+            assertTrue(pair > 0);
+            assertEquals(4, env.getHeapObjectCount());
+            assertEquals(4, env.getPromotionCount());
+            assertEquals(105, env.getArenaAllocationCount());
+            Object[] fields = (Object[]) env.getObject(pair);
+            assertEquals("sum", env.getObject((Long) fields[0]));
+            assertEquals(4950, env.getObject((Long) fields[1]));
+            Object[] last = (Object[]) env.getGlobalVariable("last");
+            assertEquals(fields[0], last[0]);
+            // Handles that escaped without the environment seeing it are dead, even after reuse
+            assertEquals(null, env.getObject(leaked[0]));
+            long first = leaked[0];
+            env.executeMethod("summarize", 1);
+            assertEquals(null, env.getObject(first));
+
+            // Promoted objects are ordinary heap objects: the global keeps its label alive
+            env.collectGarbage();
+            last = (Object[]) env.getGlobalVariable("last");
+            assertEquals("sum", env.getObject((Long) last[0]));
+            assertEquals(2, env.getHeapObjectCount());
+
+            env.setArenaAllocation(false);
+            env.executeMethod("summarize", 100);
+            assertTrue(env.getHeapObjectCount() > 100);
+        } finally {
+            env.shutdown();
+        }
+    }
+
+    @Test
+    void testPromotedObjectsStayRootedUntilTheActivationReturns() {
+        ExecutionEnvironment env = new ExecutionEnvironment(1 << 20, Integer.MAX_VALUE);
+        env.registerMethod("stash", new MethodNode("stash", new String[0], "String") {
+            @Override
+            public Object execute(ExecutionEnvironment env, Object... args) {
+                long local = env.allocateObject("kept");
+                // Promoted by the store; once the global is cleared only the forward refers to it
+                env.setGlobalVariable("stash", local);
+                env.setGlobalVariable("stash", 0L);
+                env.collectGarbage();
+                return env.getObject(local);
+            }
+        });
+        try {
+            env.setArenaAllocation(true);
+            assertEquals("kept", env.executeMethod("stash"));
+            assertEquals(1, env.getPromotionCount());
+            env.collectGarbage();
+            assertEquals(0, env.getHeapObjectCount());
+        } finally {
+            env.shutdown();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Allocation-rate limit for the scripts run through the methods it is attached to
+// (MethodNode.setAllocationQuota()). A token bucket of bytes: it refills at
+// bytesPerSecond up to burstBytes, and every object allocated or stored during an
+// activation is charged its TypeSystem.shallowSize(). One quota can be shared by all
+// the methods of a tenant. When the bucket runs dry a THROTTLE quota puts the
+// allocating thread to sleep until the rate is back under the limit, and a REJECT quota
+// fails the allocation with an exception instead.
+public final class AllocationQuota {
+  public static final int THROTTLE = 0;
+  public static final int REJECT = 1;
+
+  private final long bytesPerSecond;
+  private final long burstBytes;
+  private final int policy;
+  // Bytes left in the bucket; negative while throttled threads owe the difference
+  private long available;
+  private long refilledAt = System.nanoTime();
+  private final LongAdder chargedBytes = new LongAdder();
+  private final LongAdder throttledNanos = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+
+  public AllocationQuota(long bytesPerSecond, long burstBytes, int policy) {
+    if (bytesPerSecond <= 0 || burstBytes <= 0) {
+      throw new IllegalArgumentException("Quota rate and burst must be positive: " + bytesPerSecond + ", " +
+          burstBytes);
+    }
+    if (policy != THROTTLE && policy != REJECT) {
+      throw new IllegalArgumentException("Unknown quota policy: " + policy);
+    }
+    this.bytesPerSecond = bytesPerSecond;
+    this.burstBytes = burstBytes;
+    this.policy = policy;
+    this.available = burstBytes;
+  }
+
+  // Takes bytes from the bucket, waiting or throwing per the policy if it is short
+  void charge(int bytes) {
+    long owed;
+    synchronized (this) {
+      refill();
+      if (bytes <= available) {
+        available -= bytes;
+        chargedBytes.add(bytes);
+        return;
+      }
+      if (policy == REJECT) {
+        rejections.increment();
+        throw new RuntimeException("Allocation quota exceeded: " + bytes + " bytes requested, " +
+            Math.max(available, 0) + " of " + burstBytes + " available at " + bytesPerSecond + " bytes/s");
+      }
+      // The bucket goes into debt, and the caller sleeps until the debt is refilled
+      available -= bytes;
+      owed = -available;
+      chargedBytes.add(bytes);
+    }
+    long nanos = owed * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+    long start = System.nanoTime();
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while throttled by an allocation quota", e);
+    } finally {
+      throttledNanos.add(System.nanoTime() - start);
+    }
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    // In doubles, so a long idle period cannot overflow
+    double refilled = (now - refilledAt) * (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1);
+    if (refilled >= burstBytes - available) {
+      available = burstBytes;
+      refilledAt = now;
+    } else if (refilled >= 1) {
+      available += (long) refilled;
+      // The fraction of a byte carries over to the next refill
+      refilledAt += (long) ((long) refilled * (double) TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+    }
+  }
+
+  public long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  public long getBurstBytes() {
+    return burstBytes;
+  }
+
+  public int getPolicy() {
+    return policy;
+  }
+
+  // Bytes charged so far, throttled allocations included
+  public long getChargedBytes() {
+    return chargedBytes.sum();
+  }
+
+  public long getThrottledNanos() {
+    return throttledNanos.sum();
+  }
+
+  public long getRejectionCount() {
+    return rejections.sum();
+  }
+}
@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+class AllocationQuotaTest {
+
+    @Test
+    void testHeapBytesAndAllocationQuotas() {
+        ExecutionEnvironment env = new ExecutionEnvironment(4096, Integer.MAX_VALUE);
+        try {
+            // Header plus contents, padded to 8 bytes
+            long bytes = env.allocateObject(new byte[100]);
+            env.allocateObject("abc");
+            assertEquals(120 + 24, env.getHeapBytes());
+            env.setObject(bytes, new byte[1000]);
+            assertEquals(1016 + 24, env.getHeapBytes());
+            env.verifyMemoryUsage();
+            // Few objects, but more bytes than the budget
+            long big = env.allocateObject(String.join("", Collections.nCopies(3000, "x")));
+            assertThrows(RuntimeException.class, env::verifyMemoryUsage);
+            env.setGlobalVariable("big", big);
+            env.collectGarbage();
+            assertEquals(3016, env.getHeapBytes());
+            assertEquals(1, env.getHeapObjectCount());
+
+            MethodNode allocator = new MethodNode("allocator", new String[] { "int" }, "void") {
+                @Override
+                public Object execute(ExecutionEnvironment env, Object... args) {
+                    for (int i = 0; i < (Integer) args[0]; i++) {
+                        env.allocateObject(new byte[104]);
+                    }
+                    return null;
+                }
+            };
+            env.registerMethod("allocator", allocator);
+            AllocationQuota reject = new AllocationQuota(1, 1000, AllocationQuota.REJECT);
+            allocator.setAllocationQuota(reject);
+            RuntimeException e = assertThrows(RuntimeException.class, () -> env.executeMethod("allocator", 20));
+            assertTrue(e.getMessage().startsWith("Allocation quota exceeded"));
+            assertEquals(1, reject.getRejectionCount());
+            assertEquals(960, reject.getChargedBytes());
+            // Allocations outside the activation are not charged
+            env.allocateObject(new byte[104]);
+            assertEquals(960, reject.getChargedBytes());
+
+            AllocationQuota throttle = new AllocationQuota(100_000, 1000, AllocationQuota.THROTTLE);
+            allocator.setAllocationQuota(throttle);
+            env.executeMethod("allocator", 25);
+            assertEquals(3000, throttle.getChargedBytes());
+            // 2000 bytes over the burst at 100 KB/s
+            assertTrue(throttle.getThrottledNanos() >= TimeUnit.MILLISECONDS.toNanos(15),
+                    "throttled " + throttle.getThrottledNanos() + " ns");
+        } finally {
+            env.shutdown();
+        }
+    }
+
+    @Test
+    void testQuotasApplyToCallHandleCalls() {
+        Interpreter interpreter = new Interpreter();
+        try {
+            ClassNode pool = new ClassNode("Pool");
+            MethodNode allocator = new MethodNode("allocate", new String[] { "int" }, "int") {
+                @Override
+                public Object execute(ExecutionEnvironment env, Object... args) {
+                    return executeInt(env, (Integer) args[0]);
+                }
+
+                @Override
+                public int executeInt(ExecutionEnvironment env, int count) {
+                    for (int i = 0; i < count; i++) {
+                        env.allocateObject(new byte[104]);
+                    }
+                    return count;
+                }
+            };
+            pool.addMethod(allocator);
+            interpreter.loadClass(pool);
+            CallHandle allocate = interpreter.lookup("Pool", "allocate");
+
+            AllocationQuota single = new AllocationQuota(1, 1000, AllocationQuota.REJECT);
+            allocator.setAllocationQuota(single);
+            RuntimeException e = assertThrows(RuntimeException.class, () -> allocate.invokeInt(20));
+            assertTrue(e.getMessage().startsWith("Allocation quota exceeded"));
+            assertEquals(1, single.getRejectionCount());
+            assertEquals(960, single.getChargedBytes());
+
+            // The quota spans the batch: the second element runs out
+            AllocationQuota batch = new AllocationQuota(1, 1000, AllocationQuota.REJECT);
+            allocator.setAllocationQuota(batch);
+            int[] results = new int[2];
+            assertThrows(RuntimeException.class, () -> allocate.invokeIntBatch(new int[] { 5, 5 }, results));
+            assertEquals(5, results[0]);
+            assertEquals(1, batch.getRejectionCount());
+            assertEquals(960, batch.getChargedBytes());
+        } finally {
+            interpreter.shutdown();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Optimization pass between parsing and execution: folds constant subtrees, drops
+// arithmetic identities (x + 0, x - 0, x * 1, x / 1, x * 0) and unwraps constant
+// deadline bodies. Every rewrite keeps what evaluate() on the original tree would do,
+// including int overflow: constants are folded by evaluating them, a subtree whose
+// evaluation throws (division by zero, a non-int operand) is left for run time, and
+// an operand dropped by an identity is still checked to be an Integer.
+public final class AstOptimizer {
+  private AstOptimizer() {
+  }
+
+  public static List<Parser.Node> optimize(List<Parser.Node> statements) {
+    List<Parser.Node> optimized = new ArrayList<>(statements.size());
+    for (Parser.Node statement : statements) {
+      optimized.add(optimize(statement));
+    }
+    return optimized;
+  }
+
+  public static Parser.Node optimize(Parser.Node node) {
+    if (node instanceof Parser.BinaryNode) {
+      return optimizeBinary((Parser.BinaryNode) node);
+    }
+    if (node instanceof Parser.LogicalNode) {
+      return optimizeLogical((Parser.LogicalNode) node);
+    }
+    if (node instanceof Parser.UnaryNode) {
+      return optimizeUnary((Parser.UnaryNode) node);
+    }
+    if (node instanceof Parser.DeadlineNode) {
+      return optimizeDeadline((Parser.DeadlineNode) node);
+    }
+    if (node instanceof Parser.IntCheckNode) {
+      Parser.IntCheckNode check = (Parser.IntCheckNode) node;
+      Parser.Node operand = optimize(check.getOperand());
+      return operand == check.getOperand() ? node : new Parser.IntCheckNode(operand, check.getResult());
+    }
+    if (node instanceof EmbeddedLoopNode) {
+      EmbeddedLoopNode loop = (EmbeddedLoopNode) node;
+      Parser.Node condition = optimize(loop.getCondition());
+      Parser.Node body = optimize(loop.getBody());
+      if (condition == loop.getCondition() && body == loop.getBody()) {
+        return node;
+      }
+      return new EmbeddedLoopNode(condition, body, loop.getMaxIterations(), loop.getTimeoutMs());
+    }
+    return node;
+  }
+
+  private static Parser.Node optimizeBinary(Parser.BinaryNode node) {
+    Parser.Node left = optimize(node.getLeft());
+    Parser.Node right = optimize(node.getRight());
+    String operator = node.getOperator();
+    Parser.Node rebuilt = left == node.getLeft() && right == node.getRight()
+        ? node
+        : new Parser.BinaryNode(left, operator, right);
+    if (isConstant(left) && isConstant(right)) {
+      return fold(rebuilt);
+    }
+
+    switch (operator) {
+      case "+":
+        if (isInt(left, 0)) {
+          return asInt(right);
+        }
+        if (isInt(right, 0)) {
+          return asInt(left);
+        }
+        break;
+      case "-":
+        if (isInt(right, 0)) {
+          return asInt(left);
+        }
+        break;
+      case "*":
+        if (isInt(right, 1)) {
+          return asInt(left);
+        }
+        if (isInt(left, 1)) {
+          return asInt(right);
+        }
+        if (isInt(right, 0)) {
+          return new Parser.IntCheckNode(left, 0);
+        }
+        if (isInt(left, 0)) {
+          return new Parser.IntCheckNode(right, 0);
+        }
+        break;
+      case "/":
+        if (isInt(right, 1)) {
+          return asInt(left);
+        }
+        break;
+      default:
+        break;
+    }
+    return rebuilt;
+  }
+
+  private static Parser.Node optimizeLogical(Parser.LogicalNode node) {
+    Parser.Node left = optimize(node.getLeft());
+    Parser.Node right = optimize(node.getRight());
+    Parser.Node rebuilt = left == node.getLeft() && right == node.getRight()
+        ? node
+        : new Parser.LogicalNode(left, node.getOperator(), right);
+    if (isConstant(left) && isConstant(right)) {
+      return fold(rebuilt);
+    }
+    if (left instanceof Parser.BooleanNode) {
+      boolean value = ((Parser.BooleanNode) left).getValue();
+      boolean decides = node.getOperator().equals("&&") ? !value : value;
+      if (decides) {
+        // Short-circuits before the right side runs
+        return left;
+      }
+      if (right.isBooleanTyped()) {
+        return right;
+      }
+    }
+    return rebuilt;
+  }
+
+  private static Parser.Node optimizeUnary(Parser.UnaryNode node) {
+    Parser.Node operand = optimize(node.getOperand());
+    Parser.Node rebuilt = operand == node.getOperand() ? node : new Parser.UnaryNode(node.getOperator(), operand);
+    if (isConstant(operand)) {
+      return fold(rebuilt);
+    }
+    // -(-x) == x for every int, including MIN_VALUE
+    if (node.getOperator().equals("-") && operand instanceof Parser.UnaryNode) {
+      Parser.UnaryNode inner = (Parser.UnaryNode) operand;
+      if (inner.getOperator().equals("-")) {
+        return asInt(inner.getOperand());
+      }
+    }
+    return rebuilt;
+  }
+
+  private static Parser.Node optimizeDeadline(Parser.DeadlineNode node) {
+    Parser.Node body = optimize(node.getBody());
+    // A constant takes no measurable time, but a negative budget always fails
+    if (isConstant(body) && node.getDeadlineMs() >= 0) {
+      return body;
+    }
+    return body == node.getBody() ? node : new Parser.DeadlineNode(node.getDeadlineMs(), body);
+  }
+
+  // Constant value of a subtree with constant operands, or the subtree itself if
+  // evaluating it throws, so the error still surfaces when the program runs
+  private static Parser.Node fold(Parser.Node node) {
+    Object value;
+    try {
+      value = node.evaluate();
+    } catch (RuntimeException e) {
+      return node;
+    }
+    if (value instanceof Integer) {
+      return new Parser.NumberNode((Integer) value);
+    }
+    if (value instanceof Boolean) {
+      return new Parser.BooleanNode((Boolean) value);
+    }
+    return node;
+  }
+
+  // Operand of a dropped operation, checked to be an Integer unless it always is one
+  private static Parser.Node asInt(Parser.Node node) {
+    return node.isIntTyped() ? node : new Parser.IntCheckNode(node, null);
+  }
+
+  private static boolean isConstant(Parser.Node node) {
+    return node instanceof Parser.NumberNode || node instanceof Parser.BooleanNode;
+  }
+
+  private static boolean isInt(Parser.Node node, int value) {
+    return node instanceof Parser.NumberNode && ((Parser.NumberNode) node).getValue() == value;
+  }
+}
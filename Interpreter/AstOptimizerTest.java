@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+class AstOptimizerTest {
+
+    @Test
+    void testOptimizerFoldsConstants() {
+        assertTrue(optimized("2 * 3 + 4") instanceof Parser.NumberNode);
+        assertEquals(10, optimized("2 * 3 + 4").evaluate());
+        assertEquals(Integer.MIN_VALUE, optimized("2147483647 + 1").evaluate());
+        assertTrue(optimized("1 <= 2 == 2 >= 1") instanceof Parser.BooleanNode);
+        assertTrue(optimized("1 == 1 || a >= 2") instanceof Parser.BooleanNode);
+        // Folding would throw, so the division stays and fails at run time as before
+        assertTrue(optimized("1 / 0") instanceof Parser.BinaryNode);
+        assertTrue(optimized("a * 1") instanceof Parser.IntCheckNode);
+        assertTrue(optimized("(a + 2) * 1 + 0") instanceof Parser.BinaryNode);
+    }
+
+    @Test
+    void testOptimizerMatchesUnoptimizedEvaluation() {
+        Random random = new Random(13);
+        for (int i = 0; i < 20000; i++) {
+            String source = TestPrograms.randomExpression(random, 4);
+            Parser.Node node = new PrattParser(new Lexers(source).tokenizeToBuffer()).parse();
+            Parser.Node deadline = new Parser.DeadlineNode(1000, node);
+            assertEquals(TestPrograms.outcome(node), TestPrograms.outcome(AstOptimizer.optimize(node)), "source: " + source);
+            assertEquals(TestPrograms.outcome(deadline), TestPrograms.outcome(AstOptimizer.optimize(deadline)), "source: " + source);
+        }
+    }
+
+    private static Parser.Node optimized(String source) {
+        return AstOptimizer.optimize(new PrattParser(new Lexers(source).tokenizeToBuffer()).parse());
+    }
+}
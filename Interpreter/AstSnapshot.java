@@ -0,0 +1,482 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+// Binary snapshot of a parsed program, written at build time and memory-mapped at boot.
+// Layout (big-endian):
+//   header   magic, version, CRC32 of everything after the header, string/statement/class/slot counts
+//   index    absolute offsets of every string, statement tree and class record, then the
+//            name (string index) of every variable slot
+//   strings  length + UTF-16 chars; identifiers are re-interned on load, since Symbols
+//            ids are only stable within one process
+//   classes  name, superclass, fields (name, type), method signatures
+//   nodes    one preorder-encoded tree per statement; variables carry their name and slot
+// Opening a snapshot only checks the header and checksum; a statement tree, string or
+// class record is decoded the first time it is used. Method bodies are Java code, so
+// only their signatures are stored and the caller binds the implementations. Variable
+// slots are assigned afresh when writing, so statements parsed with different scopes
+// share one frame layout in the snapshot.
+public final class AstSnapshot {
+  private static final int MAGIC = 0x45415354; // "EAST"
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 32;
+  private static final int NO_STRING = -1;
+
+  private static final byte NUMBER = 1;
+  private static final byte VARIABLE = 2;
+  private static final byte BINARY = 3;
+  private static final byte LOGICAL = 4;
+  private static final byte UNARY = 5;
+  private static final byte DEADLINE = 6;
+  private static final byte LOOP = 7;
+  private static final byte BOOLEAN = 8;
+  private static final byte INT_CHECK = 9;
+
+  private final ByteBuffer data;
+  private final int stringCount;
+  private final int statementCount;
+  private final int classCount;
+  private final int slotCount;
+  private final AtomicReferenceArray<String> strings;
+  private final AtomicReferenceArray<Parser.Node> statements;
+  private final AtomicReferenceArray<ClassNode> classes;
+  private volatile Scope scope;
+
+  private AstSnapshot(ByteBuffer data) {
+    if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+      throw new RuntimeException("Not an AST snapshot");
+    }
+    int version = data.getInt(4);
+    if (version != VERSION) {
+      throw new RuntimeException("Unsupported AST snapshot version " + version + ", expected " + VERSION);
+    }
+    CRC32 crc = new CRC32();
+    ByteBuffer payload = data.duplicate();
+    payload.position(HEADER_SIZE);
+    crc.update(payload);
+    if (crc.getValue() != data.getLong(8)) {
+      throw new RuntimeException("AST snapshot checksum mismatch");
+    }
+    this.data = data;
+    this.stringCount = data.getInt(16);
+    this.statementCount = data.getInt(20);
+    this.classCount = data.getInt(24);
+    this.slotCount = data.getInt(28);
+    this.strings = new AtomicReferenceArray<>(stringCount);
+    this.statements = new AtomicReferenceArray<>(statementCount);
+    this.classes = new AtomicReferenceArray<>(classCount);
+  }
+
+  public static AstSnapshot open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new AstSnapshot(mapped);
+    }
+  }
+
+  public static AstSnapshot fromBytes(byte[] bytes) {
+    return new AstSnapshot(ByteBuffer.wrap(bytes));
+  }
+
+  public int statementCount() {
+    return statementCount;
+  }
+
+  public Parser.Node getStatement(int index) {
+    Parser.Node node = statements.get(index);
+    if (node == null) {
+      Reader reader = new Reader(offsetAt(stringCount + index));
+      node = reader.node();
+      statements.compareAndSet(index, null, node);
+      node = statements.get(index);
+    }
+    return node;
+  }
+
+  // Statements decoded one by one as they are first read from the list
+  public List<Parser.Node> getStatements() {
+    return new AbstractList<Parser.Node>() {
+      @Override
+      public Parser.Node get(int index) {
+        return getStatement(index);
+      }
+
+      @Override
+      public int size() {
+        return statementCount;
+      }
+    };
+  }
+
+  // Frame layout of the statements, built from the slot names on first use
+  public Scope getScope() {
+    Scope resolved = scope;
+    if (resolved == null) {
+      synchronized (this) {
+        resolved = scope;
+        if (resolved == null) {
+          resolved = new Scope();
+          int first = stringCount + statementCount + classCount;
+          for (int slot = 0; slot < slotCount; slot++) {
+            resolved.resolve(Symbols.GLOBAL.intern(stringAt(offsetAt(first + slot))));
+          }
+          scope = resolved;
+        }
+      }
+    }
+    return resolved;
+  }
+
+  public int classCount() {
+    return classCount;
+  }
+
+  // Class with its fields and superclass; methods are listed by getMethodSignatures
+  public ClassNode getClassNode(int index) {
+    ClassNode clazz = classes.get(index);
+    if (clazz == null) {
+      Reader reader = new Reader(offsetAt(stringCount + statementCount + index));
+      clazz = new ClassNode(reader.string());
+      String superClassName = reader.optionalString();
+      if (superClassName != null) {
+        clazz.setSuperClass(superClassName);
+      }
+      int fieldCount = reader.nextInt();
+      for (int i = 0; i < fieldCount; i++) {
+        clazz.addField(reader.string(), reader.string());
+      }
+      classes.compareAndSet(index, null, clazz);
+      clazz = classes.get(index);
+    }
+    return clazz;
+  }
+
+  public List<MethodSignature> getMethodSignatures(int classIndex) {
+    Reader reader = new Reader(offsetAt(stringCount + statementCount + classIndex));
+    reader.string();
+    reader.optionalString();
+    int fieldCount = reader.nextInt();
+    reader.skip(fieldCount * 8);
+    int methodCount = reader.nextInt();
+    List<MethodSignature> methods = new ArrayList<>(methodCount);
+    for (int i = 0; i < methodCount; i++) {
+      String name = reader.string();
+      String returnType = reader.string();
+      String[] parameterTypes = new String[reader.nextInt()];
+      for (int p = 0; p < parameterTypes.length; p++) {
+        parameterTypes[p] = reader.string();
+      }
+      methods.add(new MethodSignature(name, parameterTypes, returnType));
+    }
+    return methods;
+  }
+
+  private int offsetAt(int indexEntry) {
+    return data.getInt(HEADER_SIZE + indexEntry * 4);
+  }
+
+  private String stringAt(int index) {
+    String value = strings.get(index);
+    if (value == null) {
+      int offset = offsetAt(index);
+      int length = data.getInt(offset);
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        chars[i] = data.getChar(offset + 4 + i * 2);
+      }
+      value = new String(chars);
+      strings.compareAndSet(index, null, value);
+    }
+    return value;
+  }
+
+  // Cursor over the mapped data using absolute reads, so readers on different threads
+  // never share a buffer position
+  private final class Reader {
+    private int position;
+
+    Reader(int position) {
+      this.position = position;
+    }
+
+    int nextInt() {
+      int value = data.getInt(position);
+      position += 4;
+      return value;
+    }
+
+    long nextLong() {
+      long value = data.getLong(position);
+      position += 8;
+      return value;
+    }
+
+    void skip(int bytes) {
+      position += bytes;
+    }
+
+    String string() {
+      return stringAt(nextInt());
+    }
+
+    String optionalString() {
+      int index = nextInt();
+      return index == NO_STRING ? null : stringAt(index);
+    }
+
+    Parser.Node node() {
+      byte tag = data.get(position++);
+      switch (tag) {
+        case NUMBER:
+          return new Parser.NumberNode(nextInt());
+        case VARIABLE: {
+          int symbol = Symbols.GLOBAL.intern(string());
+          return new Parser.VariableNode(symbol, nextInt());
+        }
+        case BINARY: {
+          String operator = string();
+          Parser.Node left = node();
+          return new Parser.BinaryNode(left, operator, node());
+        }
+        case LOGICAL: {
+          String operator = string();
+          Parser.Node left = node();
+          return new Parser.LogicalNode(left, operator, node());
+        }
+        case UNARY: {
+          String operator = string();
+          return new Parser.UnaryNode(operator, node());
+        }
+        case DEADLINE: {
+          int deadlineMs = nextInt();
+          return new Parser.DeadlineNode(deadlineMs, node());
+        }
+        case LOOP: {
+          int maxIterations = nextInt();
+          long timeoutMs = nextLong();
+          Parser.Node condition = node();
+          return new EmbeddedLoopNode(condition, node(), maxIterations, timeoutMs);
+        }
+        case BOOLEAN:
+          return new Parser.BooleanNode(data.get(position++) != 0);
+        case INT_CHECK: {
+          boolean hasResult = data.get(position++) != 0;
+          int result = nextInt();
+          return new Parser.IntCheckNode(node(), hasResult ? Integer.valueOf(result) : null);
+        }
+        default:
+          throw new RuntimeException("Corrupt AST snapshot: unknown node tag " + tag + " at " + (position - 1));
+      }
+    }
+  }
+
+  public static final class MethodSignature {
+    private final String name;
+    private final String[] parameterTypes;
+    private final String returnType;
+
+    MethodSignature(String name, String[] parameterTypes, String returnType) {
+      this.name = name;
+      this.parameterTypes = parameterTypes;
+      this.returnType = returnType;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String[] getParameterTypes() {
+      return parameterTypes.clone();
+    }
+
+    public String getReturnType() {
+      return returnType;
+    }
+  }
+
+  public static void write(Path path, List<Parser.Node> statements, Collection<ClassNode> classes) throws IOException {
+    Files.write(path, toBytes(statements, classes));
+  }
+
+  public static byte[] toBytes(List<Parser.Node> statements, Collection<ClassNode> classes) {
+    try {
+      return new Writer().write(statements, classes);
+    } catch (IOException e) {
+      // Only in-memory streams are involved
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final class Writer {
+    private final Map<String, Integer> stringIndex = new LinkedHashMap<>();
+    private final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream nodes = new DataOutputStream(nodeBytes);
+    private final ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+    private final DataOutputStream classOut = new DataOutputStream(classBytes);
+    private final Scope scope = new Scope();
+
+    byte[] write(List<Parser.Node> statements, Collection<ClassNode> classList) throws IOException {
+      int[] statementOffsets = new int[statements.size()];
+      for (int i = 0; i < statements.size(); i++) {
+        statementOffsets[i] = nodes.size();
+        writeNode(statements.get(i));
+      }
+      int[] classOffsets = new int[classList.size()];
+      int c = 0;
+      for (ClassNode clazz : classList) {
+        classOffsets[c++] = classOut.size();
+        writeClass(clazz);
+      }
+
+      int[] slotNames = new int[scope.size()];
+      for (int slot = 0; slot < slotNames.length; slot++) {
+        slotNames[slot] = indexOf(Symbols.GLOBAL.name(scope.symbolAt(slot)));
+      }
+
+      ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+      DataOutputStream stringOut = new DataOutputStream(stringBytes);
+      int[] stringOffsets = new int[stringIndex.size()];
+      int s = 0;
+      for (String value : stringIndex.keySet()) {
+        stringOffsets[s++] = stringOut.size();
+        stringOut.writeInt(value.length());
+        stringOut.writeChars(value);
+      }
+
+      int stringsStart = HEADER_SIZE +
+          4 * (stringOffsets.length + statementOffsets.length + classOffsets.length + slotNames.length);
+      int classesStart = stringsStart + stringOut.size();
+      int nodesStart = classesStart + classOut.size();
+
+      ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(nodesStart + nodes.size());
+      DataOutputStream out = new DataOutputStream(fileBytes);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(0); // checksum, filled in below
+      out.writeInt(stringOffsets.length);
+      out.writeInt(statementOffsets.length);
+      out.writeInt(classOffsets.length);
+      out.writeInt(slotNames.length);
+      for (int offset : stringOffsets) {
+        out.writeInt(stringsStart + offset);
+      }
+      for (int offset : statementOffsets) {
+        out.writeInt(nodesStart + offset);
+      }
+      for (int offset : classOffsets) {
+        out.writeInt(classesStart + offset);
+      }
+      for (int name : slotNames) {
+        out.writeInt(name);
+      }
+      stringBytes.writeTo(out);
+      classBytes.writeTo(out);
+      nodeBytes.writeTo(out);
+      out.flush();
+
+      byte[] bytes = fileBytes.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+      ByteBuffer.wrap(bytes).putLong(8, crc.getValue());
+      return bytes;
+    }
+
+    private int indexOf(String value) {
+      return stringIndex.computeIfAbsent(value, v -> stringIndex.size());
+    }
+
+    private void writeClass(ClassNode clazz) throws IOException {
+      classOut.writeInt(indexOf(clazz.getClassName()));
+      classOut.writeInt(clazz.getSuperClassName() == null ? NO_STRING : indexOf(clazz.getSuperClassName()));
+
+      // Sorted so the same program always produces the same bytes
+      List<ClassNode.FieldNode> fields = new ArrayList<>(clazz.getFields().values());
+      fields.sort(Comparator.comparing(ClassNode.FieldNode::getName));
+      classOut.writeInt(fields.size());
+      for (ClassNode.FieldNode field : fields) {
+        classOut.writeInt(indexOf(field.getName()));
+        classOut.writeInt(indexOf(field.getType()));
+      }
+
+      List<MethodNode> methods = new ArrayList<>(clazz.getMethods().values());
+      methods.sort(Comparator.comparing(MethodNode::getName));
+      classOut.writeInt(methods.size());
+      for (MethodNode method : methods) {
+        classOut.writeInt(indexOf(method.getName()));
+        classOut.writeInt(indexOf(method.getReturnType()));
+        classOut.writeInt(method.getParameterTypes().length);
+        for (String parameterType : method.getParameterTypes()) {
+          classOut.writeInt(indexOf(parameterType));
+        }
+      }
+    }
+
+    private void writeNode(Parser.Node node) throws IOException {
+      if (node instanceof Parser.NumberNode) {
+        nodes.writeByte(NUMBER);
+        nodes.writeInt(((Parser.NumberNode) node).getValue());
+      } else if (node instanceof Parser.BooleanNode) {
+        nodes.writeByte(BOOLEAN);
+        nodes.writeBoolean(((Parser.BooleanNode) node).getValue());
+      } else if (node instanceof Parser.IntCheckNode) {
+        Parser.IntCheckNode check = (Parser.IntCheckNode) node;
+        nodes.writeByte(INT_CHECK);
+        nodes.writeBoolean(check.getResult() != null);
+        nodes.writeInt(check.getResult() != null ? check.getResult() : 0);
+        writeNode(check.getOperand());
+      } else if (node instanceof Parser.VariableNode) {
+        int symbol = ((Parser.VariableNode) node).getSymbol();
+        nodes.writeByte(VARIABLE);
+        nodes.writeInt(indexOf(Symbols.GLOBAL.name(symbol)));
+        nodes.writeInt(scope.resolve(symbol));
+      } else if (node instanceof Parser.BinaryNode) {
+        Parser.BinaryNode binary = (Parser.BinaryNode) node;
+        nodes.writeByte(BINARY);
+        nodes.writeInt(indexOf(binary.getOperator()));
+        writeNode(binary.getLeft());
+        writeNode(binary.getRight());
+      } else if (node instanceof Parser.LogicalNode) {
+        Parser.LogicalNode logical = (Parser.LogicalNode) node;
+        nodes.writeByte(LOGICAL);
+        nodes.writeInt(indexOf(logical.getOperator()));
+        writeNode(logical.getLeft());
+        writeNode(logical.getRight());
+      } else if (node instanceof Parser.UnaryNode) {
+        Parser.UnaryNode unary = (Parser.UnaryNode) node;
+        nodes.writeByte(UNARY);
+        nodes.writeInt(indexOf(unary.getOperator()));
+        writeNode(unary.getOperand());
+      } else if (node instanceof Parser.DeadlineNode) {
+        Parser.DeadlineNode deadline = (Parser.DeadlineNode) node;
+        nodes.writeByte(DEADLINE);
+        nodes.writeInt(deadline.getDeadlineMs());
+        writeNode(deadline.getBody());
+      } else if (node instanceof EmbeddedLoopNode) {
+        EmbeddedLoopNode loop = (EmbeddedLoopNode) node;
+        nodes.writeByte(LOOP);
+        nodes.writeInt(loop.getMaxIterations());
+        nodes.writeLong(loop.getTimeoutMs());
+        writeNode(loop.getCondition());
+        writeNode(loop.getBody());
+      } else {
+        throw new RuntimeException("Cannot snapshot node type: " + node.getClass().getSimpleName());
+      }
+    }
+  }
+}
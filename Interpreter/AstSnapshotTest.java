@@ -0,0 +1,72 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+class AstSnapshotTest {
+
+    @Test
+    void testAstSnapshotRoundTrip() throws IOException {
+        String source = "1 + 2 * 3; -(7 % 4) - 1; 1 == 1 && 2 >= 3 || 0x10 != 16; gain * reading + gain";
+        PrattParser parser = new PrattParser(new Lexers(source).tokenizeToBuffer());
+        List<Parser.Node> parsed = parser.parseStatements();
+        SymbolMap<Object> globals = new SymbolMap<>();
+        globals.put("gain", 3);
+        globals.put("reading", 14);
+        ClassNode clazz = new ClassNode("Sensor");
+        clazz.setSuperClass("Device");
+        clazz.addField("reading", "int");
+        clazz.addMethod(new MethodNode("scale", new String[] { "int", "int" }, "int") {
+            @Override
+            public Object execute(ExecutionEnvironment env, Object... args) {
+                return (Integer) args[0] * (Integer) args[1];
+            }
+        });
+
+        Path file = Files.createTempFile("program", ".ast");
+        try {
+            AstSnapshot.write(file, parsed, List.of(clazz));
+            AstSnapshot snapshot = AstSnapshot.open(file);
+            assertEquals(4, snapshot.statementCount());
+            Frame parsedFrame = parser.getScope().bind(globals);
+            Frame snapshotFrame = snapshot.getScope().bind(globals);
+            for (int i = 0; i < parsed.size(); i++) {
+                assertEquals(parsed.get(i).run(parsedFrame), snapshot.getStatements().get(i).run(snapshotFrame));
+            }
+            assertEquals(45, snapshot.getStatement(3).run(snapshotFrame));
+            assertSame(snapshot.getStatement(0), snapshot.getStatement(0));
+
+            ClassNode loaded = snapshot.getClassNode(0);
+            assertEquals("Sensor", loaded.getClassName());
+            assertEquals("Device", loaded.getSuperClassName());
+            assertEquals("int", loaded.getFields().get("reading").getType());
+            AstSnapshot.MethodSignature method = snapshot.getMethodSignatures(0).get(0);
+            assertEquals("scale", method.getName());
+            assertEquals(Arrays.asList("int", "int"), Arrays.asList(method.getParameterTypes()));
+            assertEquals("int", method.getReturnType());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testAstSnapshotRejectsCorruption() {
+        List<Parser.Node> parsed = new PrattParser(new Lexers("a * 2 + 1").tokenizeToBuffer()).parseStatements();
+        byte[] bytes = AstSnapshot.toBytes(parsed, List.of());
+
+        byte[] corrupted = bytes.clone();
+        corrupted[corrupted.length - 1] ^= 1;
+        assertThrows(RuntimeException.class, () -> AstSnapshot.fromBytes(corrupted));
+
+        byte[] wrongVersion = bytes.clone();
+        wrongVersion[7] = 99;
+        assertThrows(RuntimeException.class, () -> AstSnapshot.fromBytes(wrongVersion));
+        assertThrows(RuntimeException.class, () -> AstSnapshot.fromBytes(new byte[8]));
+    }
+}
@@ -0,0 +1,94 @@
+// Compiled form of one Parser.Node tree, run by RegisterVM. Instructions are an opcode
+// followed by its operands in a flat int[]; registers are split into an int file (ints,
+// and booleans as 0/1), an Object file for values whose type is only known at run time,
+// and a long file for deadline start times. Anything that is not an int lives in the
+// constant pool (loop nodes, nodes without a compiled form). Loop bodies are listed in
+// the handler table as [start, end, pool index] so an exception can roll back the loop's
+// history the way EmbeddedLoopNode does.
+public final class Bytecode {
+  // Value kinds of registers and of the program result
+  static final int INT = 0;
+  static final int BOOL = 1;
+  static final int REF = 2;
+
+  static final int CONST = 0;        // dst, value
+  static final int LOAD_VAR = 1;     // dst(ref), frame slot
+  static final int BOX_INT = 2;      // dst(ref), src
+  static final int BOX_BOOL = 3;     // dst(ref), src
+  static final int UNBOX_INT = 4;    // dst, src(ref): the (Integer) cast BinaryNode does
+  static final int UNBOX_BOOL = 5;   // dst, src(ref), message: fails with pool[message]
+  static final int ADD = 6;          // dst, a, b
+  static final int SUB = 7;
+  static final int MUL = 8;
+  static final int DIV = 9;
+  static final int MOD = 10;
+  static final int LE = 11;
+  static final int GE = 12;
+  static final int EQ = 13;
+  static final int NE = 14;
+  static final int EQ_REF = 15;      // dst, a(ref), b(ref): Objects.equals
+  static final int NE_REF = 16;
+  static final int NEG = 17;         // dst, src
+  static final int MOVE = 18;        // dst, src
+  static final int JUMP = 19;        // target
+  static final int JUMP_IF_FALSE = 20; // cond, target
+  static final int JUMP_IF_TRUE = 21;  // cond, target
+  static final int DEADLINE_START = 22; // timer
+  static final int DEADLINE_CHECK = 23; // timer, deadlineMs
+  static final int LOOP_BEGIN = 24;  // loop
+  static final int LOOP_NEXT = 25;   // loop, exit target
+  static final int LOOP_RECORD = 26; // loop, src(ref)
+  static final int LOOP_RESULT = 27; // dst(ref), loop
+  static final int EVALUATE = 28;    // dst(ref), node: tree-walk a node with no compiled form
+  static final int RETURN = 29;      // src
+
+  private static final String[] NAMES = {
+      "CONST", "LOAD_VAR", "BOX_INT", "BOX_BOOL", "UNBOX_INT", "UNBOX_BOOL", "ADD", "SUB", "MUL", "DIV",
+      "MOD", "LE", "GE", "EQ", "NE", "EQ_REF", "NE_REF", "NEG", "MOVE", "JUMP", "JUMP_IF_FALSE",
+      "JUMP_IF_TRUE", "DEADLINE_START", "DEADLINE_CHECK", "LOOP_BEGIN", "LOOP_NEXT", "LOOP_RECORD",
+      "LOOP_RESULT", "EVALUATE", "RETURN" };
+  private static final int[] OPERAND_COUNTS = {
+      2, 2, 2, 2, 2, 3, 3, 3, 3, 3,
+      3, 3, 3, 3, 3, 3, 3, 2, 2, 1, 2,
+      2, 1, 2, 1, 2, 2,
+      2, 2, 1 };
+
+  final int[] code;
+  final Object[] constants;
+  final int[] handlers;
+  final int intRegisters;
+  final int refRegisters;
+  final int timerRegisters;
+  final int resultKind;
+
+  Bytecode(int[] code, Object[] constants, int[] handlers, int intRegisters, int refRegisters,
+      int timerRegisters, int resultKind) {
+    this.code = code;
+    this.constants = constants;
+    this.handlers = handlers;
+    this.intRegisters = intRegisters;
+    this.refRegisters = refRegisters;
+    this.timerRegisters = timerRegisters;
+    this.resultKind = resultKind;
+  }
+
+  public int codeLength() {
+    return code.length;
+  }
+
+  static int operandCount(int opcode) {
+    return OPERAND_COUNTS[opcode];
+  }
+
+  public String disassemble() {
+    StringBuilder sb = new StringBuilder();
+    for (int pc = 0; pc < code.length; pc += 1 + OPERAND_COUNTS[code[pc]]) {
+      sb.append(pc).append(": ").append(NAMES[code[pc]]);
+      for (int i = 1; i <= OPERAND_COUNTS[code[pc]]; i++) {
+        sb.append(i == 1 ? " " : ", ").append(code[pc + i]);
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,242 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Compiles a Parser.Node tree into Bytecode for RegisterVM. Each subtree gets its own
+// register, typed INT, BOOL or REF from the node kind; values only go through an Object
+// register where the tree-walker's type is not known statically (variables, loop
+// results, == on mixed operands). Conversions mirror the checks evaluate() performs, in
+// the same order, so a compiled program fails exactly where the tree would.
+public final class BytecodeCompiler {
+  private static final String LOOP_CONDITION_MESSAGE = "Loop condition must evaluate to boolean";
+
+  private int[] code = new int[64];
+  private int size = 0;
+  private final List<Object> constants = new ArrayList<>();
+  private int[] handlers = new int[0];
+  private int intRegisters = 0;
+  private int refRegisters = 0;
+  private int timerRegisters = 0;
+
+  private BytecodeCompiler() {
+  }
+
+  public static Bytecode compile(Parser.Node node) {
+    BytecodeCompiler compiler = new BytecodeCompiler();
+    int result = compiler.compileNode(node);
+    compiler.emit(Bytecode.RETURN, registerOf(result));
+    return new Bytecode(Arrays.copyOf(compiler.code, compiler.size), compiler.constants.toArray(),
+        compiler.handlers, compiler.intRegisters, compiler.refRegisters, compiler.timerRegisters, kindOf(result));
+  }
+
+  // Compiled values are packed as register << 2 | kind
+  private static int value(int register, int kind) {
+    return register << 2 | kind;
+  }
+
+  private static int registerOf(int value) {
+    return value >>> 2;
+  }
+
+  private static int kindOf(int value) {
+    return value & 3;
+  }
+
+  private int compileNode(Parser.Node node) {
+    if (node instanceof Parser.NumberNode) {
+      int dst = intRegisters++;
+      emit(Bytecode.CONST, dst, ((Parser.NumberNode) node).getValue());
+      return value(dst, Bytecode.INT);
+    }
+    if (node instanceof Parser.BooleanNode) {
+      int dst = intRegisters++;
+      emit(Bytecode.CONST, dst, ((Parser.BooleanNode) node).getValue() ? 1 : 0);
+      return value(dst, Bytecode.BOOL);
+    }
+    if (node instanceof Parser.VariableNode) {
+      int dst = refRegisters++;
+      emit(Bytecode.LOAD_VAR, dst, ((Parser.VariableNode) node).getSlot());
+      return value(dst, Bytecode.REF);
+    }
+    if (node instanceof Parser.BinaryNode) {
+      return compileBinary((Parser.BinaryNode) node);
+    }
+    if (node instanceof Parser.LogicalNode) {
+      return compileLogical((Parser.LogicalNode) node);
+    }
+    if (node instanceof Parser.UnaryNode && ((Parser.UnaryNode) node).getOperator().equals("-")) {
+      int operand = toInt(compileNode(((Parser.UnaryNode) node).getOperand()));
+      int dst = intRegisters++;
+      emit(Bytecode.NEG, dst, operand);
+      return value(dst, Bytecode.INT);
+    }
+    if (node instanceof Parser.IntCheckNode) {
+      Parser.IntCheckNode check = (Parser.IntCheckNode) node;
+      int operand = toInt(compileNode(check.getOperand()));
+      if (check.getResult() == null) {
+        return value(operand, Bytecode.INT);
+      }
+      int dst = intRegisters++;
+      emit(Bytecode.CONST, dst, check.getResult());
+      return value(dst, Bytecode.INT);
+    }
+    if (node instanceof Parser.DeadlineNode) {
+      Parser.DeadlineNode deadline = (Parser.DeadlineNode) node;
+      int timer = timerRegisters++;
+      emit(Bytecode.DEADLINE_START, timer);
+      int body = compileNode(deadline.getBody());
+      emit(Bytecode.DEADLINE_CHECK, timer, deadline.getDeadlineMs());
+      return body;
+    }
+    if (node instanceof EmbeddedLoopNode) {
+      return compileLoop((EmbeddedLoopNode) node);
+    }
+    // No compiled form (unknown operators, other Node subclasses): walk the tree
+    int dst = refRegisters++;
+    emit(Bytecode.EVALUATE, dst, constant(node));
+    return value(dst, Bytecode.REF);
+  }
+
+  private int compileBinary(Parser.BinaryNode node) {
+    int opcode;
+    int resultKind = Bytecode.INT;
+    switch (node.getOperator()) {
+      case "+":
+        opcode = Bytecode.ADD;
+        break;
+      case "-":
+        opcode = Bytecode.SUB;
+        break;
+      case "*":
+        opcode = Bytecode.MUL;
+        break;
+      case "/":
+        opcode = Bytecode.DIV;
+        break;
+      case "%":
+        opcode = Bytecode.MOD;
+        break;
+      case "<=":
+        opcode = Bytecode.LE;
+        resultKind = Bytecode.BOOL;
+        break;
+      case ">=":
+        opcode = Bytecode.GE;
+        resultKind = Bytecode.BOOL;
+        break;
+      case "==":
+        opcode = Bytecode.EQ;
+        resultKind = Bytecode.BOOL;
+        break;
+      case "!=":
+        opcode = Bytecode.NE;
+        resultKind = Bytecode.BOOL;
+        break;
+      default:
+        int dst = refRegisters++;
+        emit(Bytecode.EVALUATE, dst, constant(node));
+        return value(dst, Bytecode.REF);
+    }
+
+    // Both sides are evaluated before either is converted, as in BinaryNode.evaluate()
+    int left = compileNode(node.getLeft());
+    int right = compileNode(node.getRight());
+    int a;
+    int b;
+    if (opcode == Bytecode.EQ || opcode == Bytecode.NE) {
+      if (kindOf(left) != kindOf(right) || kindOf(left) == Bytecode.REF) {
+        a = toRef(left);
+        b = toRef(right);
+        opcode = opcode == Bytecode.EQ ? Bytecode.EQ_REF : Bytecode.NE_REF;
+      } else {
+        a = registerOf(left);
+        b = registerOf(right);
+      }
+    } else {
+      a = toInt(left);
+      b = toInt(right);
+    }
+    int dst = intRegisters++;
+    emit(opcode, dst, a, b);
+    return value(dst, resultKind);
+  }
+
+  private int compileLogical(Parser.LogicalNode node) {
+    String message = "Operator " + node.getOperator() + " expects boolean operands";
+    int dst = intRegisters++;
+    emit(Bytecode.MOVE, dst, toBool(compileNode(node.getLeft()), message));
+    int jump = size;
+    emit(node.getOperator().equals("&&") ? Bytecode.JUMP_IF_FALSE : Bytecode.JUMP_IF_TRUE, dst, -1);
+    emit(Bytecode.MOVE, dst, toBool(compileNode(node.getRight()), message));
+    code[jump + 2] = size;
+    return value(dst, Bytecode.BOOL);
+  }
+
+  private int compileLoop(EmbeddedLoopNode loop) {
+    int loopConstant = constant(loop);
+    emit(Bytecode.LOOP_BEGIN, loopConstant);
+    int top = size;
+    emit(Bytecode.LOOP_NEXT, loopConstant, -1);
+    int condition = toBool(compileNode(loop.getCondition()), LOOP_CONDITION_MESSAGE);
+    int exitJump = size;
+    emit(Bytecode.JUMP_IF_FALSE, condition, -1);
+    int bodyStart = size;
+    int body = toRef(compileNode(loop.getBody()));
+    int bodyEnd = size;
+    emit(Bytecode.LOOP_RECORD, loopConstant, body);
+    emit(Bytecode.JUMP, top);
+    code[top + 2] = size;
+    code[exitJump + 2] = size;
+
+    // Inner loops are registered first, so the VM rolls back innermost first
+    handlers = Arrays.copyOf(handlers, handlers.length + 3);
+    handlers[handlers.length - 3] = bodyStart;
+    handlers[handlers.length - 2] = bodyEnd;
+    handlers[handlers.length - 1] = loopConstant;
+
+    int dst = refRegisters++;
+    emit(Bytecode.LOOP_RESULT, dst, loopConstant);
+    return value(dst, Bytecode.REF);
+  }
+
+  // The (Integer) cast arithmetic applies; a boolean goes through a box so it fails the same way
+  private int toInt(int value) {
+    if (kindOf(value) == Bytecode.INT) {
+      return registerOf(value);
+    }
+    int dst = intRegisters++;
+    emit(Bytecode.UNBOX_INT, dst, toRef(value));
+    return dst;
+  }
+
+  private int toBool(int value, String message) {
+    if (kindOf(value) == Bytecode.BOOL) {
+      return registerOf(value);
+    }
+    int dst = intRegisters++;
+    emit(Bytecode.UNBOX_BOOL, dst, toRef(value), constant(message));
+    return dst;
+  }
+
+  private int toRef(int value) {
+    if (kindOf(value) == Bytecode.REF) {
+      return registerOf(value);
+    }
+    int dst = refRegisters++;
+    emit(kindOf(value) == Bytecode.INT ? Bytecode.BOX_INT : Bytecode.BOX_BOOL, dst, registerOf(value));
+    return dst;
+  }
+
+  private int constant(Object value) {
+    constants.add(value);
+    return constants.size() - 1;
+  }
+
+  private void emit(int... instruction) {
+    if (size + instruction.length > code.length) {
+      code = Arrays.copyOf(code, Math.max(code.length * 2, size + instruction.length));
+    }
+    System.arraycopy(instruction, 0, code, size, instruction.length);
+    size += instruction.length;
+  }
+}
@@ -0,0 +1,204 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Pre-resolved handle to one script method, returned by Interpreter.lookup. The method
+// is looked up and its arity checked once; each call only re-checks the same guards
+// as CallSite (class epoch and class version) and re-resolves if a class was redefined
+// or gained a method since. The invokeInt overloads pass ints through to
+// MethodNode.executeInt, so a method that overrides those runs without a varargs array
+// or boxing; each call is still a full activation, with its own arena when arena
+// allocation is on. The resolved target is immutable and swapped whole, so handles can
+// be shared between threads.
+//
+// The batch calls take one int column per parameter and fill a result column, resolving
+// the method once for the whole batch; every element is an activation of its own.
+// Batches of a side-effect-free method are split across the common fork-join pool once
+// they reach PARALLEL_THRESHOLD elements.
+public final class CallHandle {
+  static final int PARALLEL_THRESHOLD = 8192;
+  private static final int BATCH_GRAIN = 2048;
+
+  private final Interpreter interpreter;
+  private final ExecutionEnvironment env;
+  private final String className;
+  private final String methodName;
+  private volatile Target target;
+
+  CallHandle(Interpreter interpreter, ExecutionEnvironment env, String className, String methodName) {
+    this.interpreter = interpreter;
+    this.env = env;
+    this.className = className;
+    this.methodName = methodName;
+    this.target = resolve(interpreter.getClassEpoch());
+  }
+
+  public Object invoke(Object... args) {
+    MethodNode method = method(args.length);
+    if (Profiler.isEnabled()) {
+      return Profiler.execute(method, className, env, args);
+    }
+    return env.execute(method, args);
+  }
+
+  public int invokeInt() {
+    return call(method(0), 0, 0, 0);
+  }
+
+  public int invokeInt(int arg) {
+    return call(method(1), 1, arg, 0);
+  }
+
+  public int invokeInt(int first, int second) {
+    return call(method(2), 2, first, second);
+  }
+
+  private int call(MethodNode method, int argCount, int first, int second) {
+    if (Profiler.isEnabled()) {
+      Profiler.enter(method, className, methodName);
+      try {
+        return env.executeInt(method, argCount, first, second);
+      } finally {
+        Profiler.exit();
+      }
+    }
+    return env.executeInt(method, argCount, first, second);
+  }
+
+  public void invokeIntBatch(int[] args, int[] results) {
+    checkColumn(args, results);
+    runBatch(method(1), args, null, results);
+  }
+
+  public void invokeIntBatch(int[] first, int[] second, int[] results) {
+    checkColumn(first, results);
+    checkColumn(second, results);
+    runBatch(method(2), first, second, results);
+  }
+
+  // The profiler sees a batch as one evaluation of the method
+  private void runBatch(MethodNode method, int[] first, int[] second, int[] results) {
+    if (Profiler.isEnabled()) {
+      Profiler.enter(method, className, methodName);
+      try {
+        dispatchBatch(method, first, second, results);
+      } finally {
+        Profiler.exit();
+      }
+    } else {
+      dispatchBatch(method, first, second, results);
+    }
+  }
+
+  private void dispatchBatch(MethodNode method, int[] first, int[] second, int[] results) {
+    if (results.length >= PARALLEL_THRESHOLD && method.isSideEffectFree()) {
+      ForkJoinPool.commonPool().invoke(new BatchTask(env, method, first, second, results, 0, results.length));
+    } else {
+      runRange(env, method, first, second, results, 0, results.length);
+    }
+  }
+
+  public String getClassName() {
+    return className;
+  }
+
+  public String getMethodName() {
+    return methodName;
+  }
+
+  public int getArity() {
+    return target.arity;
+  }
+
+  private MethodNode method(int argCount) {
+    Target current = target;
+    int epoch = interpreter.getClassEpoch();
+    if (current.epoch != epoch || current.clazz.getVersion() != current.classVersion) {
+      current = resolve(epoch);
+      target = current;
+    }
+    if (current.arity != argCount) {
+      throw new RuntimeException("Method " + className + "." + methodName + " expects " +
+          current.arity + " arguments, got " + argCount);
+    }
+    return current.method;
+  }
+
+  private static void checkColumn(int[] column, int[] results) {
+    if (column.length != results.length) {
+      throw new RuntimeException("Batch column has " + column.length + " elements, results have " + results.length);
+    }
+  }
+
+  // second is null for one-argument methods
+  private static void runRange(ExecutionEnvironment env, MethodNode method, int[] first, int[] second,
+      int[] results, int from, int to) {
+    if (second == null) {
+      for (int i = from; i < to; i++) {
+        results[i] = env.executeInt(method, 1, first[i], 0);
+      }
+    } else {
+      for (int i = from; i < to; i++) {
+        results[i] = env.executeInt(method, 2, first[i], second[i]);
+      }
+    }
+  }
+
+  private Target resolve(int epoch) {
+    ClassNode clazz = interpreter.findClass(className);
+    int classVersion = clazz.getVersion();
+    MethodNode method = interpreter.findMethod(clazz, methodName);
+    String[] parameterTypes = method.getParameterTypes();
+    int arity = parameterTypes == null ? 0 : parameterTypes.length;
+    return new Target(clazz, classVersion, method, arity, epoch);
+  }
+
+  private static final class BatchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ExecutionEnvironment env;
+    private final MethodNode method;
+    private final int[] first;
+    private final int[] second;
+    private final int[] results;
+    private final int from;
+    private final int to;
+
+    BatchTask(ExecutionEnvironment env, MethodNode method, int[] first, int[] second, int[] results,
+        int from, int to) {
+      this.env = env;
+      this.method = method;
+      this.first = first;
+      this.second = second;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= BATCH_GRAIN) {
+        runRange(env, method, first, second, results, from, to);
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new BatchTask(env, method, first, second, results, from, mid),
+          new BatchTask(env, method, first, second, results, mid, to));
+    }
+  }
+
+  private static final class Target {
+    final ClassNode clazz;
+    final int classVersion;
+    final MethodNode method;
+    final int arity;
+    final int epoch;
+
+    Target(ClassNode clazz, int classVersion, MethodNode method, int arity, int epoch) {
+      this.clazz = clazz;
+      this.classVersion = classVersion;
+      this.method = method;
+      this.arity = arity;
+      this.epoch = epoch;
+    }
+  }
+}
@@ -0,0 +1,112 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CallHandleTest {
+
+    @Test
+    void testCallHandleInvokesPreResolvedMethods() {
+        Interpreter interpreter = new Interpreter();
+        try {
+            interpreter.loadClass(TestPrograms.scalingClass("Sensor", "scale", 2));
+            CallHandle scale = interpreter.lookup("Sensor", "scale");
+            assertEquals(1, scale.getArity());
+            assertEquals(8, scale.invokeInt(4));
+            assertEquals(10, scale.invoke(5));
+
+            RuntimeException arity = assertThrows(RuntimeException.class, () -> scale.invokeInt(1, 2));
+            assertEquals("Method Sensor.scale expects 1 arguments, got 2", arity.getMessage());
+            assertThrows(RuntimeException.class, () -> scale.invoke());
+            assertThrows(RuntimeException.class, () -> interpreter.lookup("Sensor", "run"));
+
+            // Redefinition is picked up on the next call
+            interpreter.loadClass(TestPrograms.scalingClass("Sensor", "scale", 5));
+            assertEquals(15, scale.invokeInt(3));
+        } finally {
+            interpreter.shutdown();
+        }
+    }
+
+    @Test
+    void testCallHandleBatchesMatchSingleCalls() {
+        Interpreter interpreter = new Interpreter();
+        try {
+            ClassNode filter = new ClassNode("Filter");
+            filter.addMethod(new MethodNode("clamp", new String[] { "int", "int" }, "int") {
+                @Override
+                public Object execute(ExecutionEnvironment env, Object... args) {
+                    return Math.min((Integer) args[0], (Integer) args[1]);
+                }
+
+                @Override
+                public boolean isSideEffectFree() {
+                    return true;
+                }
+            });
+            interpreter.loadClass(filter);
+            interpreter.loadClass(TestPrograms.scalingClass("Sensor", "scale", 3));
+
+            int size = CallHandle.PARALLEL_THRESHOLD * 2 + 17;
+            int[] readings = new int[size];
+            int[] limits = new int[size];
+            for (int i = 0; i < size; i++) {
+                readings[i] = i * 31 % 4099;
+                limits[i] = 2048;
+            }
+            int[] clamped = new int[size];
+            interpreter.lookup("Filter", "clamp").invokeIntBatch(readings, limits, clamped);
+            int[] scaled = new int[size];
+            interpreter.lookup("Sensor", "scale").invokeIntBatch(readings, scaled);
+            for (int i = 0; i < size; i++) {
+                assertEquals(interpreter.executeMethod("Filter", "clamp", readings[i], limits[i]), clamped[i]);
+                assertEquals(interpreter.executeMethod("Sensor", "scale", readings[i]), scaled[i]);
+            }
+
+            assertThrows(RuntimeException.class,
+                    () -> interpreter.lookup("Sensor", "scale").invokeIntBatch(readings, new int[3]));
+            assertThrows(RuntimeException.class,
+                    () -> interpreter.lookup("Sensor", "scale").invokeIntBatch(readings, limits, scaled));
+        } finally {
+            interpreter.shutdown();
+        }
+    }
+
+    @Test
+    void testCallHandleIntCallsAllocateInActivationArenas() {
+        Interpreter interpreter = new Interpreter();
+        ExecutionEnvironment[] envs = new ExecutionEnvironment[1];
+        try {
+            ClassNode pool = new ClassNode("Pool");
+            pool.addMethod(new MethodNode("churn", new String[] { "int" }, "int") {
+                @Override
+                public Object execute(ExecutionEnvironment env, Object... args) {
+                    return executeInt(env, (Integer) args[0]);
+                }
+
+                @Override
+                public int executeInt(ExecutionEnvironment env, int count) {
+                    envs[0] = env;
+                    for (int i = 0; i < count; i++) {
+                        env.allocateObject(i);
+                    }
+                    return count;
+                }
+            });
+            interpreter.loadClass(pool);
+            CallHandle churn = interpreter.lookup("Pool", "churn");
+            churn.invokeInt(0);
+            ExecutionEnvironment env = envs[0];
+            env.setArenaAllocation(true);
+            int heapObjects = env.getHeapObjectCount();
+
+            assertEquals(100, churn.invokeInt(100));
+            int[] results = new int[3];
+            churn.invokeIntBatch(new int[] { 10, 20, 30 }, results);
+            assertEquals(30, results[2]);
+            assertEquals(160, env.getArenaAllocationCount());
+            assertEquals(heapObjects, env.getHeapObjectCount());
+        } finally {
+            interpreter.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+// Inline cache for method calls made through an Interpreter. Each entry remembers the
+// MethodNode a (class name, method name) pair resolved to, and stays valid while the
+// interpreter has not loaded a class since and the class has not gained a method.
+// Names are compared by reference before equals(), so callers that pass the same
+// strings (literals, constants) hit without hashing or comparing characters. A site
+// keeps up to POLYMORPHIC_LIMIT pairs; past that it goes megamorphic and resolves
+// every call directly, which still reads one map entry instead of copying the table.
+// Entries are immutable and the table is replaced on a miss, so sites are thread-safe.
+public final class CallSite {
+  static final int POLYMORPHIC_LIMIT = 4;
+  private static final Entry[] EMPTY = new Entry[0];
+
+  private final Interpreter interpreter;
+  private final String className;
+  private final String methodName;
+  private volatile Entry[] entries = EMPTY;
+  private volatile boolean megamorphic;
+  private volatile long misses;
+
+  // Site for calls to whatever class and method each call names
+  CallSite(Interpreter interpreter) {
+    this(interpreter, null, null);
+  }
+
+  // Site bound to one class and method, as handed out by Interpreter.callSite
+  CallSite(Interpreter interpreter, String className, String methodName) {
+    this.interpreter = interpreter;
+    this.className = className;
+    this.methodName = methodName;
+  }
+
+  public Object invoke(Object... args) {
+    return interpreter.invoke(className, resolve(className, methodName), args);
+  }
+
+  MethodNode resolve(String className, String methodName) {
+    int epoch = interpreter.getClassEpoch();
+    for (Entry entry : entries) {
+      if (entry.matches(className, methodName, epoch)) {
+        return entry.method;
+      }
+    }
+    return miss(className, methodName, epoch);
+  }
+
+  private synchronized MethodNode miss(String className, String methodName, int epoch) {
+    misses++;
+    ClassNode clazz = interpreter.findClass(className);
+    int classVersion = clazz.getVersion();
+    MethodNode method = interpreter.findMethod(clazz, methodName);
+    if (megamorphic) {
+      return method;
+    }
+    // Entries from before a class was loaded or changed can never hit again
+    Entry[] current = entries;
+    int live = 0;
+    Entry[] next = new Entry[current.length + 1];
+    for (Entry entry : current) {
+      if (entry.epoch == epoch && entry.clazz.getVersion() == entry.classVersion) {
+        next[live++] = entry;
+      }
+    }
+    if (live == POLYMORPHIC_LIMIT) {
+      megamorphic = true;
+      entries = EMPTY;
+      return method;
+    }
+    next[live++] = new Entry(className, methodName, clazz, classVersion, method, epoch);
+    entries = live == next.length ? next : Arrays.copyOf(next, live);
+    return method;
+  }
+
+  public int getCachedCount() {
+    return entries.length;
+  }
+
+  public boolean isMegamorphic() {
+    return megamorphic;
+  }
+
+  public long getMissCount() {
+    return misses;
+  }
+
+  private static final class Entry {
+    final String className;
+    final String methodName;
+    final ClassNode clazz;
+    final int classVersion;
+    final MethodNode method;
+    final int epoch;
+
+    Entry(String className, String methodName, ClassNode clazz, int classVersion, MethodNode method, int epoch) {
+      this.className = className;
+      this.methodName = methodName;
+      this.clazz = clazz;
+      this.classVersion = classVersion;
+      this.method = method;
+      this.epoch = epoch;
+    }
+
+    boolean matches(String className, String methodName, int epoch) {
+      return this.epoch == epoch &&
+          (this.className == className || this.className.equals(className)) &&
+          (this.methodName == methodName || this.methodName.equals(methodName)) &&
+          clazz.getVersion() == classVersion;
+    }
+  }
+}
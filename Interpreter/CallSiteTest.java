@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallSiteTest {
+
+    @Test
+    void testCallSiteCachesAndInvalidates() {
+        Interpreter interpreter = new Interpreter();
+        try {
+            interpreter.loadClass(TestPrograms.scalingClass("Sensor", "scale", 2));
+            interpreter.loadClass(TestPrograms.scalingClass("Motor", "scale", 3));
+            CallSite site = interpreter.callSite("Sensor", "scale");
+            assertEquals(8, site.invoke(4));
+            assertEquals(10, site.invoke(5));
+            assertEquals(1, site.getMissCount());
+            assertEquals(3, interpreter.executeMethod("Motor", "scale", 1));
+            assertEquals(2, interpreter.executeMethod(new String("Sensor"), "scale", 1));
+
+            // Redefining a class or adding a method to it invalidates what was resolved
+            interpreter.loadClass(TestPrograms.scalingClass("Sensor", "scale", 5));
+            assertEquals(5, site.invoke(1));
+            assertEquals(2, site.getMissCount());
+            ClassNode motor = TestPrograms.scalingClass("Motor", "scale", 7);
+            interpreter.loadClass(motor);
+            assertEquals(7, interpreter.executeMethod("Motor", "scale", 1));
+            motor.addMethod(TestPrograms.scalingClass("Motor", "scale", 11).getMethod("scale"));
+            assertEquals(11, interpreter.executeMethod("Motor", "scale", 1));
+
+            RuntimeException missing = assertThrows(RuntimeException.class,
+                    () -> interpreter.executeMethod("Pump", "scale", 1));
+            assertEquals("Class not found: Pump", missing.getMessage());
+            missing = assertThrows(RuntimeException.class, () -> interpreter.executeMethod("Sensor", "run"));
+            assertEquals("Method not found: run in class Sensor", missing.getMessage());
+
+            // Past the polymorphic limit a site stops caching but still dispatches correctly
+            CallSite shared = new CallSite(interpreter);
+            for (int i = 0; i <= CallSite.POLYMORPHIC_LIMIT; i++) {
+                interpreter.loadClass(TestPrograms.scalingClass("Device" + i, "scale", i));
+                assertEquals(i * 3, interpreter.invoke("Device" + i, shared.resolve("Device" + i, "scale"), 3));
+            }
+            assertTrue(shared.isMegamorphic());
+            assertEquals(0, shared.getCachedCount());
+            assertEquals(6, interpreter.invoke("Device2", shared.resolve("Device2", "scale"), 3));
+        } finally {
+            interpreter.shutdown();
+        }
+    }
+}
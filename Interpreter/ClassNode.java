@@ -4,14 +4,18 @@ import java.util.Set;
 public class ClassNode {
   private final String className;
   private String superClassName;
-  private final Map<String, FieldNode> fields;
-  private final Map<String, MethodNode> methods;
+  private final SymbolMap<FieldNode> fields;
+  private final SymbolMap<MethodNode> methods;
   private final List<String> inheritanceChain;
+  // Bumped when a method is added, so CallSite entries for this class are re-resolved
+  private volatile int version;
+  // Set when registered with an ExecutionEnvironment, and handed to fields and methods
+  private volatile IncrementalCollector collector;
 
   public ClassNode(String className) {
     this.className = className;
-    this.fields = new HashMap<>();
-    this.methods = new HashMap<>();
+    this.fields = new SymbolMap<>();
+    this.methods = new SymbolMap<>();
     this.inheritanceChain = new ArrayList<>();
     this.inheritanceChain.add(className);
   }
@@ -22,11 +26,25 @@ public class ClassNode {
   }
 
   public void addField(String name, String type) {
-    fields.put(name, new FieldNode(name, type));
+    FieldNode field = new FieldNode(name, type);
+    field.collector = collector;
+    fields.put(Symbols.GLOBAL.intern(name), field);
   }
 
   public void addMethod(MethodNode method) {
-    methods.put(method.getName(), method);
+    method.setCollector(collector);
+    methods.put(Symbols.GLOBAL.intern(method.getName()), method);
+    version++;
+  }
+
+  int getVersion() {
+    return version;
+  }
+
+  void setCollector(IncrementalCollector collector) {
+    this.collector = collector;
+    fields.forEach((symbol, field) -> field.collector = collector);
+    methods.forEach((symbol, method) -> method.setCollector(collector));
   }
 
   public String getClassName() {
@@ -38,11 +56,23 @@ public class ClassNode {
   }
 
   public Map<String, FieldNode> getFields() {
-    return new HashMap<>(fields);
+    return fields.toNameMap();
   }
 
   public Map<String, MethodNode> getMethods() {
-    return new HashMap<>(methods);
+    return methods.toNameMap();
+  }
+
+  public FieldNode getField(int symbol) {
+    return fields.get(symbol);
+  }
+
+  public MethodNode getMethod(int symbol) {
+    return methods.get(symbol);
+  }
+
+  public MethodNode getMethod(String name) {
+    return methods.get(name);
   }
 
   public List<String> getInheritanceChain() {
@@ -51,20 +81,18 @@ public class ClassNode {
 
   public void markReachableObjects(Set<Long> reachable) {
     // Mark field values
-    for (FieldNode field : fields.values()) {
-      field.markReachableObjects(reachable);
-    }
+    fields.forEach((symbol, field) -> field.markReachableObjects(reachable));
 
     // Mark method objects
-    for (MethodNode method : methods.values()) {
-      method.markReachableObjects(reachable);
-    }
+    methods.forEach((symbol, method) -> method.markReachableObjects(reachable));
   }
 
   public static class FieldNode {
     private final String name;
     private final String type;
-    private Object value;
+    // Read by collector threads scanning roots
+    private volatile Object value;
+    private volatile IncrementalCollector collector;
 
     public FieldNode(String name, String type) {
       this.name = name;
@@ -84,7 +112,20 @@ public class ClassNode {
     }
 
     public void setValue(Object value) {
-      this.value = value;
+      IncrementalCollector current = collector;
+      if (current == null) {
+        this.value = value;
+        return;
+      }
+      boolean locked = current.beginStore();
+      try {
+        if (current.isCollecting()) {
+          current.storeBarrier(value);
+        }
+        this.value = value;
+      } finally {
+        current.endStore(locked);
+      }
     }
 
     public void markReachableObjects(Set<Long> reachable) {
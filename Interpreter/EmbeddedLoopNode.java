@@ -6,9 +6,13 @@ public class EmbeddedLoopNode extends Parser.Node {
   private final Parser.Node body;
   private final int maxIterations;
   private final long timeoutMs;
-  private final List<Object> iterationHistory;
+  private List<Object> iterationHistory;
   private int iterations;
   private long startTime;
+  // Back-edges taken while interpreted; past JitCompiler's threshold the loop runs compiled
+  private int backEdges;
+  private JitCompiler.CompiledCode compiled;
+  private boolean uncompilable;
 
   public EmbeddedLoopNode(Parser.Node condition, Parser.Node body, int maxIterations, long timeoutMs) {
     this.condition = condition;
@@ -36,18 +40,34 @@ public class EmbeddedLoopNode extends Parser.Node {
   }
 
   @Override
-  Object evaluate() {
-    startTime = System.currentTimeMillis();
-    iterations = 0;
+  Object evaluate(Frame frame) {
+    if (Profiler.isEnabled()) {
+      Profiler.enter(this, null, "EmbeddedLoopNode");
+      try {
+        return loop(frame);
+      } finally {
+        Profiler.exit();
+      }
+    }
+    return loop(frame);
+  }
 
-    while (iterations < maxIterations) {
-      // Check timeout
-      if (System.currentTimeMillis() - startTime > timeoutMs) {
-        throw new RuntimeException("Loop timeout exceeded: " + timeoutMs + "ms");
+  private Object loop(Frame frame) {
+    if (compiled != null) {
+      return compiled.execute(frame);
+    }
+    if (JitCompiler.isEnabled() && !uncompilable && backEdges >= JitCompiler.getBackEdgeThreshold()) {
+      compiled = JitCompiler.compile(this);
+      if (compiled != null) {
+        return compiled.execute(frame);
       }
+      uncompilable = true;
+    }
+    begin();
 
+    while (nextIteration()) {
       // Evaluate condition
-      Object condResult = condition.evaluate();
+      Object condResult = condition.evaluate(frame);
       if (!(condResult instanceof Boolean)) {
         throw new RuntimeException("Loop condition must evaluate to boolean");
       }
@@ -58,14 +78,11 @@ public class EmbeddedLoopNode extends Parser.Node {
 
       // Execute body with checkpoint
       try {
-        Object result = body.evaluate();
-        iterationHistory.add(result);
-        iterations++;
+        recordIteration(body.evaluate(frame));
+        backEdges++;
       } catch (Exception e) {
         // If we have history, we can rollback
-        if (!iterationHistory.isEmpty()) {
-          iterationHistory.remove(iterationHistory.size() - 1);
-        }
+        rollbackIteration();
         throw e;
       }
     }
@@ -73,6 +90,45 @@ public class EmbeddedLoopNode extends Parser.Node {
     return iterationHistory;
   }
 
+  // Loop steps, shared with RegisterVM so compiled loops keep the same state and metrics.
+  // Each run starts a fresh history; the list returned by the previous run is left as is.
+  void begin() {
+    startTime = System.currentTimeMillis();
+    iterations = 0;
+    iterationHistory = new ArrayList<>();
+  }
+
+  boolean nextIteration() {
+    if (iterations >= maxIterations) {
+      return false;
+    }
+    // Check timeout
+    if (System.currentTimeMillis() - startTime > timeoutMs) {
+      throw new RuntimeException("Loop timeout exceeded: " + timeoutMs + "ms");
+    }
+    return true;
+  }
+
+  void recordIteration(Object result) {
+    iterationHistory.add(result);
+    iterations++;
+  }
+
+  void rollbackIteration() {
+    if (!iterationHistory.isEmpty()) {
+      iterationHistory.remove(iterationHistory.size() - 1);
+    }
+  }
+
+  List<Object> result() {
+    return iterationHistory;
+  }
+
+  // Compiled code of this loop, or null while it is interpreted
+  public JitCompiler.CompiledCode getCompiledCode() {
+    return compiled;
+  }
+
   // Time-travel debugging support
   public List<Object> getIterationHistory() {
     return new ArrayList<>(iterationHistory);
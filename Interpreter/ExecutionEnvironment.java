@@ -1,127 +1,704 @@
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
 
 public class ExecutionEnvironment {
-  private final Map<String, Object> globalVariables;
-  private final Map<String, MethodNode> methods;
-  private final Map<String, ClassNode> classes;
-  private final ConcurrentHashMap<Long, Object> heap;
-  private final AtomicLong nextObjectId;
+  // Scheduler period while it steps a cycle, and otherwise
+  private static final long STEP_TICK_MICROS = 1000;
+  private static final long IDLE_TICK_MICROS = 100_000;
+  // Tags of values kept in the off-heap store, written as the payload's first byte
+  private static final byte BYTES = 1;
+  private static final byte INT = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte BOOLEAN = 4;
+
+  private final SymbolMap<Object> globalVariables;
+  private final SymbolMap<MethodNode> methods;
+  private final SymbolMap<ClassNode> classes;
+  private final HandleTable heap;
+  private final OffHeapAllocator store;
   private final ScheduledExecutorService gcExecutor;
   private final int maxHeapSize;
   private final int gcThreshold;
-  private final Map<String, Long> methodStartTimes;
+  private final IncrementalCollector collector;
+  private final SymbolMap<Long> methodStartTimes;
   private final Map<String, List<Long>> methodExecutionTimes;
 
+  // Activation arenas, indexed by id; idle ones are reused by the next activation
+  private volatile boolean arenaAllocation;
+  private volatile ActivationArena[] arenas = new ActivationArena[0];
+  private final Deque<ActivationArena> idleArenas = new ArrayDeque<>();
+  private final ThreadLocal<Deque<ActivationArena>> activations = ThreadLocal.withInitial(ArrayDeque::new);
+  private final LongAdder arenaAllocations = new LongAdder();
+  private final LongAdder promotions = new LongAdder();
+
+  // Allocation quotas of the activations running on each thread, innermost first;
+  // quotaActivations counts them over all threads, so allocations skip the lookup while
+  // no quota applies
+  private final ThreadLocal<Deque<AllocationQuota>> quotas = ThreadLocal.withInitial(ArrayDeque::new);
+  private final AtomicInteger quotaActivations = new AtomicInteger();
+
+  // Open handle scopes of all threads; the handles they hold are roots
+  private final Set<HandleScope> handleScopes = ConcurrentHashMap.newKeySet();
+
   // Time-travel logging
   private static final int LOG_CAPACITY = 100;
   private final Deque<VMState> stateLog = new ArrayDeque<>(LOG_CAPACITY);
   private VMState checkpointState = null;
 
+  // Byte arrays and boxed primitives are stored in an off-heap region of maxHeapSize bytes
   public ExecutionEnvironment(int maxHeapSize, int gcThreshold) {
-    this.globalVariables = new ConcurrentHashMap<>();
-    this.methods = new ConcurrentHashMap<>();
-    this.classes = new ConcurrentHashMap<>();
-    this.heap = new ConcurrentHashMap<>();
-    this.nextObjectId = new AtomicLong(1);
+    this(maxHeapSize, gcThreshold, new OffHeapAllocator(ByteBuffer.allocateDirect(maxHeapSize)));
+  }
+
+  // gcThreshold bounds both the heap's bytes (getHeapBytes()) and the off-heap bytes in
+  // use before a collection cycle starts
+  public ExecutionEnvironment(int maxHeapSize, int gcThreshold, OffHeapAllocator store) {
+    this.globalVariables = new SymbolMap<>();
+    this.methods = new SymbolMap<>();
+    this.classes = new SymbolMap<>();
+    this.store = store;
+    this.heap = new HandleTable(store::free);
     this.gcExecutor = Executors.newSingleThreadScheduledExecutor();
     this.maxHeapSize = maxHeapSize;
     this.gcThreshold = gcThreshold;
-    this.methodStartTimes = new ConcurrentHashMap<>();
+    this.methodStartTimes = new SymbolMap<>();
     this.methodExecutionTimes = new ConcurrentHashMap<>();
+    this.collector = new IncrementalCollector(heap, this::markReachableObjects);
 
     // Start GC scheduler
     startGCScheduler();
   }
 
+  // Each tick runs one bounded collector step while a cycle is in progress, and starts
+  // a cycle once the heap or the off-heap store holds more than gcThreshold bytes. In
+  // concurrent mode the collector's marker thread does the work and ticks only start cycles.
+  // Ticks come every STEP_TICK_MICROS only while there is a step to run, so an idle
+  // environment wakes no more often than before collection was incremental.
   private void startGCScheduler() {
-    gcExecutor.scheduleAtFixedRate(() -> {
-      if (heap.size() > gcThreshold) {
-        performGC();
+    gcExecutor.execute(this::gcTick);
+  }
+
+  private void gcTick() {
+    if (collector.isCollecting()) {
+      if (!collector.isConcurrent()) {
+        collector.step();
       }
-    }, 0, 100, TimeUnit.MILLISECONDS);
+    } else if (heap.byteSize() > gcThreshold || store.getUsedBytes() > gcThreshold) {
+      collector.startBackgroundCycle();
+    }
+    long delay = collector.isCollecting() && !collector.isConcurrent() ? STEP_TICK_MICROS : IDLE_TICK_MICROS;
+    try {
+      gcExecutor.schedule(this::gcTick, delay, TimeUnit.MICROSECONDS);
+    } catch (RejectedExecutionException e) {
+      // Shut down
+    }
   }
 
   public void registerMethod(String name, MethodNode method) {
-    methods.put(name, method);
+    method.setCollector(collector);
+    methods.put(Symbols.GLOBAL.intern(name), method);
     methodExecutionTimes.put(name, new ArrayList<>());
   }
 
   public void registerClass(String name, ClassNode clazz) {
-    classes.put(name, clazz);
+    clazz.setCollector(collector);
+    classes.put(Symbols.GLOBAL.intern(name), clazz);
   }
 
   public Object executeMethod(String methodName, Object... args) {
-    MethodNode method = methods.get(methodName);
+    return executeMethod(Symbols.GLOBAL.intern(methodName), args);
+  }
+
+  public Object executeMethod(int methodSymbol, Object... args) {
+    MethodNode method = methods.get(methodSymbol);
     if (method == null) {
-      throw new RuntimeException("Method not found: " + methodName);
+      throw new RuntimeException("Method not found: " + Symbols.GLOBAL.name(methodSymbol));
     }
 
     long startTime = System.currentTimeMillis();
-    methodStartTimes.put(methodName, startTime);
+    methodStartTimes.put(methodSymbol, startTime);
 
+    if (Profiler.isEnabled()) {
+      return profiledExecute(methodSymbol, method, args);
+    }
+    try {
+      return execute(method, args);
+    } finally {
+      methodStartTimes.remove(methodSymbol);
+    }
+  }
+
+  // Runs one activation of a method. With arena allocation on, the objects it allocates
+  // go into an arena that is dropped in one step when it returns; any of them reachable
+  // from the result are promoted to the heap first. If the method has an allocation
+  // quota, every object allocated or stored until it returns is charged to it, as well
+  // as to the quotas of the activations this one runs in.
+  public Object execute(MethodNode method, Object... args) {
+    boolean charged = enterQuota(method);
     try {
+      return activate(method, args);
+    } finally {
+      exitQuota(charged);
+    }
+  }
+
+  // Starts charging the thread's allocations to the method's quota. False if it has none
+  // or a recursive activation is already being charged; pass the result to exitQuota()
+  private boolean enterQuota(MethodNode method) {
+    AllocationQuota quota = method.getAllocationQuota();
+    if (quota == null) {
+      return false;
+    }
+    Deque<AllocationQuota> running = quotas.get();
+    if (running.contains(quota)) {
+      return false;
+    }
+    running.push(quota);
+    quotaActivations.incrementAndGet();
+    return true;
+  }
+
+  private void exitQuota(boolean charged) {
+    if (charged) {
+      quotaActivations.decrementAndGet();
+      quotas.get().pop();
+    }
+  }
+
+  private Object activate(MethodNode method, Object... args) {
+    if (!arenaAllocation) {
       return method.execute(this, args);
+    }
+    ActivationArena arena = openArena();
+    try {
+      return escape(method.execute(this, args));
+    } finally {
+      closeArena(arena);
+    }
+  }
+
+  // execute() for the int entry points of CallHandle, without boxing the arguments or
+  // the result; argCount picks the MethodNode.executeInt overload
+  int executeInt(MethodNode method, int argCount, int first, int second) {
+    boolean charged = enterQuota(method);
+    try {
+      return activateInt(method, argCount, first, second);
     } finally {
-      methodStartTimes.remove(methodName);
+      exitQuota(charged);
     }
   }
 
+  // An int result holds no handles, so nothing is promoted when the arena is dropped
+  private int activateInt(MethodNode method, int argCount, int first, int second) {
+    if (!arenaAllocation) {
+      return invokeInt(method, argCount, first, second);
+    }
+    ActivationArena arena = openArena();
+    try {
+      return invokeInt(method, argCount, first, second);
+    } finally {
+      closeArena(arena);
+    }
+  }
+
+  private int invokeInt(MethodNode method, int argCount, int first, int second) {
+    switch (argCount) {
+      case 0:
+        return method.executeInt(this);
+      case 1:
+        return method.executeInt(this, first);
+      default:
+        return method.executeInt(this, first, second);
+    }
+  }
+
+  // Escape-analysis-lite: an object allocated during an activation stays in its arena
+  // unless a handle to it is stored through this environment somewhere that outlives the
+  // activation (a global, a heap object, an object of another activation) or is part of
+  // the result; it is then promoted to the heap, and the new handle stored instead.
+  // Handles kept only in method locals, class fields or host code are not tracked and go
+  // stale when the activation returns. Applies to activations started afterwards.
+  public void setArenaAllocation(boolean enabled) {
+    arenaAllocation = enabled;
+  }
+
+  public boolean isArenaAllocation() {
+    return arenaAllocation;
+  }
+
+  private ActivationArena openArena() {
+    ActivationArena arena;
+    synchronized (idleArenas) {
+      arena = idleArenas.poll();
+      if (arena == null) {
+        ActivationArena[] current = arenas;
+        if (current.length == ActivationArena.MAX_ARENAS) {
+          throw new RuntimeException("Too many concurrent activations: " + current.length);
+        }
+        arena = new ActivationArena(current.length);
+        ActivationArena[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[arena.id] = arena;
+        arenas = grown;
+      }
+    }
+    activations.get().push(arena);
+    return arena;
+  }
+
+  private void closeArena(ActivationArena arena) {
+    activations.get().pop();
+    arena.reset();
+    synchronized (idleArenas) {
+      idleArenas.push(arena);
+    }
+  }
+
+  // The open arena owning an arena handle, or null if its activation has returned
+  private ActivationArena arenaOf(long objectId) {
+    ActivationArena[] current = arenas;
+    int id = ActivationArena.arenaIdOf(objectId);
+    if (id >= current.length || !current[id].owns(objectId)) {
+      return null;
+    }
+    return current[id];
+  }
+
+  // The value with arena handles replaced by handles to their promoted copies
+  private Object escape(Object value) {
+    return arenas.length == 0 ? value : promote(value, null);
+  }
+
+  // Promotes every arena object the value refers to, except those in keep. Containers are
+  // copied rather than changed in place when one of their handles is replaced.
+  private Object promote(Object value, ActivationArena keep) {
+    if (value instanceof Long) {
+      return promoteHandle((Long) value, keep);
+    }
+    if (value instanceof Object[]) {
+      Object[] elements = (Object[]) value;
+      Object[] copy = null;
+      for (int i = 0; i < elements.length; i++) {
+        Object element = promoteHandle(elements[i], keep);
+        if (element != elements[i]) {
+          if (copy == null) {
+            copy = elements.clone();
+          }
+          copy[i] = element;
+        }
+      }
+      return copy == null ? value : copy;
+    }
+    if (value instanceof List || value instanceof Set) {
+      Collection<?> elements = (Collection<?>) value;
+      if (!refersToArena(elements, keep)) {
+        return value;
+      }
+      Collection<Object> copy = value instanceof List ? new ArrayList<>() : new LinkedHashSet<>();
+      for (Object element : elements) {
+        copy.add(promoteHandle(element, keep));
+      }
+      return copy;
+    }
+    if (value instanceof Map) {
+      Map<?, ?> entries = (Map<?, ?>) value;
+      if (!refersToArena(entries.values(), keep)) {
+        return value;
+      }
+      Map<Object, Object> copy = new LinkedHashMap<>();
+      entries.forEach((key, element) -> copy.put(key, promoteHandle(element, keep)));
+      return copy;
+    }
+    return value;
+  }
+
+  private boolean refersToArena(Collection<?> elements, ActivationArena keep) {
+    for (Object element : elements) {
+      if (promoteHandle(element, keep) != element) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Object promoteHandle(Object element, ActivationArena keep) {
+    if (!(element instanceof Long)) {
+      return element;
+    }
+    long objectId = (Long) element;
+    if (!ActivationArena.isArenaHandle(objectId) || (keep != null && keep.owns(objectId))) {
+      return element;
+    }
+    ActivationArena arena = arenaOf(objectId);
+    if (arena == null) {
+      // Stale: stays dead wherever it is stored
+      return element;
+    }
+    long promoted = arena.forwardOf(objectId);
+    if (promoted == 0) {
+      // Forward before promoting what it refers to, so cycles end here
+      Object value = arena.get(objectId);
+      // The forward is a root until the activation returns, set as part of the allocation
+      promoted = allocateGlobal(value, global -> arena.forward(objectId, global));
+      Object rewritten = promote(value, null);
+      if (rewritten != value) {
+        storeObject(promoted, rewritten);
+      }
+      promotions.increment();
+    }
+    return promoted;
+  }
+
+  // Also records the call's duration in nanoseconds under getMethodExecutionTimes()
+  private Object profiledExecute(int methodSymbol, MethodNode method, Object... args) {
+    String name = Symbols.GLOBAL.name(methodSymbol);
+    long start = System.nanoTime();
+    try {
+      return Profiler.execute(method, null, this, args);
+    } finally {
+      List<Long> times = methodExecutionTimes.computeIfAbsent(name, key -> new ArrayList<>());
+      synchronized (times) {
+        times.add(System.nanoTime() - start);
+      }
+      methodStartTimes.remove(methodSymbol);
+    }
+  }
+
+  // Object ids are HandleTable handles: an id whose object was collected stays dead,
+  // and getObject() returns null for it even once the slot holds another object.
+  // Byte arrays, Integers, Doubles and Booleans are copied into the off-heap store,
+  // so getObject() returns an equal copy rather than the same instance. Inside an
+  // activation with arena allocation on, the id is a (negative) arena handle instead.
   public long allocateObject(Object value) {
-    long objectId = nextObjectId.getAndIncrement();
-    heap.put(objectId, value);
+    return allocateObject(value, null);
+  }
+
+  // With a scope, a new heap object is recorded in it as part of the allocation
+  long allocateObject(Object value, HandleScope scope) {
+    chargeQuotas(value);
+    if (arenaAllocation) {
+      ActivationArena arena = activations.get().peek();
+      if (arena != null && arena.hasRoom()) {
+        arenaAllocations.increment();
+        value = copy(value);
+        boolean locked = collector.beginStore();
+        try {
+          if (collector.isCollecting()) {
+            collector.storeBarrier(value);
+          }
+          return arena.allocate(value);
+        } finally {
+          collector.endStore(locked);
+        }
+      }
+    }
+    return allocateGlobal(escape(value), scope == null ? null : scope::add);
+  }
+
+  private long allocateGlobal(Object value) {
+    return allocateGlobal(value, null);
+  }
+
+  // With a root, the new handle is stored into it in the same step as the allocation, so
+  // no cycle can begin in between and sweep the object before anything refers to it
+  private long allocateGlobal(Object value, LongConsumer root) {
+    // Outside the collector's store lock: a full off-heap region runs a collection
+    int address = storeOffHeap(value);
+    if (root != null) {
+      return collector.allocateRooted(() -> place(value, address, root));
+    }
+    boolean locked = collector.beginStore();
+    try {
+      return place(value, address, null);
+    } finally {
+      collector.endStore(locked);
+    }
+  }
+
+  private long place(Object value, int address, LongConsumer root) {
+    long objectId = address < 0 ? heap.allocate(value) :
+        heap.allocatePayload(address, TypeSystem.shallowSize(value));
+    if (root != null) {
+      root.accept(objectId);
+    }
+    if (collector.isCollecting()) {
+      collector.allocated(objectId, value);
+    }
     return objectId;
   }
 
+  // Handle scopes make the handles host code holds roots; see HandleScope
+  public HandleScope openHandleScope() {
+    HandleScope scope = new HandleScope(this);
+    handleScopes.add(scope);
+    return scope;
+  }
+
+  void closeHandleScope(HandleScope scope) {
+    handleScopes.remove(scope);
+  }
+
+  // A store into a root, like setGlobalVariable()
+  void keepHandle(HandleScope scope, long handle) {
+    boolean locked = collector.beginStore();
+    try {
+      scope.add(handle);
+      if (collector.isCollecting()) {
+        collector.storeBarrier(handle);
+      }
+    } finally {
+      collector.endStore(locked);
+    }
+  }
+
+  // Replaces an object's value. Objects the value refers to (Long ids, directly or as
+  // elements of an array, Iterable or Map) are tracked by the collector through this
+  // store, so a stored container must not be mutated in place afterwards.
+  public void setObject(long objectId, Object value) {
+    chargeQuotas(value);
+    storeObject(objectId, value);
+  }
+
+  private void storeObject(long objectId, Object value) {
+    if (ActivationArena.isArenaHandle(objectId)) {
+      setArenaObject(objectId, value);
+      return;
+    }
+    value = escape(value);
+    int address = storeOffHeap(value);
+    boolean stored;
+    boolean locked = collector.beginStore();
+    try {
+      if (collector.isCollecting()) {
+        collector.writeBarrier(heap.get(objectId), value);
+      }
+      // Payload readers hold the store's lock, so they never see a released block
+      synchronized (store) {
+        stored = address < 0 ? heap.set(objectId, value) :
+            heap.setPayload(objectId, address, TypeSystem.shallowSize(value));
+      }
+    } finally {
+      collector.endStore(locked);
+    }
+    if (!stored) {
+      if (address >= 0) {
+        store.free(address);
+      }
+      throw new RuntimeException("No object with id " + objectId);
+    }
+  }
+
+  // Arena objects keep their handles to objects of the same activation; anything else
+  // they refer to is promoted
+  private void setArenaObject(long objectId, Object value) {
+    ActivationArena arena = arenaOf(objectId);
+    if (arena == null) {
+      throw new RuntimeException("No object with id " + objectId);
+    }
+    long promoted = arena.forwardOf(objectId);
+    if (promoted != 0) {
+      storeObject(promoted, value);
+      return;
+    }
+    value = copy(promote(value, arena));
+    boolean locked = collector.beginStore();
+    try {
+      if (collector.isCollecting()) {
+        collector.storeBarrier(value);
+      }
+      arena.set(objectId, value);
+    } finally {
+      collector.endStore(locked);
+    }
+  }
+
   public Object getObject(long objectId) {
-    return heap.get(objectId);
+    if (ActivationArena.isArenaHandle(objectId)) {
+      ActivationArena arena = arenaOf(objectId);
+      if (arena == null) {
+        return null;
+      }
+      long promoted = arena.forwardOf(objectId);
+      return promoted != 0 ? getObject(promoted) : copy(arena.get(objectId));
+    }
+    Object value = heap.get(objectId);
+    if (value != HandleTable.OFF_HEAP) {
+      return value;
+    }
+    synchronized (store) {
+      int address = heap.payloadOf(objectId);
+      return address < 0 ? heap.get(objectId) : loadOffHeap(address);
+    }
   }
 
-  private void performGC() {
-    Set<Long> reachable = new HashSet<>();
+  // Charges the quotas of the calling thread's activations for a new object
+  private void chargeQuotas(Object value) {
+    if (quotaActivations.get() == 0) {
+      return;
+    }
+    Deque<AllocationQuota> running = quotas.get();
+    if (running.isEmpty()) {
+      return;
+    }
+    int bytes = TypeSystem.shallowSize(value);
+    for (AllocationQuota quota : running) {
+      quota.charge(bytes);
+    }
+  }
+
+  // Byte arrays are copied in and out of arenas too, as they are for the off-heap store
+  private static Object copy(Object value) {
+    return value instanceof byte[] ? ((byte[]) value).clone() : value;
+  }
+
+  // Objects in the heap, arena objects excluded
+  public int getHeapObjectCount() {
+    return heap.size();
+  }
+
+  // Estimated bytes of the objects in the heap (TypeSystem.shallowSize()), arena objects
+  // excluded
+  public long getHeapBytes() {
+    return heap.byteSize();
+  }
 
-    // Mark phase
-    markReachableObjects(reachable);
+  public long getArenaAllocationCount() {
+    return arenaAllocations.sum();
+  }
+
+  // Arena objects copied to the heap because they escaped their activation
+  public long getPromotionCount() {
+    return promotions.sum();
+  }
 
-    // Sweep phase
-    sweepUnreachableObjects(reachable);
+  public OffHeapAllocator getOffHeapAllocator() {
+    return store;
+  }
+
+  // Address of the value's off-heap copy, or -1 if it is not a byte array or boxed
+  // primitive, or if the region has no room even after a collection; the value is then
+  // kept on the heap as is
+  private int storeOffHeap(Object value) {
+    int length;
+    if (value instanceof byte[]) {
+      length = 1 + ((byte[]) value).length;
+    } else if (value instanceof Integer) {
+      length = 5;
+    } else if (value instanceof Double) {
+      length = 9;
+    } else if (value instanceof Boolean) {
+      length = 2;
+    } else {
+      return -1;
+    }
+    int address = store.tryAllocate(length);
+    if (address < 0) {
+      // Region full: finish any cycle in progress, then reclaim everything unreachable
+      collectGarbage();
+      collectGarbage();
+      address = store.tryAllocate(length);
+      if (address < 0) {
+        return -1;
+      }
+    }
+    if (value instanceof byte[]) {
+      store.putByte(address, 0, BYTES);
+      store.putBytes(address, 1, (byte[]) value);
+    } else if (value instanceof Integer) {
+      store.putByte(address, 0, INT);
+      store.putInt(address, 1, (Integer) value);
+    } else if (value instanceof Double) {
+      store.putByte(address, 0, DOUBLE);
+      store.putLong(address, 1, Double.doubleToRawLongBits((Double) value));
+    } else {
+      store.putByte(address, 0, BOOLEAN);
+      store.putByte(address, 1, (byte) ((Boolean) value ? 1 : 0));
+    }
+    return address;
+  }
+
+  private Object loadOffHeap(int address) {
+    switch (store.getByte(address, 0)) {
+      case BYTES:
+        byte[] bytes = new byte[store.length(address) - 1];
+        store.getBytes(address, 1, bytes);
+        return bytes;
+      case INT:
+        return store.getInt(address, 1);
+      case DOUBLE:
+        return Double.longBitsToDouble(store.getLong(address, 1));
+      default:
+        return store.getByte(address, 1) != 0;
+    }
+  }
+
+  public IncrementalCollector getCollector() {
+    return collector;
+  }
+
+  // Runs a full collection on the calling thread, in the same bounded steps as the scheduler
+  public void collectGarbage() {
+    collector.collect();
   }
 
   private void markReachableObjects(Set<Long> reachable) {
     // Mark global variables
-    for (Object value : globalVariables.values()) {
+    globalVariables.forEach((symbol, value) -> {
       if (value instanceof Long) {
         reachable.add((Long) value);
       }
-    }
+    });
 
     // Mark method arguments and local variables
-    for (MethodNode method : methods.values()) {
-      method.markReachableObjects(reachable);
-    }
+    methods.forEach((symbol, method) -> method.markReachableObjects(reachable));
 
     // Mark class static fields
-    for (ClassNode clazz : classes.values()) {
-      clazz.markReachableObjects(reachable);
+    classes.forEach((symbol, clazz) -> clazz.markReachableObjects(reachable));
+
+    // Mark handles held by host code in open handle scopes
+    for (HandleScope scope : handleScopes) {
+      scope.addRoots(reachable);
     }
-  }
 
-  private void sweepUnreachableObjects(Set<Long> reachable) {
-    heap.entrySet().removeIf(entry -> !reachable.contains(entry.getKey()));
+    // Mark heap objects referenced from open activation arenas, and their promoted copies
+    for (ActivationArena arena : arenas) {
+      arena.forEachValue(value -> IncrementalCollector.forEachReference(value, reachable::add));
+      arena.forEachForward(reachable::add);
+    }
   }
 
   public void setGlobalVariable(String name, Object value) {
-    if (value instanceof Long) {
-      globalVariables.put(name, value);
-    } else {
-      long objectId = allocateObject(value);
-      globalVariables.put(name, objectId);
+    setGlobalVariable(Symbols.GLOBAL.intern(name), value);
+  }
+
+  public void setGlobalVariable(int symbol, Object value) {
+    if (!(value instanceof Long)) {
+      chargeQuotas(value);
+      allocateGlobal(escape(value), objectId -> globalVariables.put(symbol, objectId));
+      return;
+    }
+    value = escape(value);
+    boolean locked = collector.beginStore();
+    try {
+      if (collector.isCollecting()) {
+        collector.storeBarrier(value);
+      }
+      globalVariables.put(symbol, value);
+    } finally {
+      collector.endStore(locked);
     }
   }
 
   public Object getGlobalVariable(String name) {
-    Object value = globalVariables.get(name);
+    int symbol = Symbols.GLOBAL.lookup(name);
+    return symbol == Symbols.NONE ? null : getGlobalVariable(symbol);
+  }
+
+  public Object getGlobalVariable(int symbol) {
+    Object value = globalVariables.get(symbol);
     if (value instanceof Long) {
       return getObject((Long) value);
     }
@@ -132,8 +709,9 @@ public class ExecutionEnvironment {
     return Collections.unmodifiableMap(methodExecutionTimes);
   }
 
+  // maxHeapSize bounds the heap's bytes as well as the off-heap region
   public void verifyMemoryUsage() {
-    if (heap.size() > maxHeapSize * 0.9) { // 90% threshold
+    if (heap.byteSize() > maxHeapSize * 0.9 || store.getUsedBytes() > store.getCapacity() * 0.9) { // 90% threshold
       throw new RuntimeException("Memory usage exceeds safety threshold");
     }
   }
@@ -149,6 +727,7 @@ public class ExecutionEnvironment {
   }
 
   public void shutdown() {
+    collector.setConcurrent(false);
     gcExecutor.shutdown();
     try {
       if (!gcExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -189,21 +768,29 @@ public class ExecutionEnvironment {
 
   private VMState captureState() {
     // For demo: only heap and globals (deep copy recommended for real use)
-    return new VMState(new HashMap<>(globalVariables), new HashMap<>(heap));
+    Map<Long, Object> objects = heap.toMap();
+    objects.replaceAll((id, value) -> value == HandleTable.OFF_HEAP ? getObject(id) : value);
+    return new VMState(globalVariables.copy(), objects);
   }
 
   private void restoreState(VMState state) {
+    collector.abort();
     globalVariables.clear();
     globalVariables.putAll(state.globals);
-    heap.clear();
-    heap.putAll(state.heap);
+    heap.restore(state.heap);
+    state.heap.forEach((id, value) -> {
+      int address = storeOffHeap(value);
+      if (address >= 0) {
+        heap.setPayload(id, address, TypeSystem.shallowSize(value));
+      }
+    });
   }
 
   private static class VMState {
-    final Map<String, Object> globals;
+    final SymbolMap<Object> globals;
     final Map<Long, Object> heap;
 
-    VMState(Map<String, Object> globals, Map<Long, Object> heap) {
+    VMState(SymbolMap<Object> globals, Map<Long, Object> heap) {
       this.globals = globals;
       this.heap = heap;
     }
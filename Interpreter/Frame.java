@@ -0,0 +1,43 @@
+import java.util.Arrays;
+
+// Variables of one activation, indexed by the slots a Scope assigned at parse time.
+// Trees hold no variable state, so any number of frames can evaluate the same tree
+// concurrently. A slot past the end reads as unbound, the way a missing name did,
+// which keeps frames usable after their scope grows (an incremental reparse adding
+// a name).
+public final class Frame {
+  // For evaluation with no variables bound; it has no slots to write
+  public static final Frame EMPTY = new Frame(0);
+
+  private final Object[] values;
+
+  public Frame(int size) {
+    this.values = new Object[size];
+  }
+
+  private Frame(Object[] values) {
+    this.values = values;
+  }
+
+  public Object get(int slot) {
+    return slot < values.length ? values[slot] : null;
+  }
+
+  public void set(int slot, Object value) {
+    values[slot] = value;
+  }
+
+  public int size() {
+    return values.length;
+  }
+
+  public Frame copy() {
+    return new Frame(values.clone());
+  }
+
+  // Overwrites this frame with another of the same scope, as time-travel restores do
+  public void restore(Frame other) {
+    Arrays.fill(values, null);
+    System.arraycopy(other.values, 0, values, 0, Math.min(values.length, other.values.length));
+  }
+}
@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class FrameTest {
+
+    @Test
+    void testFrameSlotsIsolateActivations() throws Exception {
+        Script script = new ScriptCache(4096).compile("rate * count + offset; count == 0");
+        Scope scope = script.getScope();
+        assertEquals(3, scope.size());
+        assertEquals(0, scope.slotOf("rate"));
+        assertEquals(Scope.UNRESOLVED, scope.slotOf("missing"));
+
+        SymbolMap<Object> globals = new SymbolMap<>();
+        globals.put("rate", 7);
+        globals.put("count", 6);
+        globals.put("offset", 100);
+        Frame frame = scope.bind(globals);
+        assertEquals(142, script.getStatements().get(0).run(frame));
+        assertEquals(142, RegisterVM.execute(BytecodeCompiler.compile(script.getStatements().get(0)), frame));
+        assertEquals(false, script.run(frame));
+        // Unbound slots read as null, as an undefined name did
+        assertThrows(NullPointerException.class, () -> script.run(script.newFrame()));
+
+        // One shared tree, a frame per activation
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                results.add(pool.submit(() -> {
+                    Frame own = script.newFrame();
+                    for (int i = 0; i < 10_000; i++) {
+                        own.set(scope.slotOf("rate"), seed);
+                        own.set(scope.slotOf("count"), i);
+                        own.set(scope.slotOf("offset"), -seed);
+                        if ((Integer) script.getStatements().get(0).run(own) != seed * i - seed) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.Arrays;
+import java.util.Set;
+
+// Roots for handles held by host code, opened with ExecutionEnvironment.openHandleScope()
+// and closed when the host is done with them:
+//   try (HandleScope scope = env.openHandleScope()) {
+//     long leaf = scope.allocate(new Object[] { scope.allocate("inner") });
+//     ...
+//   }
+// An object allocated through a scope is recorded in it in the same step, under the
+// collector's store lock, so no root scan can fall between the allocation and the
+// record; handles obtained otherwise (read out of another object, say) are added with
+// keep(). Every handle stays reachable until the scope is closed, even once the host
+// has dropped it. Arena handles need no scope: their activation's arena is a root while
+// it runs. A scope may be shared between threads.
+public final class HandleScope implements AutoCloseable {
+  private final ExecutionEnvironment env;
+  private long[] handles = new long[16];
+  private int count;
+  private boolean closed;
+
+  HandleScope(ExecutionEnvironment env) {
+    this.env = env;
+  }
+
+  // ExecutionEnvironment.allocateObject(), with the new handle kept by this scope
+  public long allocate(Object value) {
+    checkOpen();
+    return env.allocateObject(value, this);
+  }
+
+  // Keeps a handle the host already holds reachable until the scope is closed
+  public long keep(long handle) {
+    checkOpen();
+    env.keepHandle(this, handle);
+    return handle;
+  }
+
+  public synchronized int size() {
+    return count;
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    env.closeHandleScope(this);
+  }
+
+  synchronized void add(long handle) {
+    if (count == handles.length) {
+      handles = Arrays.copyOf(handles, count * 2);
+    }
+    handles[count++] = handle;
+  }
+
+  synchronized void addRoots(Set<Long> roots) {
+    for (int i = 0; i < count; i++) {
+      roots.add(handles[i]);
+    }
+  }
+
+  private synchronized void checkOpen() {
+    if (closed) {
+      throw new RuntimeException("Handle scope is closed");
+    }
+  }
+}
@@ -0,0 +1,374 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+// Object table behind the ExecutionEnvironment heap. Objects live in fixed-size pages of
+// primitive-indexed slots, and a handle is the slot number plus the slot's generation,
+// so lookups are two array reads with no hashing or boxing. Freed slots go on a
+// lock-free free list and get a new generation, which makes every handle to the old
+// occupant stale: get() returns null for it instead of another object.
+//
+// Handles keep the generation (never 0) in the high 32 bits and slot + 1 in the low 32
+// bits, so they are positive and 0 is never a handle. Each slot also has a mark word
+// for IncrementalCollector, compared against the collector's cycle numbers so marks
+// never need clearing. Readers are lock-free; only adding a page takes a lock.
+//
+// A slot may instead hold an off-heap payload: its value is the OFF_HEAP marker and the
+// payload's address sits in a primitive array beside it. The releaser given to the
+// constructor is called with that address when the slot is freed or overwritten.
+//
+// Each slot also records its object's size in bytes (TypeSystem.shallowSize() of the
+// value, payloads included), and the table keeps their sum for byte-based budgets.
+public final class HandleTable {
+  static final Object OFF_HEAP = new Object();
+  static final int PAGE_BITS = 10;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+  private static final int NO_SLOT = -1;
+
+  private volatile Page[] pages = new Page[0];
+  // Slots handed out at least once; every slot below this is either live or on the free list
+  private final AtomicInteger top = new AtomicInteger();
+  // Free list head: slot + 1 in the low 32 bits (0 when empty), a tag bumped on each change above
+  private final AtomicLong freeHead = new AtomicLong();
+  private final LongAdder size = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  // Mark stamped into new objects, chosen by the collector
+  private volatile int allocationMark;
+  private final IntConsumer releaser;
+
+  public HandleTable() {
+    this(address -> {
+    });
+  }
+
+  public HandleTable(IntConsumer releaser) {
+    this.releaser = releaser;
+  }
+
+  public long allocate(Object value) {
+    Objects.requireNonNull(value);
+    return allocate(value, 0, TypeSystem.shallowSize(value));
+  }
+
+  // Handle for an off-heap payload standing for an object of the given size; get()
+  // returns OFF_HEAP for it
+  long allocatePayload(int address, int objectBytes) {
+    return allocate(OFF_HEAP, address, objectBytes);
+  }
+
+  private long allocate(Object value, int address, int objectBytes) {
+    int slot = popFree();
+    if (slot == NO_SLOT) {
+      slot = top.getAndIncrement();
+      if (slot < 0) {
+        throw new RuntimeException("Handle table is full");
+      }
+      ensurePage(slot >>> PAGE_BITS);
+    }
+    Page page = pages[slot >>> PAGE_BITS];
+    int offset = slot & PAGE_MASK;
+    int generation = page.generations.get(offset);
+    if (generation == 0) {
+      generation = 1;
+      page.generations.lazySet(offset, generation);
+    }
+    // Ordered stores: the handle reaches other threads through a later synchronizing write
+    page.marks.lazySet(offset, allocationMark);
+    page.payloads.lazySet(offset, address);
+    page.sizes.lazySet(offset, objectBytes);
+    page.values.lazySet(offset, value);
+    size.increment();
+    bytes.add(objectBytes);
+    return handle(generation, slot);
+  }
+
+  // The object, or null if the handle was freed or never allocated
+  public Object get(long handle) {
+    Page page = pageOf(handle);
+    if (page == null) {
+      return null;
+    }
+    int offset = offsetOf(handle);
+    // Value before generation: a free bumps the generation after the value is read
+    Object value = page.values.get(offset);
+    return page.generations.get(offset) == generationOf(handle) ? value : null;
+  }
+
+  // Address of the off-heap payload behind a handle, or -1 if it has none or is stale
+  int payloadOf(long handle) {
+    Page page = pageOf(handle);
+    if (page == null) {
+      return -1;
+    }
+    int offset = offsetOf(handle);
+    int address = page.payloads.get(offset);
+    return get(handle) == OFF_HEAP ? address : -1;
+  }
+
+  public boolean contains(long handle) {
+    return get(handle) != null;
+  }
+
+  // Replaces the object under a live handle; false if the handle is stale
+  public boolean set(long handle, Object value) {
+    Objects.requireNonNull(value);
+    return set(handle, value, 0, TypeSystem.shallowSize(value));
+  }
+
+  // Callers serialize payload updates of a handle with its readers, as
+  // ExecutionEnvironment does under its store's lock
+  boolean setPayload(long handle, int address, int objectBytes) {
+    return set(handle, OFF_HEAP, address, objectBytes);
+  }
+
+  private boolean set(long handle, Object value, int address, int objectBytes) {
+    Page page = pageOf(handle);
+    if (page == null) {
+      return false;
+    }
+    int offset = offsetOf(handle);
+    while (true) {
+      Object current = page.values.get(offset);
+      if (current == null || page.generations.get(offset) != generationOf(handle)) {
+        return false;
+      }
+      int previous = page.payloads.get(offset);
+      if (page.values.compareAndSet(offset, current, value)) {
+        bytes.add(objectBytes - page.sizes.getAndSet(offset, objectBytes));
+        if (value == OFF_HEAP) {
+          page.payloads.set(offset, address);
+        }
+        if (current == OFF_HEAP) {
+          releaser.accept(previous);
+        }
+        return true;
+      }
+    }
+  }
+
+  public boolean free(long handle) {
+    Page page = pageOf(handle);
+    if (page == null) {
+      return false;
+    }
+    int offset = offsetOf(handle);
+    int generation = generationOf(handle);
+    if (!page.generations.compareAndSet(offset, generation, nextGeneration(generation))) {
+      return false;
+    }
+    if (page.values.get(offset) == OFF_HEAP) {
+      releaser.accept(page.payloads.get(offset));
+    }
+    page.values.lazySet(offset, null);
+    size.decrement();
+    bytes.add(-page.sizes.get(offset));
+    pushFree((int) handle - 1);
+    return true;
+  }
+
+  public int size() {
+    return size.intValue();
+  }
+
+  // Sum of the live objects' sizes
+  public long byteSize() {
+    return bytes.sum();
+  }
+
+  // Upper bound on slot numbers in use, for walking the table slot by slot
+  int slotLimit() {
+    return Math.min(top.get(), pages.length << PAGE_BITS);
+  }
+
+  // Handle of the object in a slot, or 0 if the slot is free
+  long handleAt(int slot) {
+    Page page = pages[slot >>> PAGE_BITS];
+    int offset = slot & PAGE_MASK;
+    if (page.values.get(offset) == null) {
+      return 0;
+    }
+    return handle(page.generations.get(offset), slot);
+  }
+
+  void setAllocationMark(int mark) {
+    allocationMark = mark;
+  }
+
+  // True if this call marked the object, false if it was already marked or is gone
+  boolean mark(long handle, int mark) {
+    Page page = pageOf(handle);
+    if (page == null) {
+      return false;
+    }
+    int offset = offsetOf(handle);
+    if (page.generations.get(offset) != generationOf(handle) || page.values.get(offset) == null) {
+      return false;
+    }
+    return page.marks.getAndSet(offset, mark) != mark;
+  }
+
+  // Frees the object in a slot unless its mark lies in [oldest, newest]; marks wrap around,
+  // so the bounds are compared by difference. True if it was freed.
+  boolean sweep(int slot, int oldest, int newest) {
+    Page page = pages[slot >>> PAGE_BITS];
+    int offset = slot & PAGE_MASK;
+    // Generation, value, mark: allocation stores the mark before the value, so a slot
+    // reused meanwhile shows its new stamp, or fails the free on the old generation
+    int generation = page.generations.get(offset);
+    if (page.values.get(offset) == null) {
+      return false;
+    }
+    int mark = page.marks.get(offset);
+    if (mark - oldest >= 0 && newest - mark >= 0) {
+      return false;
+    }
+    return free(handle(generation, slot));
+  }
+
+  // Live objects by handle, for VM state snapshots
+  public Map<Long, Object> toMap() {
+    Map<Long, Object> result = new HashMap<>();
+    for (int slot = 0; slot < slotLimit(); slot++) {
+      Object value = pages[slot >>> PAGE_BITS].values.get(slot & PAGE_MASK);
+      long handle = handleAt(slot);
+      if (value != null && handle != 0) {
+        result.put(handle, value);
+      }
+    }
+    return result;
+  }
+
+  // Makes the table hold exactly these objects, all on-heap, under the same handles. Not
+  // safe while other threads use the table; handles allocated since the snapshot become stale.
+  public synchronized void restore(Map<Long, Object> objects) {
+    int limit = top.get();
+    for (long handle : objects.keySet()) {
+      limit = Math.max(limit, (int) handle);
+    }
+    if (limit > 0) {
+      ensurePage((limit - 1) >>> PAGE_BITS);
+    }
+    for (int slot = 0; slot < limit; slot++) {
+      Page page = pages[slot >>> PAGE_BITS];
+      int offset = slot & PAGE_MASK;
+      Object value = page.values.get(offset);
+      if (value != null) {
+        if (value == OFF_HEAP) {
+          releaser.accept(page.payloads.get(offset));
+        }
+        page.values.set(offset, null);
+        page.generations.set(offset, nextGeneration(page.generations.get(offset)));
+      }
+    }
+    for (Map.Entry<Long, Object> entry : objects.entrySet()) {
+      long handle = entry.getKey();
+      int slot = (int) handle - 1;
+      Page page = pages[slot >>> PAGE_BITS];
+      page.generations.set(slot & PAGE_MASK, generationOf(handle));
+      page.marks.set(slot & PAGE_MASK, 0);
+      page.sizes.set(slot & PAGE_MASK, TypeSystem.shallowSize(entry.getValue()));
+      page.values.set(slot & PAGE_MASK, entry.getValue());
+    }
+    freeHead.set(0);
+    for (int slot = limit - 1; slot >= 0; slot--) {
+      if (pages[slot >>> PAGE_BITS].values.get(slot & PAGE_MASK) == null) {
+        pushFree(slot);
+      }
+    }
+    top.set(limit);
+    size.reset();
+    size.add(objects.size());
+    bytes.reset();
+    objects.values().forEach(value -> bytes.add(TypeSystem.shallowSize(value)));
+  }
+
+  private int popFree() {
+    while (true) {
+      long head = freeHead.get();
+      int slot = (int) head - 1;
+      if (slot < 0) {
+        return NO_SLOT;
+      }
+      int next = pages[slot >>> PAGE_BITS].nextFree.get(slot & PAGE_MASK);
+      if (freeHead.compareAndSet(head, nextHead(head, next))) {
+        return slot;
+      }
+    }
+  }
+
+  private void pushFree(int slot) {
+    AtomicIntegerArray nextFree = pages[slot >>> PAGE_BITS].nextFree;
+    while (true) {
+      long head = freeHead.get();
+      nextFree.lazySet(slot & PAGE_MASK, (int) head);
+      if (freeHead.compareAndSet(head, nextHead(head, slot + 1))) {
+        return;
+      }
+    }
+  }
+
+  // The tag changes on every update, so a pop that read a since-recycled head fails its CAS
+  private static long nextHead(long head, int slotPlusOne) {
+    return ((head >>> 32) + 1) << 32 | (slotPlusOne & 0xFFFFFFFFL);
+  }
+
+  private void ensurePage(int pageIndex) {
+    if (pageIndex < pages.length) {
+      return;
+    }
+    synchronized (this) {
+      Page[] current = pages;
+      if (pageIndex < current.length) {
+        return;
+      }
+      Page[] grown = new Page[Math.max(pageIndex + 1, current.length * 2)];
+      System.arraycopy(current, 0, grown, 0, current.length);
+      for (int i = current.length; i < grown.length; i++) {
+        grown[i] = new Page();
+      }
+      pages = grown;
+    }
+  }
+
+  private Page pageOf(long handle) {
+    int slot = (int) handle - 1;
+    Page[] current = pages;
+    if (handle <= 0 || generationOf(handle) == 0 || slot < 0 || slot >>> PAGE_BITS >= current.length) {
+      return null;
+    }
+    return current[slot >>> PAGE_BITS];
+  }
+
+  private static int offsetOf(long handle) {
+    return ((int) handle - 1) & PAGE_MASK;
+  }
+
+  private static int generationOf(long handle) {
+    return (int) (handle >>> 32);
+  }
+
+  private static long handle(int generation, int slot) {
+    return (long) generation << 32 | (slot + 1L);
+  }
+
+  // Generations stay positive so handles do
+  private static int nextGeneration(int generation) {
+    return generation == Integer.MAX_VALUE ? 1 : generation + 1;
+  }
+
+  private static final class Page {
+    final AtomicReferenceArray<Object> values = new AtomicReferenceArray<>(PAGE_SIZE);
+    final AtomicIntegerArray generations = new AtomicIntegerArray(PAGE_SIZE);
+    final AtomicIntegerArray marks = new AtomicIntegerArray(PAGE_SIZE);
+    final AtomicIntegerArray nextFree = new AtomicIntegerArray(PAGE_SIZE);
+    final AtomicIntegerArray payloads = new AtomicIntegerArray(PAGE_SIZE);
+    final AtomicIntegerArray sizes = new AtomicIntegerArray(PAGE_SIZE);
+  }
+}
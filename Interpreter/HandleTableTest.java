@@ -0,0 +1,75 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class HandleTableTest {
+
+    @Test
+    void testHandleTableReusesSlotsAndDetectsStaleHandles() throws Exception {
+        HandleTable table = new HandleTable();
+        long first = table.allocate("first");
+        assertEquals("first", table.get(first));
+        assertTrue(table.free(first));
+        assertTrue(!table.free(first));
+
+        // The slot is reused under a new generation, so the old handle stays dead
+        long second = table.allocate("second");
+        assertEquals((int) first, (int) second);
+        assertEquals(null, table.get(first));
+        assertTrue(!table.set(first, "stale"));
+        assertEquals("second", table.get(second));
+        assertEquals(null, table.get(0));
+        assertEquals(null, table.get(12345));
+
+        // Threads allocating and freeing at once never share a live handle
+        int threads = 4;
+        int perThread = 3 * (1 << HandleTable.PAGE_BITS);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Long>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                results.add(pool.submit(() -> {
+                    List<Long> kept = new ArrayList<>();
+                    for (int i = 0; i < perThread; i++) {
+                        long handle = table.allocate(id * perThread + i);
+                        if (i % 2 == 0) {
+                            assertTrue(table.free(handle));
+                        } else {
+                            kept.add(handle);
+                        }
+                    }
+                    return kept;
+                }));
+            }
+            Set<Long> live = new HashSet<>();
+            for (int t = 0; t < threads; t++) {
+                List<Long> kept = results.get(t).get();
+                for (int i = 0; i < kept.size(); i++) {
+                    assertTrue(live.add(kept.get(i)));
+                    assertEquals(t * perThread + 2 * i + 1, table.get(kept.get(i)));
+                }
+            }
+            assertEquals(live.size() + 1, table.size());
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<Long, Object> snapshot = table.toMap();
+        long extra = table.allocate("extra");
+        table.free(second);
+        table.restore(snapshot);
+        assertEquals("second", table.get(second));
+        assertEquals(null, table.get(extra));
+        assertEquals(snapshot.size(), table.size());
+    }
+}
@@ -0,0 +1,537 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// Incremental tri-color mark-sweep collector for the ExecutionEnvironment heap. Heap
+// objects refer to each other by handle: a Long value, or Long elements of an Object[],
+// Iterable or Map value. An object is white until shaded, gray while in the worklist
+// and black once its references have been shaded; shaded objects carry the cycle's
+// mark in their HandleTable slot. A cycle scans the roots, then each step() marks or
+// sweeps at most workBudget objects, so the time the collector holds its lock is
+// bounded by the budget rather than the heap size.
+//
+// Mutators keep the invariant with an insertion barrier: while a cycle runs, every
+// handle stored into the heap or a root is shaded, and objects allocated during the
+// cycle are stamped by the table with the mark after the cycle's. A root store may still
+// race with the barrier's phase check, so the mark phase ends only when a final root
+// rescan finds nothing new. Sweeping walks the table slot by slot and frees the
+// objects whose mark is older than the cycle's; slots reused meanwhile carry the stamp
+// and survive.
+//
+// Handles held only by host code are not roots unless the host keeps them in a
+// HandleScope, and a new object usually spends a moment there before it is stored.
+// Cycles therefore advance the mark by two, and the stamp stays in place until the next
+// cycle begins, so a background cycle (startBackgroundCycle()) can keep every object
+// allocated since the previous cycle started; unreachable ones go in the cycle after.
+// startCycle() and collect() reclaim everything unreachable.
+//
+// In concurrent mode (setConcurrent(true)) a marker thread runs whole cycles instead of
+// steps, while mutators keep running. Correctness then rests on a snapshot-at-the-
+// beginning barrier: a store logs the handles it overwrites as well as the ones it
+// writes, so everything reachable when the roots were scanned is marked even if it is
+// unlinked before the marker gets to it; roots are not logged, since the scan saw what
+// they held and everything stored into them later is shaded. Mutators hold a shared lock
+// from a store's barrier through the store itself (beginStore()) and shade into a
+// lock-free log; the marker takes the lock exclusively only to scan the roots and to
+// check that the log is empty before sweeping, and those two are the cycle's pauses.
+// Sweeping runs concurrently too.
+public final class IncrementalCollector {
+  static final int IDLE = 0;
+  static final int MARK = 1;
+  static final int SWEEP = 2;
+  public static final int DEFAULT_WORK_BUDGET = 256;
+  private static final int PAUSE_LOG_SIZE = 4096;
+  // Work owed per allocation during a cycle; above 1 so marking and sweeping outpace allocation
+  private static final int ASSIST_WORK = 2;
+  // Cycle requests for the marker thread
+  private static final int NO_REQUEST = 0;
+  private static final int BACKGROUND_REQUEST = 1;
+  private static final int FULL_REQUEST = 2;
+
+  private final HandleTable heap;
+  private final Consumer<Set<Long>> rootScanner;
+  private volatile int phase = IDLE;
+  private volatile int workBudget = DEFAULT_WORK_BUDGET;
+  // Mark of the current or last cycle; objects allocated since it began carry mark + 1
+  private int mark;
+  // Sweeping keeps objects marked from here to mark + 1, comparing with wrap-around
+  private int oldestKept;
+  private long[] gray = new long[64];
+  private int grayCount;
+  private int sweepCursor;
+  private int assistDebt;
+  private final Consumer<Long> shader = this::shade;
+  private final Consumer<Long> keeper = this::keep;
+
+  // Concurrent mode: barriers hold the shared side of world, the marker the exclusive side
+  private volatile boolean concurrent;
+  private Thread marker;
+  private int requested = NO_REQUEST;
+  private final ReentrantReadWriteLock world = new ReentrantReadWriteLock();
+  private final ConcurrentLinkedQueue<Long> logged = new ConcurrentLinkedQueue<>();
+  private final Consumer<Long> logger = this::log;
+
+  // Most recent pauses in a ring, plus totals over the collector's lifetime
+  private final long[] pauses = new long[PAUSE_LOG_SIZE];
+  private long pauseCount;
+  private long maxPauseNanos;
+  private long cycles;
+  private long freed;
+
+  IncrementalCollector(HandleTable heap, Consumer<Set<Long>> rootScanner) {
+    this.heap = heap;
+    this.rootScanner = rootScanner;
+    heap.setAllocationMark(mark + 1);
+  }
+
+  public boolean isCollecting() {
+    return phase != IDLE;
+  }
+
+  public int getWorkBudget() {
+    return workBudget;
+  }
+
+  public void setWorkBudget(int objects) {
+    if (objects <= 0) {
+      throw new IllegalArgumentException("Work budget must be positive: " + objects);
+    }
+    workBudget = objects;
+  }
+
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+
+  // Switches between incremental steps and a concurrent marker thread, after finishing
+  // the cycle in progress
+  public synchronized void setConcurrent(boolean enabled) {
+    if (enabled == concurrent) {
+      return;
+    }
+    if (concurrent) {
+      awaitIdle();
+    } else {
+      while (step()) {
+        // Finish the incremental cycle before the marker thread takes over
+      }
+    }
+    concurrent = enabled;
+    if (enabled) {
+      marker = new Thread(this::runMarker, "gc-marker");
+      marker.setDaemon(true);
+      marker.start();
+    } else {
+      marker = null;
+      notifyAll();
+    }
+  }
+
+  // Begins a cycle by shading the roots; does nothing if one is already running
+  public void startCycle() {
+    startCycle(false);
+  }
+
+  // As startCycle(), but objects allocated since the last cycle survive this one
+  void startBackgroundCycle() {
+    startCycle(true);
+  }
+
+  private synchronized void startCycle(boolean keepRecent) {
+    if (concurrent) {
+      // The marker thread picks the request up; a full one is not downgraded
+      if (phase == IDLE && requested != FULL_REQUEST) {
+        requested = keepRecent ? BACKGROUND_REQUEST : FULL_REQUEST;
+        notifyAll();
+      }
+      return;
+    }
+    if (phase != IDLE) {
+      return;
+    }
+    long start = System.nanoTime();
+    begin(keepRecent);
+    scanRoots();
+    phase = MARK;
+    recordPause(System.nanoTime() - start);
+  }
+
+  private void begin(boolean keepRecent) {
+    mark += 2;
+    oldestKept = keepRecent ? mark - 1 : mark;
+    heap.setAllocationMark(mark + 1);
+  }
+
+  // One bounded slice of work; false once the cycle has finished. In concurrent mode the
+  // marker thread does the work, and this only waits briefly for it.
+  public synchronized boolean step() {
+    if (concurrent) {
+      if (phase != IDLE || requested != NO_REQUEST) {
+        waitForMarker(1);
+      }
+      return phase != IDLE || requested != NO_REQUEST;
+    }
+    if (phase == IDLE) {
+      return false;
+    }
+    long start = System.nanoTime();
+    int budget = workBudget;
+    if (phase == MARK) {
+      budget = mark(budget);
+    }
+    if (phase == SWEEP && budget > 0) {
+      sweep(budget);
+    }
+    recordPause(System.nanoTime() - start);
+    return phase != IDLE;
+  }
+
+  // Runs a whole cycle, starting one if needed
+  public void collect() {
+    if (concurrent) {
+      synchronized (this) {
+        // A cycle already running may have started before the caller's last stores
+        long target = cycles + (phase == IDLE ? 1 : 2);
+        startCycle();
+        while (cycles < target && concurrent) {
+          waitForMarker(0);
+          if (phase == IDLE && requested == NO_REQUEST && cycles < target) {
+            startCycle();
+          }
+        }
+      }
+      return;
+    }
+    startCycle();
+    while (step()) {
+      // Slices are still bounded, so other threads get the lock in between
+    }
+  }
+
+  private int mark(int budget) {
+    while (budget > 0) {
+      if (grayCount == 0) {
+        // Catch references stored without a barrier; marking is done when nothing turns up
+        scanRoots();
+        if (grayCount == 0) {
+          phase = SWEEP;
+          sweepCursor = 0;
+          return budget;
+        }
+        budget--;
+        continue;
+      }
+      shadeReferences(heap.get(gray[--grayCount]));
+      budget--;
+    }
+    return 0;
+  }
+
+  private void sweep(int budget) {
+    int limit = heap.slotLimit();
+    while (budget > 0 && sweepCursor < limit) {
+      if (heap.sweep(sweepCursor, oldestKept, mark + 1)) {
+        freed++;
+      }
+      sweepCursor++;
+      budget--;
+    }
+    if (sweepCursor >= limit) {
+      finishCycle();
+      cycles++;
+    }
+  }
+
+  private void finishCycle() {
+    phase = IDLE;
+    grayCount = 0;
+    assistDebt = 0;
+  }
+
+  private void runMarker() {
+    while (true) {
+      boolean keepRecent;
+      synchronized (this) {
+        while (requested == NO_REQUEST && marker == Thread.currentThread()) {
+          waitForMarker(0);
+        }
+        // Replaced or switched off while waiting
+        if (marker != Thread.currentThread()) {
+          return;
+        }
+        keepRecent = requested == BACKGROUND_REQUEST;
+        requested = NO_REQUEST;
+      }
+      concurrentCycle(keepRecent);
+    }
+  }
+
+  private void concurrentCycle(boolean keepRecent) {
+    Lock exclusive = world.writeLock();
+    long start = System.nanoTime();
+    exclusive.lock();
+    try {
+      begin(keepRecent);
+      phase = MARK;
+      scanRoots();
+    } finally {
+      exclusive.unlock();
+    }
+    pause(System.nanoTime() - start);
+
+    boolean marking = true;
+    while (marking) {
+      while (true) {
+        if (grayCount > 0) {
+          shadeReferences(heap.get(gray[--grayCount]));
+          continue;
+        }
+        Long handle = logged.poll();
+        if (handle == null) {
+          break;
+        }
+        shadeReferences(heap.get(handle));
+      }
+      // No barrier can be between marking an object and logging it while this is held
+      start = System.nanoTime();
+      exclusive.lock();
+      try {
+        if (logged.isEmpty()) {
+          phase = SWEEP;
+          marking = false;
+        }
+      } finally {
+        exclusive.unlock();
+      }
+      pause(System.nanoTime() - start);
+    }
+
+    long swept = 0;
+    int limit = heap.slotLimit();
+    for (int slot = 0; slot < limit; slot++) {
+      if (heap.sweep(slot, oldestKept, mark + 1)) {
+        swept++;
+      }
+    }
+    synchronized (this) {
+      freed += swept;
+      cycles++;
+      finishCycle();
+      notifyAll();
+    }
+  }
+
+  private synchronized void pause(long nanos) {
+    recordPause(nanos);
+  }
+
+  private void awaitIdle() {
+    while (phase != IDLE || requested != NO_REQUEST) {
+      waitForMarker(0);
+    }
+  }
+
+  // Callers hold the monitor
+  private void waitForMarker(long millis) {
+    try {
+      wait(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for the collector", e);
+    }
+  }
+
+  private void scanRoots() {
+    Set<Long> roots = new HashSet<>();
+    rootScanner.accept(roots);
+    for (Long root : roots) {
+      shade(root);
+    }
+  }
+
+  // In concurrent mode a barrier and the store it guards must not straddle one of the
+  // marker's pauses, so mutators bracket both (and allocations) with these:
+  //   boolean locked = collector.beginStore();
+  //   try { barrier; store } finally { collector.endStore(locked); }
+  // Nothing in between may wait for a collection.
+  boolean beginStore() {
+    if (!concurrent) {
+      return false;
+    }
+    world.readLock().lock();
+    return true;
+  }
+
+  void endStore(boolean locked) {
+    if (locked) {
+      world.readLock().unlock();
+    }
+  }
+
+  // For a root store that cannot follow its barrier because the handle does not exist
+  // yet, such as a new object recorded in a HandleScope: no root scan or step of the
+  // cycle runs between the allocation and the store
+  long allocateRooted(LongSupplier allocation) {
+    if (concurrent) {
+      world.readLock().lock();
+      try {
+        return allocation.getAsLong();
+      } finally {
+        world.readLock().unlock();
+      }
+    }
+    synchronized (this) {
+      return allocation.getAsLong();
+    }
+  }
+
+  // Write barrier for a value stored into a root (a global, method local or class field)
+  // while a cycle runs
+  void storeBarrier(Object value) {
+    writeBarrier(null, value);
+  }
+
+  // Write barrier for a store into the heap, where previous is the value overwritten. The
+  // incremental collector only needs the stored value; concurrent marking logs both.
+  void writeBarrier(Object previous, Object value) {
+    if (concurrent) {
+      if (phase == MARK) {
+        forEachReference(previous, logger);
+        forEachReference(value, logger);
+      }
+      return;
+    }
+    synchronized (this) {
+      if (phase == MARK) {
+        shadeReferences(value);
+      } else if (phase == SWEEP) {
+        // Marking is over; keep what is referenced from being swept without tracing it
+        forEachReference(value, keeper);
+      }
+    }
+  }
+
+  // The table normally stamps the new object already, but not if the cycle started while
+  // it was being allocated, so the stamp is written here too: it may not be reachable from
+  // a root yet, and the assist step below must not sweep it. What it refers to is shaded
+  // while marking and kept while sweeping. Each such allocation also owes ASSIST_WORK
+  // units, and the allocating thread runs a step whenever a budget's worth is owed, so a
+  // cycle finishes however fast the heap grows. The marker thread needs no assist.
+  void allocated(long handle, Object value) {
+    if (concurrent) {
+      if (phase != IDLE) {
+        heap.mark(handle, mark + 1);
+      }
+      if (phase == MARK) {
+        forEachReference(value, logger);
+      }
+      return;
+    }
+    synchronized (this) {
+      if (phase == IDLE) {
+        return;
+      }
+      heap.mark(handle, mark + 1);
+      if (phase == MARK) {
+        shadeReferences(value);
+      } else {
+        forEachReference(value, keeper);
+      }
+      assistDebt += ASSIST_WORK;
+      if (assistDebt >= workBudget) {
+        assistDebt = 0;
+        step();
+      }
+    }
+  }
+
+  // Drops the cycle in progress, for when the heap is replaced wholesale; a concurrent
+  // cycle is waited for instead
+  synchronized void abort() {
+    if (concurrent) {
+      awaitIdle();
+    } else {
+      finishCycle();
+    }
+  }
+
+  private void shade(Long handle) {
+    if (heap.mark(handle, mark)) {
+      if (grayCount == gray.length) {
+        gray = Arrays.copyOf(gray, grayCount * 2);
+      }
+      gray[grayCount++] = handle;
+    }
+  }
+
+  // Concurrent mode: shaded by a mutator, traced by the marker thread
+  private void log(Long handle) {
+    if (heap.mark(handle, mark)) {
+      logged.add(handle);
+    }
+  }
+
+  private void keep(Long handle) {
+    heap.mark(handle, mark);
+  }
+
+  private void shadeReferences(Object value) {
+    forEachReference(value, shader);
+  }
+
+  static void forEachReference(Object value, Consumer<Long> action) {
+    if (value instanceof Long) {
+      action.accept((Long) value);
+    } else if (value instanceof Object[]) {
+      for (Object element : (Object[]) value) {
+        if (element instanceof Long) {
+          action.accept((Long) element);
+        }
+      }
+    } else if (value instanceof Iterable) {
+      for (Object element : (Iterable<?>) value) {
+        if (element instanceof Long) {
+          action.accept((Long) element);
+        }
+      }
+    } else if (value instanceof Map) {
+      forEachReference(((Map<?, ?>) value).values(), action);
+    }
+  }
+
+  private void recordPause(long nanos) {
+    pauses[(int) (pauseCount % PAUSE_LOG_SIZE)] = nanos;
+    pauseCount++;
+    maxPauseNanos = Math.max(maxPauseNanos, nanos);
+  }
+
+  // Durations of the most recent pauses (root scans and steps, or in concurrent mode the
+  // times the marker held mutators off), sorted ascending
+  public synchronized long[] getRecentPauseNanos() {
+    long[] recent = Arrays.copyOf(pauses, (int) Math.min(pauseCount, PAUSE_LOG_SIZE));
+    Arrays.sort(recent);
+    return recent;
+  }
+
+  public synchronized long getMaxPauseNanos() {
+    return maxPauseNanos;
+  }
+
+  public synchronized long getPauseCount() {
+    return pauseCount;
+  }
+
+  public synchronized long getCycleCount() {
+    return cycles;
+  }
+
+  public synchronized long getFreedCount() {
+    return freed;
+  }
+}
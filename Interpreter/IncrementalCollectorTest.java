@@ -0,0 +1,207 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class IncrementalCollectorTest {
+
+    @Test
+    void testIncrementalCollectorKeepsReachableObjects() {
+        // Threshold out of reach, so cycles only run when the test starts them
+        ExecutionEnvironment env = new ExecutionEnvironment(1 << 20, Integer.MAX_VALUE);
+        try {
+            IncrementalCollector collector = env.getCollector();
+            collector.setWorkBudget(1);
+            long leaf = env.allocateObject("leaf");
+            long list = env.allocateObject(new Object[] { leaf });
+            long holder = env.allocateObject(new Object[0]);
+            long late = env.allocateObject("late");
+            long garbage = env.allocateObject("garbage");
+            env.setGlobalVariable("list", list);
+            env.setGlobalVariable("holder", holder);
+
+            collector.startCycle();
+            collector.step();
+            // Stored after the holder may already be black; the barrier must shade it
+            env.setObject(holder, new Object[] { late });
+            long fresh = env.allocateObject("fresh");
+            while (collector.step()) {
+                assertTrue(collector.getRecentPauseNanos().length > 0);
+            }
+
+            assertEquals("leaf", env.getObject(leaf));
+            assertEquals("late", env.getObject(late));
+            assertEquals("fresh", env.getObject(fresh));
+            assertEquals(null, env.getObject(garbage));
+            assertEquals(1, collector.getCycleCount());
+
+            // Unreferenced now, the object allocated mid-cycle goes in the next one
+            env.setObject(list, new Object[0]);
+            env.collectGarbage();
+            assertEquals(null, env.getObject(fresh));
+            assertEquals(null, env.getObject(leaf));
+            assertEquals("late", env.getObject(late));
+            assertEquals(3, collector.getFreedCount());
+        } finally {
+            env.shutdown();
+        }
+    }
+
+    @Test
+    void testConcurrentCollectorNeverFreesLiveObjects() throws Exception {
+        ExecutionEnvironment env = new ExecutionEnvironment(1 << 20, 200);
+        int threads = 4;
+        ExecutorService mutators = Executors.newFixedThreadPool(threads);
+        try {
+            env.getCollector().setConcurrent(true);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                MethodNode method = new MethodNode("holder" + id, new String[0], "void") {
+                    @Override
+                    public Object execute(ExecutionEnvironment env, Object... args) {
+                        return null;
+                    }
+                };
+                env.registerMethod("holder" + id, method);
+                ClassNode clazz = new ClassNode("Holder" + id);
+                env.registerClass("Holder" + id, clazz);
+                clazz.addField("value", "long");
+                ClassNode.FieldNode field = clazz.getField(Symbols.GLOBAL.intern("value"));
+                // Each new object is in a scope until it is stored; from then on the test's
+                // handle to it is not a root
+                long cell;
+                try (HandleScope scope = env.openHandleScope()) {
+                    cell = scope.allocate(new Object[0]);
+                    env.setGlobalVariable("cell" + id, cell);
+                }
+                results.add(mutators.submit(() -> {
+                    Random random = new Random(id);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1000);
+                    long leaf;
+                    try (HandleScope scope = env.openHandleScope()) {
+                        leaf = scope.allocate(new Object[] { scope.allocate("inner" + id) });
+                        env.setGlobalVariable("leaf" + id, leaf);
+                    }
+                    int location = 0;
+                    int moves = 0;
+                    while (System.nanoTime() < deadline) {
+                        // Each move stores the leaf in its next home before clearing the old one
+                        int next = (location + 1) % 4;
+                        if (random.nextInt(8) == 0) {
+                            try (HandleScope scope = env.openHandleScope()) {
+                                env.setObject(leaf, new Object[] { scope.allocate("inner" + id) });
+                            }
+                        }
+                        if (next == 0) {
+                            env.setGlobalVariable("leaf" + id, leaf);
+                        } else if (next == 1) {
+                            method.setLocalVariable("leaf", leaf);
+                        } else if (next == 2) {
+                            field.setValue(leaf);
+                        } else {
+                            env.setObject(cell, new Object[] { leaf });
+                        }
+                        if (location == 0) {
+                            env.setGlobalVariable("leaf" + id, 0L);
+                        } else if (location == 1) {
+                            method.setLocalVariable("leaf", null);
+                        } else if (location == 2) {
+                            field.setValue(null);
+                        } else {
+                            env.setObject(cell, new Object[0]);
+                        }
+                        location = next;
+                        for (int i = 0; i < 16; i++) {
+                            env.allocateObject(new Object[] { env.allocateObject("garbage") });
+                        }
+                        Object[] contents = (Object[]) env.getObject(leaf);
+                        assertTrue(contents != null, "leaf freed while reachable");
+                        assertEquals("inner" + id, env.getObject((Long) contents[0]));
+                        assertTrue(env.getObject(cell) != null, "cell freed while reachable");
+                        moves++;
+                    }
+                    return moves;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertTrue(result.get() > 0);
+            }
+            IncrementalCollector collector = env.getCollector();
+            assertTrue(collector.getCycleCount() >= 3, "only " + collector.getCycleCount() + " cycles");
+            assertTrue(collector.getFreedCount() > 0);
+
+            // Back in incremental mode, a full collection keeps just the cells, leaves and inners
+            collector.setConcurrent(false);
+            env.collectGarbage();
+            env.collectGarbage();
+            assertEquals(3 * threads, env.getHeapObjectCount());
+        } finally {
+            mutators.shutdownNow();
+            env.shutdown();
+        }
+    }
+
+    @Test
+    void testHandleScopesKeepHostHandlesAlive() {
+        ExecutionEnvironment env = new ExecutionEnvironment(1 << 20, Integer.MAX_VALUE);
+        try {
+            HandleScope outer = env.openHandleScope();
+            long kept;
+            try (HandleScope scope = env.openHandleScope()) {
+                long leaf = scope.allocate(new Object[] { scope.allocate("inner") });
+                long dropped = env.allocateObject("dropped");
+                env.collectGarbage();
+                Object[] fields = (Object[]) env.getObject(leaf);
+                assertEquals("inner", env.getObject((Long) fields[0]));
+                assertEquals(null, env.getObject(dropped));
+                assertEquals(2, scope.size());
+                kept = outer.keep((Long) fields[0]);
+            }
+            // Once the scope is closed only what another scope kept survives
+            env.collectGarbage();
+            assertEquals("inner", env.getObject(kept));
+            assertEquals(1, env.getHeapObjectCount());
+            outer.close();
+            env.collectGarbage();
+            assertEquals(0, env.getHeapObjectCount());
+            assertThrows(RuntimeException.class, () -> outer.allocate("late"));
+        } finally {
+            env.shutdown();
+        }
+    }
+
+    @Test
+    void testGlobalStoresSurviveCollectionsOnOtherThreads() throws Exception {
+        ExecutionEnvironment env = new ExecutionEnvironment(1 << 20, Integer.MAX_VALUE);
+        ExecutorService collectors = Executors.newSingleThreadExecutor();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+            Future<?> collecting = collectors.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    env.collectGarbage();
+                }
+            });
+            // The global is the new object's only root from the moment it is allocated
+            int stores = 0;
+            while (System.nanoTime() < deadline) {
+                env.setGlobalVariable("value", "value" + stores);
+                assertEquals("value" + stores, env.getGlobalVariable("value"));
+                stores++;
+            }
+            collecting.get();
+            assertTrue(stores > 0);
+        } finally {
+            collectors.shutdownNow();
+            env.shutdown();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+// Editable source that is re-lexed and re-parsed incrementally. The text is kept as
+// a sequence of segments, each ending right after a top-level ';' token (one outside
+// any parentheses or braces), with its own TokenBuffer and lazily parsed Parser.Node.
+// An edit only re-lexes the segments it touches (growing the window while the new text
+// does not end on such a boundary), and every other segment keeps its tokens and
+// parsed tree.
+//
+// Segments sit in an implicit treap ordered by position, where each node also holds
+// its subtree's segment count and text length. Finding the segment at an offset and
+// replacing a run of segments are O(log n) in the segment count, so an edit costs the
+// same wherever it lands in a file of any size.
+public class IncrementalDocument {
+  private Node root;
+  // Treap priorities; seeded so a document's shape is reproducible
+  private final Random priorities = new Random(0x5EED);
+  // Shared by every segment, so all statements run against one frame layout
+  private final Scope scope = new Scope();
+
+  public IncrementalDocument(String text) {
+    root = build(split(text, true));
+  }
+
+  public Scope getScope() {
+    return scope;
+  }
+
+  public int length() {
+    return length(root);
+  }
+
+  public int segmentCount() {
+    return count(root);
+  }
+
+  public void applyEdit(int offset, int removedLength, String insertedText) {
+    int length = length();
+    if (offset < 0 || removedLength < 0 || offset + removedLength > length) {
+      throw new IndexOutOfBoundsException("Edit [" + offset + ", " + (offset + removedLength) +
+          ") outside document of length " + length);
+    }
+    int first = segmentIndexAt(offset);
+    int last = removedLength == 0 ? first : segmentIndexAt(offset + removedLength - 1);
+    int lastIndex = count(root) - 1;
+    int windowStart = startOf(first);
+
+    StringBuilder window = new StringBuilder();
+    for (int i = first; i <= last; i++) {
+      window.append(segmentAt(i).text);
+    }
+    window.replace(offset - windowStart, offset - windowStart + removedLength, insertedText);
+
+    List<Segment> replacement = split(window.toString(), last == lastIndex);
+    while (replacement == null) {
+      // The edited text runs into the next segment (no closing ';', open comment or brace, ...)
+      last++;
+      window.append(segmentAt(last).text);
+      replacement = split(window.toString(), last == lastIndex);
+    }
+
+    Node[] head = splitAt(root, first);
+    Node[] tail = splitAt(head[1], last + 1 - first);
+    root = merge(merge(head[0], build(replacement)), tail[1]);
+  }
+
+  public String getText() {
+    StringBuilder text = new StringBuilder(length());
+    for (Segment segment : segments()) {
+      text.append(segment.text);
+    }
+    return text.toString();
+  }
+
+  // Same output as Lexers.tokenize() over getText()
+  public List<String> tokenize() {
+    List<String> tokens = new ArrayList<>();
+    for (Segment segment : segments()) {
+      tokens.addAll(segment.tokens().toStringList());
+    }
+    return tokens;
+  }
+
+  public List<Parser.Node> statements() {
+    List<Parser.Node> statements = new ArrayList<>();
+    for (Segment segment : segments()) {
+      Parser.Node node = segment.node(scope);
+      if (node != null) {
+        statements.add(node);
+      }
+    }
+    return statements;
+  }
+
+  // Parsed statement covering the given offset, or null for blank/comment-only text
+  public Parser.Node statementAt(int offset) {
+    return segmentAt(segmentIndexAt(offset)).node(scope);
+  }
+
+  // Segments in document order
+  private List<Segment> segments() {
+    List<Segment> result = new ArrayList<>(count(root));
+    Deque<Node> path = new ArrayDeque<>();
+    Node node = root;
+    while (node != null || !path.isEmpty()) {
+      while (node != null) {
+        path.push(node);
+        node = node.left;
+      }
+      node = path.pop();
+      result.add(node.segment);
+      node = node.right;
+    }
+    return result;
+  }
+
+  private Segment segmentAt(int index) {
+    Node node = root;
+    while (true) {
+      int leftCount = count(node.left);
+      if (index < leftCount) {
+        node = node.left;
+      } else if (index == leftCount) {
+        return node.segment;
+      } else {
+        index -= leftCount + 1;
+        node = node.right;
+      }
+    }
+  }
+
+  private int startOf(int index) {
+    int start = 0;
+    Node node = root;
+    while (true) {
+      int leftCount = count(node.left);
+      if (index < leftCount) {
+        node = node.left;
+      } else {
+        start += length(node.left);
+        if (index == leftCount) {
+          return start;
+        }
+        start += node.segment.text.length();
+        index -= leftCount + 1;
+        node = node.right;
+      }
+    }
+  }
+
+  // Last segment whose start is <= offset
+  private int segmentIndexAt(int offset) {
+    int index = 0;
+    Node node = root;
+    while (true) {
+      int leftLength = length(node.left);
+      if (offset < leftLength) {
+        node = node.left;
+        continue;
+      }
+      offset -= leftLength;
+      index += count(node.left);
+      int own = node.segment.text.length();
+      // Past this segment, unless it is the last one (an offset at the document's end)
+      if (offset >= own && node.right != null) {
+        offset -= own;
+        index++;
+        node = node.right;
+      } else {
+        return index;
+      }
+    }
+  }
+
+  private Node build(List<Segment> pieces) {
+    Node result = null;
+    for (Segment piece : pieces) {
+      result = merge(result, new Node(piece, priorities.nextInt()));
+    }
+    return result;
+  }
+
+  // Splits off the first count segments: { first count, the rest }
+  private static Node[] splitAt(Node node, int count) {
+    if (node == null) {
+      return new Node[2];
+    }
+    int leftCount = count(node.left);
+    if (count <= leftCount) {
+      Node[] parts = splitAt(node.left, count);
+      node.left = parts[1];
+      node.update();
+      parts[1] = node;
+      return parts;
+    }
+    Node[] parts = splitAt(node.right, count - leftCount - 1);
+    node.right = parts[0];
+    node.update();
+    parts[0] = node;
+    return parts;
+  }
+
+  private static Node merge(Node left, Node right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      left.update();
+      return left;
+    }
+    right.left = merge(left, right.left);
+    right.update();
+    return right;
+  }
+
+  private static int count(Node node) {
+    return node == null ? 0 : node.count;
+  }
+
+  private static int length(Node node) {
+    return node == null ? 0 : node.length;
+  }
+
+  // Cuts text after every ';' token outside parentheses and braces. Returns null when
+  // the text does not end on such a boundary and more text follows, since the tail may
+  // lex differently once joined.
+  private static List<Segment> split(String text, boolean atDocumentEnd) {
+    List<Segment> pieces = new ArrayList<>();
+    TokenBuffer tokens;
+    try {
+      tokens = new Lexers(text).tokenizeToBuffer();
+    } catch (RuntimeException e) {
+      if (!atDocumentEnd) {
+        return null;
+      }
+      pieces.add(new Segment(text, null, e));
+      return pieces;
+    }
+
+    int[] rawOffsets = decodedToRawOffsets(text);
+    int decodedLength = tokens.getSource().length();
+    int pieceStart = 0;
+    int pieceDecodedStart = 0;
+    int pieceFirstToken = 0;
+    int depth = 0;
+    for (int i = 0; i < tokens.size(); i++) {
+      if (tokens.kind(i) == TokenBuffer.SYMBOL) {
+        char symbol = tokens.firstChar(i);
+        // Unbalanced closers are not counted, so a stray one cannot hide later boundaries
+        depth = symbol == '(' || symbol == '{' ? depth + 1 : Math.max(depth - 1, 0);
+      } else if (depth == 0 && tokens.kind(i) == TokenBuffer.OPERATOR && tokens.firstChar(i) == ';') {
+        int decodedEnd = tokens.end(i);
+        int end = rawOffsets == null ? decodedEnd : rawOffsets[decodedEnd];
+        pieces.add(new Segment(text.substring(pieceStart, end),
+            tokens.slice(pieceFirstToken, i + 1, pieceDecodedStart, decodedEnd), null));
+        pieceStart = end;
+        pieceDecodedStart = decodedEnd;
+        pieceFirstToken = i + 1;
+      }
+    }
+    if (pieceStart < text.length() || pieces.isEmpty() && atDocumentEnd) {
+      if (!atDocumentEnd) {
+        return null;
+      }
+      pieces.add(new Segment(text.substring(pieceStart),
+          tokens.slice(pieceFirstToken, tokens.size(), pieceDecodedStart, decodedLength), null));
+    }
+    return pieces;
+  }
+
+  // Maps offsets in the unicode-escape-decoded text back to raw offsets; null if identical
+  private static int[] decodedToRawOffsets(String text) {
+    if (text.indexOf("\\u") < 0) {
+      return null;
+    }
+    int[] offsets = new int[text.length() + 1];
+    int decoded = 0;
+    int i = 0;
+    while (i < text.length()) {
+      offsets[decoded++] = i;
+      if (text.charAt(i) == '\\' && i + 1 < text.length() && text.charAt(i + 1) == 'u') {
+        i += 6;
+      } else {
+        i++;
+      }
+    }
+    offsets[decoded] = text.length();
+    return offsets;
+  }
+
+  private static final class Node {
+    final Segment segment;
+    final int priority;
+    Node left;
+    Node right;
+    // Segments and characters in this subtree
+    int count;
+    int length;
+
+    Node(Segment segment, int priority) {
+      this.segment = segment;
+      this.priority = priority;
+      update();
+    }
+
+    void update() {
+      count = 1 + IncrementalDocument.count(left) + IncrementalDocument.count(right);
+      length = segment.text.length() + IncrementalDocument.length(left) + IncrementalDocument.length(right);
+    }
+  }
+
+  private static final class Segment {
+    final String text;
+    private final TokenBuffer tokens;
+    private final RuntimeException error;
+    private Parser.Node node;
+    private boolean parsed;
+
+    Segment(String text, TokenBuffer tokens, RuntimeException error) {
+      this.text = text;
+      this.tokens = tokens;
+      this.error = error;
+    }
+
+    TokenBuffer tokens() {
+      if (error != null) {
+        throw error;
+      }
+      return tokens;
+    }
+
+    Parser.Node node(Scope scope) {
+      if (!parsed) {
+        TokenBuffer statementTokens = tokens();
+        boolean empty = statementTokens.size() == 0 ||
+            statementTokens.size() == 1 && statementTokens.textEquals(0, ";");
+        node = empty ? null : new PrattParser(statementTokens, scope).parse();
+        parsed = true;
+      }
+      return node;
+    }
+  }
+}
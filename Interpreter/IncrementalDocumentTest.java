@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+class IncrementalDocumentTest {
+
+    @Test
+    void testIncrementalEditsMatchFullRelex() {
+        String[] fragments = { "a", " ", ";", "+", "1", "\"s;\"", "/*", "*/", "//", "\n", "(", ")", "{", "}", "\\u003b", "0x" };
+        Random random = new Random(42);
+        IncrementalDocument document = new IncrementalDocument("x = 1; y = (x + 2) * 3; // done\n");
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(document.length() + 1);
+            int removed = random.nextInt(Math.min(4, document.length() - offset) + 1);
+            document.applyEdit(offset, removed, fragments[random.nextInt(fragments.length)]);
+            assertEquals(tokenizeOrError(document.getText()), incrementalTokensOrError(document));
+        }
+    }
+
+    @Test
+    void testIncrementalDocumentSplitsAtTopLevelSemicolons() {
+        IncrementalDocument document = new IncrementalDocument("a = 1; f(b; c); { d; e; } g; h;");
+        assertEquals(4, document.segmentCount());
+        // Closing the brace late pulls the following statement into its segment
+        document.applyEdit(document.getText().indexOf('}'), 1, "");
+        document.applyEdit(document.length(), 0, " }");
+        assertEquals(3, document.segmentCount());
+        assertEquals(tokenizeOrError(document.getText()), incrementalTokensOrError(document));
+    }
+
+    private static Object tokenizeOrError(String source) {
+        try {
+            return new Lexers(source).tokenize();
+        } catch (RuntimeException e) {
+            return "error";
+        }
+    }
+
+    private static Object incrementalTokensOrError(IncrementalDocument document) {
+        try {
+            return document.tokenize();
+        } catch (RuntimeException e) {
+            return "error";
+        }
+    }
+}
@@ -8,43 +8,98 @@ public class Interpreter {
   private final StandardLibrary stdLib;
   private final WebAssemblyCompiler wasmCompiler;
   private final Map<String, ClassNode> classes;
-  private final Map<String, Object> globalVariables;
+  private final SymbolMap<Object> globalVariables;
+  private final ScriptCache scriptCache;
+  // Bumped when loadClass redefines a class, invalidating every CallSite entry resolved before
+  private volatile int classEpoch;
+  private final CallSite dispatchSite;
 
   public Interpreter() {
     this.typeSystem = new TypeSystem(1024 * 1024); // 1MB max heap
-    this.env = new ExecutionEnvironment(1024 * 1024, 512 * 1024); // 1MB max heap, 512KB GC threshold
+    // 1MB max heap, 512KB GC threshold; payloads live in the type system's off-heap buffer
+    this.env = new ExecutionEnvironment(1024 * 1024, 512 * 1024, typeSystem.getOffHeapAllocator());
     this.stdLib = new StandardLibrary(env, typeSystem);
     this.wasmCompiler = new WebAssemblyCompiler(typeSystem);
     this.classes = new HashMap<>();
-    this.globalVariables = new HashMap<>();
+    this.globalVariables = new SymbolMap<>();
+    this.scriptCache = new ScriptCache(16 * 1024 * 1024); // 16MB of parsed trees
+    this.dispatchSite = new CallSite(this);
   }
 
   public void loadClass(ClassNode clazz) {
-    classes.put(clazz.getClassName(), clazz);
+    ClassNode previous = classes.put(clazz.getClassName(), clazz);
     env.registerClass(clazz.getClassName(), clazz);
+    if (previous != null) {
+      classEpoch++;
+    }
   }
 
   public void setGlobalVariable(String name, Object value) {
-    globalVariables.put(name, value);
-    env.setGlobalVariable(name, value);
+    int symbol = Symbols.GLOBAL.intern(name);
+    globalVariables.put(symbol, value);
+    env.setGlobalVariable(symbol, value);
   }
 
   public Object getGlobalVariable(String name) {
     return globalVariables.get(name);
   }
 
+  // Resolved through an inline cache shared by all callers of this method; callSite()
+  // gives a caller a cache of its own
   public Object executeMethod(String className, String methodName, Object... args) {
+    return invoke(className, dispatchSite.resolve(className, methodName), args);
+  }
+
+  public CallSite callSite(String className, String methodName) {
+    return new CallSite(this, className, methodName);
+  }
+
+  // Resolved and arity-checked now; throws if the class or method does not exist
+  public CallHandle lookup(String className, String methodName) {
+    return new CallHandle(this, env, className, methodName);
+  }
+
+  int getClassEpoch() {
+    return classEpoch;
+  }
+
+  ClassNode findClass(String className) {
     ClassNode clazz = classes.get(className);
     if (clazz == null) {
       throw new RuntimeException("Class not found: " + className);
     }
+    return clazz;
+  }
 
-    ClassNode.MethodNode method = clazz.getMethods().get(methodName);
+  MethodNode findMethod(ClassNode clazz, String methodName) {
+    MethodNode method = clazz.getMethod(methodName);
     if (method == null) {
-      throw new RuntimeException("Method not found: " + methodName + " in class " + className);
+      throw new RuntimeException("Method not found: " + methodName + " in class " + clazz.getClassName());
     }
+    return method;
+  }
+
+  // className only labels the call for the profiler
+  Object invoke(String className, MethodNode method, Object... args) {
+    if (Profiler.isEnabled()) {
+      return Profiler.execute(method, className, env, args);
+    }
+    return env.execute(method, args);
+  }
+
+  // Parsed statements of a script; resubmitting the same source reuses the cached tree
+  public Script compileScript(String source) {
+    return scriptCache.compile(source);
+  }
+
+  // Runs a script in a fresh frame holding the current global variables
+  public Object runScript(String source) {
+    Script script = compileScript(source);
+    return script.run(script.getScope().bind(globalVariables));
+  }
 
-    return method.execute(env, args);
+  public ScriptCache getScriptCache() {
+    return scriptCache;
   }
 
   public void compileToWebAssembly(String outputPath) throws IOException {
@@ -76,7 +131,7 @@ public class Interpreter {
     // Create a test class
     ClassNode testClass = new ClassNode("TestClass");
     testClass.addField("value", "int");
-    testClass.addMethod(new ClassNode.MethodNode("increment", new String[] { "int" }, "int") {
+    testClass.addMethod(new MethodNode("increment", new String[] { "int" }, "int") {
       @Override
       public Object execute(ExecutionEnvironment env, Object... args) {
         int value = (Integer) args[0];
@@ -0,0 +1,704 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Top tier: compiles a hot Parser.Node tree to a JVM class, defined as a hidden class
+// so HotSpot can inline and optimize it like any other code, and unloaded again once
+// nothing references it. Script counts invocations per statement and EmbeddedLoopNode
+// counts its back-edges; past the configured threshold they switch to the compiled
+// code. The generated code keeps every check evaluate() makes, in the same order:
+// casts, deadline checks and loops, which run through the loop node's own steps so
+// limits, history and rollback stay shared with the interpreter. Nodes without a
+// compiled form are called through evaluate(), and a tree too large for one JVM
+// method is not compiled at all. Class files use version 49, so the JVM verifies them
+// by type inference and no stack map frames are emitted.
+public final class JitCompiler {
+  public static final int DEFAULT_INVOCATION_THRESHOLD = 10_000;
+  public static final int DEFAULT_BACK_EDGE_THRESHOLD = 100_000;
+
+  private static final String LOOP_CONDITION_MESSAGE = "Loop condition must evaluate to boolean";
+  // Generated classes live in this package, so they can call package-private node methods
+  private static final String SUPER_NAME = internalName(CompiledCode.class);
+  private static final String CLASS_NAME = SUPER_NAME.substring(0, SUPER_NAME.lastIndexOf('/') + 1) + "JitCode";
+  private static final String NODE = internalName(Parser.Node.class);
+  private static final String FRAME = internalName(Frame.class);
+  private static final String LOOP = internalName(EmbeddedLoopNode.class);
+
+  // Kinds of a compiled value on the operand stack
+  private static final int INT = 0;
+  private static final int BOOL = 1;
+  private static final int REF = 2;
+
+  private static volatile boolean enabled = false;
+  private static volatile int invocationThreshold = DEFAULT_INVOCATION_THRESHOLD;
+  private static volatile int backEdgeThreshold = DEFAULT_BACK_EDGE_THRESHOLD;
+
+  private static final LongAdder compiled = new LongAdder();
+  private static final LongAdder bailouts = new LongAdder();
+  private static final LongAdder compileNanos = new LongAdder();
+  private static final LongAdder codeBytes = new LongAdder();
+
+  // Code of one compiled tree; generated classes extend this
+  public abstract static class CompiledCode {
+    private int codeSize;
+    private long compileNanos;
+
+    public abstract Object execute(Frame frame);
+
+    // Bytes of JVM bytecode in execute()
+    public int getCodeSize() {
+      return codeSize;
+    }
+
+    public long getCompileNanos() {
+      return compileNanos;
+    }
+  }
+
+  private JitCompiler() {
+  }
+
+  private static String internalName(Class<?> type) {
+    return type.getName().replace('.', '/');
+  }
+
+  // Compiled form of the tree, or null if it cannot be compiled; callers keep
+  // interpreting it then
+  public static CompiledCode compile(Parser.Node node) {
+    long start = System.nanoTime();
+    try {
+      Generator generator = new Generator();
+      byte[] classFile = generator.generate(node);
+      MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+      CompiledCode code = (CompiledCode) lookup
+          .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, Object[].class))
+          .invoke(generator.constants.toArray());
+      code.codeSize = generator.size;
+      code.compileNanos = System.nanoTime() - start;
+      compiled.increment();
+      compileNanos.add(code.compileNanos);
+      codeBytes.add(code.codeSize);
+      return code;
+    } catch (UnsupportedOperationException e) {
+      bailouts.increment();
+      return null;
+    } catch (Throwable e) {
+      throw new IllegalStateException("JIT compilation failed", e);
+    }
+  }
+
+  // Tiering is off until enabled; thresholds apply to counts from then on
+  public static void setEnabled(boolean value) {
+    enabled = value;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setInvocationThreshold(int threshold) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+    }
+    invocationThreshold = threshold;
+  }
+
+  public static int getInvocationThreshold() {
+    return invocationThreshold;
+  }
+
+  public static void setBackEdgeThreshold(int threshold) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+    }
+    backEdgeThreshold = threshold;
+  }
+
+  public static int getBackEdgeThreshold() {
+    return backEdgeThreshold;
+  }
+
+  public static long getCompiledCount() {
+    return compiled.sum();
+  }
+
+  public static long getBailoutCount() {
+    return bailouts.sum();
+  }
+
+  public static long getTotalCompileNanos() {
+    return compileNanos.sum();
+  }
+
+  public static long getTotalCodeBytes() {
+    return codeBytes.sum();
+  }
+
+  public static Map<String, Long> getStats() {
+    return Map.of(
+        "compiled", getCompiledCount(),
+        "bailouts", getBailoutCount(),
+        "compileNanos", getTotalCompileNanos(),
+        "codeBytes", getTotalCodeBytes());
+  }
+
+  public static void resetStats() {
+    compiled.reset();
+    bailouts.reset();
+    compileNanos.reset();
+    codeBytes.reset();
+  }
+
+  // Emits one class: a constructor storing the constant pool array, and execute(Frame).
+  // Locals: 0 this, 1 frame, 2 constants, then temporaries. Compiled values are packed
+  // the way BytecodeCompiler does it, so each subtree leaves one value of a known kind.
+  private static final class Generator {
+    final List<Object> constants = new ArrayList<>();
+    private final ConstantPool pool = new ConstantPool();
+    private byte[] code = new byte[256];
+    int size = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals = 3;
+    // start, end, handler, catch type entries
+    private final List<int[]> handlers = new ArrayList<>();
+
+    byte[] generate(Parser.Node node) throws IOException {
+      op(0x2a, 1);                                         // aload_0
+      field(0xb4, CLASS_NAME, "constants", "[Ljava/lang/Object;", 0);
+      op(0x4d, -1);                                        // astore_2
+      box(compileNode(node));
+      op(0xb0, -1);                                        // areturn
+      if (size > 0xFFFF) {
+        throw new UnsupportedOperationException("Method too large");
+      }
+      return classFile();
+    }
+
+    private int compileNode(Parser.Node node) {
+      if (node instanceof Parser.NumberNode) {
+        pushInt(((Parser.NumberNode) node).getValue());
+        return INT;
+      }
+      if (node instanceof Parser.BooleanNode) {
+        pushInt(((Parser.BooleanNode) node).getValue() ? 1 : 0);
+        return BOOL;
+      }
+      if (node instanceof Parser.VariableNode) {
+        op(0x2b, 1);                                       // aload_1
+        pushInt(((Parser.VariableNode) node).getSlot());
+        invoke(0xb6, FRAME, "get", "(I)Ljava/lang/Object;", -1);
+        return REF;
+      }
+      if (node instanceof Parser.BinaryNode) {
+        return compileBinary((Parser.BinaryNode) node);
+      }
+      if (node instanceof Parser.LogicalNode) {
+        return compileLogical((Parser.LogicalNode) node);
+      }
+      if (node instanceof Parser.UnaryNode && ((Parser.UnaryNode) node).getOperator().equals("-")) {
+        toInt(compileNode(((Parser.UnaryNode) node).getOperand()));
+        op(0x74, 0);                                       // ineg
+        return INT;
+      }
+      if (node instanceof Parser.IntCheckNode) {
+        Parser.IntCheckNode check = (Parser.IntCheckNode) node;
+        toInt(compileNode(check.getOperand()));
+        if (check.getResult() != null) {
+          op(0x57, -1);                                    // pop
+          pushInt(check.getResult());
+        }
+        return INT;
+      }
+      if (node instanceof Parser.DeadlineNode) {
+        return compileDeadline((Parser.DeadlineNode) node);
+      }
+      if (node instanceof EmbeddedLoopNode) {
+        return compileLoop((EmbeddedLoopNode) node);
+      }
+      return compileFallback(node);
+    }
+
+    // Interpreted subtree: constants[i].evaluate(frame)
+    private int compileFallback(Parser.Node node) {
+      loadConstant(node, NODE);
+      op(0x2b, 1);                                         // aload_1
+      invoke(0xb6, NODE, "evaluate", "(L" + FRAME + ";)Ljava/lang/Object;", -1);
+      return REF;
+    }
+
+    private int compileBinary(Parser.BinaryNode node) {
+      int compare;
+      switch (node.getOperator()) {
+        case "+":
+        case "-":
+        case "*":
+        case "/":
+        case "%":
+          compare = 0;
+          break;
+        case "<=":
+          compare = 0xa3;                                  // if_icmpgt: false
+          break;
+        case ">=":
+          compare = 0xa1;                                  // if_icmplt
+          break;
+        case "==":
+          compare = 0xa0;                                  // if_icmpne
+          break;
+        case "!=":
+          compare = 0x9f;                                  // if_icmpeq
+          break;
+        default:
+          return compileFallback(node);
+      }
+
+      // Both sides are evaluated before either is converted, as in BinaryNode
+      int left = compileNode(node.getLeft());
+      int right = compileNode(node.getRight());
+      boolean equality = compare == 0xa0 || compare == 0x9f;
+      if (equality && (left != right || left == REF)) {
+        convertOperands(left, right, false);
+        invoke(0xb8, "java/util/Objects", "equals", "(Ljava/lang/Object;Ljava/lang/Object;)Z", -1);
+        if (compare == 0x9f) {
+          pushInt(1);
+          op(0x82, -1);                                    // ixor
+        }
+        return BOOL;
+      }
+      if (!equality) {
+        convertOperands(left, right, true);
+      }
+      if (compare == 0) {
+        switch (node.getOperator()) {
+          case "+":
+            op(0x60, -1);
+            break;
+          case "-":
+            op(0x64, -1);
+            break;
+          case "*":
+            op(0x68, -1);
+            break;
+          case "/":
+            op(0x6c, -1);
+            break;
+          default:
+            op(0x70, -1);
+            break;
+        }
+        return INT;
+      }
+      int falseJump = jump(compare, -2);
+      pushInt(1);
+      int endJump = jump(0xa7, 0);                         // goto
+      stack--;
+      bind(falseJump);
+      pushInt(0);
+      bind(endJump);
+      return BOOL;
+    }
+
+    // Operands of kinds left and right on the stack, converted to ints (or boxed) with
+    // the left conversion first, so casts fail in the order the interpreter's do
+    private void convertOperands(int left, int right, boolean toInts) {
+      if (toInts ? left == INT : left == REF) {
+        if (toInts) {
+          toInt(right);
+        } else {
+          box(right);
+        }
+        return;
+      }
+      int temp = newLocal(1);
+      op(right == REF ? 0x3a : 0x36, -1, temp);            // astore / istore
+      if (toInts) {
+        toInt(left);
+      } else {
+        box(left);
+      }
+      op(right == REF ? 0x19 : 0x15, 1, temp);             // aload / iload
+      if (toInts) {
+        toInt(right);
+      } else {
+        box(right);
+      }
+    }
+
+    private int compileLogical(Parser.LogicalNode node) {
+      String message = "Operator " + node.getOperator() + " expects boolean operands";
+      boolean and = node.getOperator().equals("&&");
+      toBool(compileNode(node.getLeft()), message);
+      op(0x59, 1);                                         // dup
+      int decided = jump(and ? 0x99 : 0x9a, -1);           // ifeq / ifne: left decides
+      op(0x57, -1);                                        // pop
+      toBool(compileNode(node.getRight()), message);
+      bind(decided);
+      return BOOL;
+    }
+
+    private int compileDeadline(Parser.DeadlineNode node) {
+      int start = newLocal(2);
+      invoke(0xb8, "java/lang/System", "currentTimeMillis", "()J", 2);
+      op(0x37, -2, start);                                 // lstore
+      int kind = compileNode(node.getBody());
+      invoke(0xb8, "java/lang/System", "currentTimeMillis", "()J", 2);
+      op(0x16, 2, start);                                  // lload
+      op(0x65, -2);                                        // lsub
+      pushLong(node.getDeadlineMs());
+      op(0x94, -3);                                        // lcmp
+      int inTime = jump(0x9e, -1);                         // ifle
+      throwRuntimeException("Deadline exceeded: " + node.getDeadlineMs() + "ms");
+      bind(inTime);
+      return kind;
+    }
+
+    // Same steps as EmbeddedLoopNode.evaluate(), on the node itself
+    private int compileLoop(EmbeddedLoopNode loop) {
+      int local = newLocal(1);
+      loadConstant(loop, LOOP);
+      op(0x3a, -1, local);                                 // astore
+      int entryStack = stack;
+      op(0x19, 1, local);
+      invoke(0xb6, LOOP, "begin", "()V", -1);
+      int top = size;
+      op(0x19, 1, local);
+      invoke(0xb6, LOOP, "nextIteration", "()Z", 0);
+      int limitExit = jump(0x99, -1);                      // ifeq
+      toBool(compileNode(loop.getCondition()), LOOP_CONDITION_MESSAGE);
+      int conditionExit = jump(0x99, -1);
+      int bodyStart = size;
+      op(0x19, 1, local);
+      box(compileNode(loop.getBody()));
+      invoke(0xb6, LOOP, "recordIteration", "(Ljava/lang/Object;)V", -2);
+      int bodyEnd = size;
+      jumpTo(0xa7, top);                                   // goto
+      // Body failed: drop the partial iteration and rethrow. Registered after the
+      // body, so inner loops roll back first.
+      int handler = size;
+      stack = entryStack + 1;
+      op(0x19, 1, local);
+      invoke(0xb6, LOOP, "rollbackIteration", "()V", -1);
+      op(0xbf, -1);                                        // athrow
+      handlers.add(new int[] { bodyStart, bodyEnd, handler, pool.classRef("java/lang/Exception") });
+      stack = entryStack;
+      bind(limitExit);
+      bind(conditionExit);
+      op(0x19, 1, local);
+      invoke(0xb6, LOOP, "result", "()Ljava/util/List;", 0);
+      return REF;
+    }
+
+    // The (Integer) cast the arithmetic applies; a boolean is boxed first so it fails the same way
+    private void toInt(int kind) {
+      if (kind == INT) {
+        return;
+      }
+      box(kind);
+      type(0xc0, "java/lang/Integer", 0);                  // checkcast
+      invoke(0xb6, "java/lang/Integer", "intValue", "()I", 0);
+    }
+
+    private void toBool(int kind, String message) {
+      if (kind == BOOL) {
+        return;
+      }
+      box(kind);
+      op(0x59, 1);                                         // dup
+      type(0xc1, "java/lang/Boolean", 0);                  // instanceof
+      int ok = jump(0x9a, -1);                             // ifne
+      int okStack = stack;
+      op(0x57, -1);                                        // pop
+      throwRuntimeException(message);
+      stack = okStack;
+      bind(ok);
+      type(0xc0, "java/lang/Boolean", 0);
+      invoke(0xb6, "java/lang/Boolean", "booleanValue", "()Z", 0);
+    }
+
+    private void box(int kind) {
+      if (kind == INT) {
+        invoke(0xb8, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", 0);
+      } else if (kind == BOOL) {
+        invoke(0xb8, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", 0);
+      }
+    }
+
+    // Leaves the stack depth as it was before, for the code after the throw
+    private void throwRuntimeException(String message) {
+      int before = stack;
+      type(0xbb, "java/lang/RuntimeException", 1);         // new
+      op(0x59, 1);                                         // dup
+      op(0x13, 1);                                         // ldc_w
+      u2(pool.string(message));
+      invoke(0xb7, "java/lang/RuntimeException", "<init>", "(Ljava/lang/String;)V", -2);
+      op(0xbf, -1);                                        // athrow
+      stack = before;
+    }
+
+    private void loadConstant(Object value, String type) {
+      constants.add(value);
+      op(0x2c, 1);                                         // aload_2
+      pushInt(constants.size() - 1);
+      op(0x32, -1);                                        // aaload
+      type(0xc0, type, 0);
+    }
+
+    private void pushInt(int value) {
+      if (value >= -1 && value <= 5) {
+        op(0x03 + value, 1);                               // iconst_<n>
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        op(0x10, 1);                                       // bipush
+        u1(value);
+      } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        op(0x11, 1);                                       // sipush
+        u2(value);
+      } else {
+        op(0x13, 1);                                       // ldc_w
+        u2(pool.integer(value));
+      }
+    }
+
+    private void pushLong(long value) {
+      op(0x14, 2);                                         // ldc2_w
+      u2(pool.longConstant(value));
+    }
+
+    private int newLocal(int width) {
+      int local = maxLocals;
+      maxLocals += width;
+      if (maxLocals > 0xFF) {
+        throw new UnsupportedOperationException("Too many locals");
+      }
+      return local;
+    }
+
+    private void op(int opcode, int stackDelta) {
+      u1(opcode);
+      adjust(stackDelta);
+    }
+
+    private void op(int opcode, int stackDelta, int local) {
+      op(opcode, stackDelta);
+      u1(local);
+    }
+
+    private void type(int opcode, String className, int stackDelta) {
+      op(opcode, stackDelta);
+      u2(pool.classRef(className));
+    }
+
+    private void field(int opcode, String owner, String name, String descriptor, int stackDelta) {
+      op(opcode, stackDelta);
+      u2(pool.member(9, owner, name, descriptor));
+    }
+
+    private void invoke(int opcode, String owner, String name, String descriptor, int stackDelta) {
+      op(opcode, stackDelta);
+      u2(pool.member(10, owner, name, descriptor));
+    }
+
+    // Forward branch; returns its position for bind()
+    private int jump(int opcode, int stackDelta) {
+      int at = size;
+      op(opcode, stackDelta);
+      u2(0);
+      return at;
+    }
+
+    private void jumpTo(int opcode, int target) {
+      int at = size;
+      if (target - at < Short.MIN_VALUE) {
+        throw new UnsupportedOperationException("Branch too long");
+      }
+      op(opcode, 0);
+      u2(target - at);
+    }
+
+    private void bind(int jump) {
+      int offset = size - jump;
+      if (offset > Short.MAX_VALUE) {
+        throw new UnsupportedOperationException("Branch too long");
+      }
+      code[jump + 1] = (byte) (offset >> 8);
+      code[jump + 2] = (byte) offset;
+    }
+
+    private void adjust(int stackDelta) {
+      stack += stackDelta;
+      maxStack = Math.max(maxStack, stack);
+    }
+
+    private void u1(int value) {
+      if (size == code.length) {
+        code = Arrays.copyOf(code, size * 2);
+      }
+      code[size++] = (byte) value;
+    }
+
+    private void u2(int value) {
+      u1(value >> 8);
+      u1(value);
+    }
+
+    private byte[] classFile() throws IOException {
+      int thisClass = pool.classRef(CLASS_NAME);
+      int superClass = pool.classRef(SUPER_NAME);
+      int constantsField = pool.utf8("constants");
+      int constantsType = pool.utf8("[Ljava/lang/Object;");
+      int init = pool.utf8("<init>");
+      int initType = pool.utf8("([Ljava/lang/Object;)V");
+      int execute = pool.utf8("execute");
+      int executeType = pool.utf8("(L" + FRAME + ";)Ljava/lang/Object;");
+      int codeAttribute = pool.utf8("Code");
+      int superInit = pool.member(10, SUPER_NAME, "<init>", "()V");
+      int constantsRef = pool.member(9, CLASS_NAME, "constants", "[Ljava/lang/Object;");
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(size + 512);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(49);
+      pool.writeTo(out);
+      out.writeShort(0x0011);                              // public final
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(0);                                   // interfaces
+
+      out.writeShort(1);
+      out.writeShort(0x0012);                              // private final
+      out.writeShort(constantsField);
+      out.writeShort(constantsType);
+      out.writeShort(0);
+
+      out.writeShort(2);
+      // public JitCode(Object[] constants) { super(); this.constants = constants; }
+      byte[] initCode = { 0x2a, (byte) 0xb7, (byte) (superInit >> 8), (byte) superInit,
+          0x2a, 0x2b, (byte) 0xb5, (byte) (constantsRef >> 8), (byte) constantsRef, (byte) 0xb1 };
+      writeMethod(out, init, initType, codeAttribute, initCode, 2, 2, List.of());
+      writeMethod(out, execute, executeType, codeAttribute, Arrays.copyOf(code, size), maxStack, maxLocals, handlers);
+      out.writeShort(0);                                   // attributes
+      return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute,
+        byte[] body, int maxStack, int maxLocals, List<int[]> exceptionTable) throws IOException {
+      out.writeShort(0x0001);                              // public
+      out.writeShort(name);
+      out.writeShort(descriptor);
+      out.writeShort(1);
+      out.writeShort(codeAttribute);
+      out.writeInt(12 + body.length + 8 * exceptionTable.size());
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(body.length);
+      out.write(body);
+      out.writeShort(exceptionTable.size());
+      for (int[] entry : exceptionTable) {
+        for (int value : entry) {
+          out.writeShort(value);
+        }
+      }
+      out.writeShort(0);
+    }
+  }
+
+  private static final class ConstantPool {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int count = 1;
+
+    int utf8(String value) {
+      return entry("U" + value, () -> {
+        out.writeByte(1);
+        out.writeUTF(value);
+      }, 1);
+    }
+
+    int classRef(String name) {
+      int nameIndex = utf8(name);
+      return entry("C" + name, () -> {
+        out.writeByte(7);
+        out.writeShort(nameIndex);
+      }, 1);
+    }
+
+    int string(String value) {
+      int valueIndex = utf8(value);
+      return entry("S" + value, () -> {
+        out.writeByte(8);
+        out.writeShort(valueIndex);
+      }, 1);
+    }
+
+    int integer(int value) {
+      return entry("I" + value, () -> {
+        out.writeByte(3);
+        out.writeInt(value);
+      }, 1);
+    }
+
+    // Longs take two pool entries
+    int longConstant(long value) {
+      return entry("J" + value, () -> {
+        out.writeByte(5);
+        out.writeLong(value);
+      }, 2);
+    }
+
+    // Field (9) or method (10) reference
+    int member(int tag, String owner, String name, String descriptor) {
+      int ownerIndex = classRef(owner);
+      int nameIndex = utf8(name);
+      int typeIndex = utf8(descriptor);
+      int nameAndType = entry("N" + name + " " + descriptor, () -> {
+        out.writeByte(12);
+        out.writeShort(nameIndex);
+        out.writeShort(typeIndex);
+      }, 1);
+      return entry(tag + owner + "." + name + " " + descriptor, () -> {
+        out.writeByte(tag);
+        out.writeShort(ownerIndex);
+        out.writeShort(nameAndType);
+      }, 1);
+    }
+
+    void writeTo(DataOutputStream target) throws IOException {
+      target.writeShort(count);
+      bytes.writeTo(target);
+    }
+
+    private int entry(String key, EntryWriter writer, int width) {
+      Integer existing = entries.get(key);
+      if (existing != null) {
+        return existing;
+      }
+      if (count + width > 0xFFFF) {
+        throw new UnsupportedOperationException("Constant pool too large");
+      }
+      try {
+        writer.write();
+      } catch (IOException e) {
+        // Only in-memory streams are involved
+        throw new RuntimeException(e);
+      }
+      int index = count;
+      count += width;
+      entries.put(key, index);
+      return index;
+    }
+
+    private interface EntryWriter {
+      void write() throws IOException;
+    }
+  }
+}
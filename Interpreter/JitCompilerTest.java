@@ -0,0 +1,95 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Random;
+
+class JitCompilerTest {
+
+    @Test
+    void testJitMatchesTreeWalker() {
+        Random random = new Random(31);
+        Object[] values = { 0, 2, -7, 2147483647, true, null };
+        for (int i = 0; i < 3000; i++) {
+            String source = TestPrograms.randomExpression(random, 4);
+            PrattParser parser = new PrattParser(new Lexers(source).tokenizeToBuffer());
+            Parser.Node node = parser.parse();
+            Frame frame = parser.getScope().newFrame();
+            if (frame.size() > 0) {
+                frame.set(0, values[random.nextInt(values.length)]);
+            }
+            Parser.Node deadline = new Parser.DeadlineNode(1000, node);
+            assertEquals(TestPrograms.outcome(node, frame), jitOutcome(node, frame), "source: " + source);
+            assertEquals(TestPrograms.outcome(deadline, frame), jitOutcome(deadline, frame), "deadline source: " + source);
+        }
+        assertEquals("RuntimeException: Deadline exceeded: -1ms",
+                jitOutcome(new Parser.DeadlineNode(-1, new Parser.NumberNode(1)), Frame.EMPTY));
+
+        for (int i = 0; i < 500; i++) {
+            String condition = random.nextInt(4) == 0 ? TestPrograms.randomExpression(random, 2) : "1 <= 2";
+            String body = TestPrograms.randomExpression(random, 3);
+            int maxIterations = random.nextInt(5);
+            EmbeddedLoopNode walked = TestPrograms.loop(condition, body, maxIterations);
+            EmbeddedLoopNode compiled = TestPrograms.loop(condition, body, maxIterations);
+            assertEquals(TestPrograms.outcome(walked), jitOutcome(compiled, Frame.EMPTY), "loop: " + condition + " / " + body);
+            assertEquals(walked.getIterationHistory(), compiled.getIterationHistory());
+            assertEquals(walked.getMetrics().iterations, compiled.getMetrics().iterations);
+        }
+
+        Parser.Node failing = new PrattParser(new Lexers("1 / 0").tokenizeToBuffer()).parse();
+        Parser.Node always = new PrattParser(new Lexers("1 == 1").tokenizeToBuffer()).parse();
+        EmbeddedLoopNode inner = new EmbeddedLoopNode(always, failing, 3, 1000);
+        EmbeddedLoopNode outer = new EmbeddedLoopNode(always, inner, 3, 1000);
+        assertEquals(ArithmeticException.class, jitOutcome(outer, Frame.EMPTY));
+        assertTrue(outer.getIterationHistory().isEmpty());
+        assertTrue(inner.getIterationHistory().isEmpty());
+    }
+
+    @Test
+    void testJitTiersUpPastThresholds() {
+        JitCompiler.resetStats();
+        JitCompiler.setInvocationThreshold(50);
+        JitCompiler.setBackEdgeThreshold(20);
+        JitCompiler.setEnabled(true);
+        try {
+            Script script = new ScriptCache(4096).compile("rate * count + 1 >= 100");
+            Frame frame = script.newFrame();
+            frame.set(script.getScope().slotOf("rate"), 5);
+            for (int i = 0; i < 100; i++) {
+                frame.set(script.getScope().slotOf("count"), i);
+                assertEquals(5 * i + 1 >= 100, script.run(frame));
+                assertEquals(i >= 49, script.getCompiledCode(0) != null);
+            }
+            frame.set(script.getScope().slotOf("count"), true);
+            assertThrows(ClassCastException.class, () -> script.run(frame));
+
+            EmbeddedLoopNode loop = TestPrograms.loop("1 <= 2", "2 * 3", 8);
+            for (int run = 0; run < 4; run++) {
+                assertEquals(Collections.nCopies(8, 6), loop.run());
+                // Compiled on the first run after 20 back-edges
+                assertEquals(run >= 3, loop.getCompiledCode() != null);
+            }
+            assertEquals(8, loop.getMetrics().iterations);
+
+            assertEquals(2, JitCompiler.getCompiledCount());
+            assertTrue(script.getCompiledCode(0).getCodeSize() > 0);
+            assertEquals(script.getCompiledCode(0).getCodeSize() + loop.getCompiledCode().getCodeSize(),
+                    JitCompiler.getTotalCodeBytes());
+            assertTrue(JitCompiler.getTotalCompileNanos() > 0);
+        } finally {
+            JitCompiler.setEnabled(false);
+            JitCompiler.setInvocationThreshold(JitCompiler.DEFAULT_INVOCATION_THRESHOLD);
+            JitCompiler.setBackEdgeThreshold(JitCompiler.DEFAULT_BACK_EDGE_THRESHOLD);
+        }
+    }
+
+    private static Object jitOutcome(Parser.Node node, Frame frame) {
+        try {
+            return JitCompiler.compile(node).execute(frame);
+        } catch (RuntimeException e) {
+            return TestPrograms.failure(e);
+        }
+    }
+}
@@ -6,19 +6,43 @@ public abstract class MethodNode {
   private final String name;
   private final String[] parameterTypes;
   private final String returnType;
-  private final Map<String, Object> localVariables;
+  private final SymbolMap<Object> localVariables;
   private final List<Object> parameterValues;
+  // Set when registered with an ExecutionEnvironment; locals and parameters are roots,
+  // so stores into them go through its write barrier while a cycle runs
+  private volatile IncrementalCollector collector;
+  private volatile AllocationQuota allocationQuota;
 
   public MethodNode(String name, String[] parameterTypes, String returnType) {
     this.name = name;
     this.parameterTypes = parameterTypes;
     this.returnType = returnType;
-    this.localVariables = new HashMap<>();
+    this.localVariables = new SymbolMap<>();
     this.parameterValues = new ArrayList<>();
   }
 
   public abstract Object execute(ExecutionEnvironment env, Object... args);
 
+  // Primitive entry points used by CallHandle. The defaults box through execute(), so
+  // methods called from hot host loops override them to skip the array and the boxing
+  public int executeInt(ExecutionEnvironment env) {
+    return (Integer) execute(env);
+  }
+
+  public int executeInt(ExecutionEnvironment env, int arg) {
+    return (Integer) execute(env, arg);
+  }
+
+  public int executeInt(ExecutionEnvironment env, int first, int second) {
+    return (Integer) execute(env, first, second);
+  }
+
+  // True when calls neither read nor write state other than their arguments, so
+  // CallHandle may run a batch of them on several threads at once
+  public boolean isSideEffectFree() {
+    return false;
+  }
+
   public String getName() {
     return name;
   }
@@ -32,42 +56,97 @@ public abstract class MethodNode {
   }
 
   public void setLocalVariable(String name, Object value) {
-    localVariables.put(name, value);
+    setLocalVariable(Symbols.GLOBAL.intern(name), value);
   }
 
   public Object getLocalVariable(String name) {
     return localVariables.get(name);
   }
 
+  public void setLocalVariable(int symbol, Object value) {
+    IncrementalCollector current = collector;
+    boolean locked = current != null && current.beginStore();
+    try {
+      barrier(current, value);
+      localVariables.put(symbol, value);
+    } finally {
+      if (current != null) {
+        current.endStore(locked);
+      }
+    }
+  }
+
+  public Object getLocalVariable(int symbol) {
+    return localVariables.get(symbol);
+  }
+
+  // Parameters are locked because collectors scan them from their own threads
   public void setParameterValue(int index, Object value) {
-    while (parameterValues.size() <= index) {
-      parameterValues.add(null);
+    IncrementalCollector current = collector;
+    boolean locked = current != null && current.beginStore();
+    try {
+      barrier(current, value);
+      synchronized (parameterValues) {
+        while (parameterValues.size() <= index) {
+          parameterValues.add(null);
+        }
+        parameterValues.set(index, value);
+      }
+    } finally {
+      if (current != null) {
+        current.endStore(locked);
+      }
     }
-    parameterValues.set(index, value);
   }
 
   public Object getParameterValue(int index) {
-    return parameterValues.get(index);
+    synchronized (parameterValues) {
+      return parameterValues.get(index);
+    }
+  }
+
+  void setCollector(IncrementalCollector collector) {
+    this.collector = collector;
+  }
+
+  // Charged for what activations run through ExecutionEnvironment.execute() allocate,
+  // including in the methods they call; null for no limit
+  public void setAllocationQuota(AllocationQuota quota) {
+    this.allocationQuota = quota;
+  }
+
+  public AllocationQuota getAllocationQuota() {
+    return allocationQuota;
+  }
+
+  private static void barrier(IncrementalCollector current, Object value) {
+    if (current != null && current.isCollecting()) {
+      current.storeBarrier(value);
+    }
   }
 
   public void markReachableObjects(Set<Long> reachable) {
     // Mark local variables
-    for (Object value : localVariables.values()) {
+    localVariables.forEach((symbol, value) -> {
       if (value instanceof Long) {
         reachable.add((Long) value);
       }
-    }
+    });
 
     // Mark parameter values
-    for (Object value : parameterValues) {
-      if (value instanceof Long) {
-        reachable.add((Long) value);
+    synchronized (parameterValues) {
+      for (Object value : parameterValues) {
+        if (value instanceof Long) {
+          reachable.add((Long) value);
+        }
       }
     }
   }
 
   public void clear() {
     localVariables.clear();
-    parameterValues.clear();
+    synchronized (parameterValues) {
+      parameterValues.clear();
+    }
   }
 }
\ No newline at end of file
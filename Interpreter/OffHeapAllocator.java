@@ -0,0 +1,246 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Buddy allocator over a fixed off-heap region (TypeSystem's direct buffer). Blocks
+// come in power-of-two size classes from MIN_BLOCK bytes up, each aligned to its size;
+// the region starts out as the largest aligned blocks that fit. An allocation takes a
+// free block of the smallest class that has one and splits it in halves down to the
+// class it needs, and a freed block merges with its buddy (the other half of the block
+// it was split from) for as long as that is free too. A region emptied by one size
+// class can so serve any other, and an allocation or free costs at most one step per
+// class.
+//
+// Every block starts with a header: the size class (bitwise-inverted while the block
+// is free) and the payload length; a free block holds the next and previous blocks of
+// its class's free list instead. Addresses handed out are region offsets of the
+// payload, and every access is checked against the header: freed or misaligned
+// addresses and out-of-range indexes throw.
+public final class OffHeapAllocator {
+  static final int HEADER_SIZE = 8;
+  static final int MIN_BLOCK = 16;
+  private static final int NONE = -1;
+
+  private final ByteBuffer region;
+  private final int capacity;
+  private final int[] blockSizes;
+  private final int[] freeHeads;
+  private final int[] freeCounts;
+  // End of the highest block ever allocated
+  private int top;
+  private int liveBlocks;
+  private long usedBytes;
+  private long payloadBytes;
+
+  public OffHeapAllocator(ByteBuffer region) {
+    this.region = region;
+    this.capacity = region.capacity();
+    int classes = 0;
+    for (long size = MIN_BLOCK; size <= capacity; size <<= 1) {
+      classes++;
+    }
+    this.blockSizes = new int[classes];
+    for (int i = 0; i < classes; i++) {
+      blockSizes[i] = MIN_BLOCK << i;
+    }
+    this.freeHeads = new int[classes];
+    this.freeCounts = new int[classes];
+    Arrays.fill(freeHeads, NONE);
+    int block = 0;
+    for (int sizeClass = classes - 1; sizeClass >= 0; sizeClass--) {
+      if (blockSizes[sizeClass] <= capacity - block) {
+        push(block, sizeClass);
+        block += blockSizes[sizeClass];
+      }
+    }
+  }
+
+  // Address of a payload of the given length
+  public synchronized int allocate(int length) {
+    int address = tryAllocate(length);
+    if (address == NONE) {
+      throw new RuntimeException("Off-heap region exhausted: " + length + " bytes requested, " +
+          (capacity - usedBytes) + " of " + capacity + " free");
+    }
+    return address;
+  }
+
+  // As allocate(), but -1 instead of an exception when the region has no room left
+  public synchronized int tryAllocate(int length) {
+    if (length < 0) {
+      throw new RuntimeException("Invalid allocation size: " + length);
+    }
+    int sizeClass = sizeClassOf(length);
+    if (sizeClass == NONE) {
+      throw new RuntimeException("Allocation size " + length + " exceeds largest block of " + capacity + " bytes");
+    }
+    int available = sizeClass;
+    while (available < blockSizes.length && freeHeads[available] == NONE) {
+      available++;
+    }
+    if (available == blockSizes.length) {
+      return NONE;
+    }
+    int block = freeHeads[available];
+    unlink(block, available);
+    // The upper halves go back on the free lists
+    while (available > sizeClass) {
+      available--;
+      push(block + blockSizes[available], available);
+    }
+    top = Math.max(top, block + blockSizes[sizeClass]);
+    region.putInt(block, sizeClass);
+    region.putInt(block + 4, length);
+    liveBlocks++;
+    usedBytes += blockSizes[sizeClass];
+    payloadBytes += length;
+    return block + HEADER_SIZE;
+  }
+
+  public synchronized void free(int address) {
+    int block = liveBlock(address);
+    int sizeClass = region.getInt(block);
+    int length = region.getInt(block + 4);
+    liveBlocks--;
+    usedBytes -= blockSizes[sizeClass];
+    payloadBytes -= length;
+    while (sizeClass < blockSizes.length - 1) {
+      int buddy = block ^ blockSizes[sizeClass];
+      // Blocks past the end of the region were never made, so an edge block has no buddy
+      if (buddy > capacity - blockSizes[sizeClass] || region.getInt(buddy) != ~sizeClass) {
+        break;
+      }
+      unlink(buddy, sizeClass);
+      block = Math.min(block, buddy);
+      sizeClass++;
+    }
+    push(block, sizeClass);
+  }
+
+  private void push(int block, int sizeClass) {
+    int next = freeHeads[sizeClass];
+    region.putInt(block, ~sizeClass);
+    region.putInt(block + 4, next);
+    region.putInt(block + 8, NONE);
+    if (next != NONE) {
+      region.putInt(next + 8, block);
+    }
+    freeHeads[sizeClass] = block;
+    freeCounts[sizeClass]++;
+  }
+
+  private void unlink(int block, int sizeClass) {
+    int next = region.getInt(block + 4);
+    int previous = region.getInt(block + 8);
+    if (previous == NONE) {
+      freeHeads[sizeClass] = next;
+    } else {
+      region.putInt(previous + 4, next);
+    }
+    if (next != NONE) {
+      region.putInt(next + 8, previous);
+    }
+    freeCounts[sizeClass]--;
+  }
+
+  public synchronized int length(int address) {
+    return region.getInt(liveBlock(address) + 4);
+  }
+
+  public synchronized void putByte(int address, int index, byte value) {
+    region.put(checkAccess(address, index, 1), value);
+  }
+
+  public synchronized byte getByte(int address, int index) {
+    return region.get(checkAccess(address, index, 1));
+  }
+
+  public synchronized void putInt(int address, int index, int value) {
+    region.putInt(checkAccess(address, index, 4), value);
+  }
+
+  public synchronized int getInt(int address, int index) {
+    return region.getInt(checkAccess(address, index, 4));
+  }
+
+  public synchronized void putLong(int address, int index, long value) {
+    region.putLong(checkAccess(address, index, 8), value);
+  }
+
+  public synchronized long getLong(int address, int index) {
+    return region.getLong(checkAccess(address, index, 8));
+  }
+
+  public synchronized void putBytes(int address, int index, byte[] source) {
+    region.position(checkAccess(address, index, source.length));
+    region.put(source);
+  }
+
+  public synchronized void getBytes(int address, int index, byte[] target) {
+    region.position(checkAccess(address, index, target.length));
+    region.get(target);
+  }
+
+  // Region offset of bytes [index, index + size) of a live payload
+  public synchronized int checkAccess(int address, int index, int size) {
+    int block = liveBlock(address);
+    if (index < 0 || size < 0 || index > region.getInt(block + 4) - size) {
+      throw new RuntimeException("Memory access out of bounds: " + size + " bytes at " + index +
+          " of a " + region.getInt(block + 4) + "-byte block");
+    }
+    return address + index;
+  }
+
+  private int liveBlock(int address) {
+    int block = address - HEADER_SIZE;
+    if (block < 0 || block > capacity - MIN_BLOCK || (block & (MIN_BLOCK - 1)) != 0) {
+      throw new RuntimeException("Invalid off-heap address: " + address);
+    }
+    int sizeClass = region.getInt(block);
+    if (sizeClass < 0 || sizeClass >= blockSizes.length) {
+      throw new RuntimeException("Off-heap address " + address + " is not allocated");
+    }
+    return block;
+  }
+
+  // Smallest class whose blocks hold the payload and its header, or NONE
+  private int sizeClassOf(int length) {
+    long needed = (long) length + HEADER_SIZE;
+    for (int i = 0; i < blockSizes.length; i++) {
+      if (blockSizes[i] >= needed) {
+        return i;
+      }
+    }
+    return NONE;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  // Bytes in live blocks, headers and rounding included
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  // Bytes asked for by live allocations
+  public synchronized long getPayloadBytes() {
+    return payloadBytes;
+  }
+
+  public synchronized int getLiveBlocks() {
+    return liveBlocks;
+  }
+
+  // End of the highest block ever allocated; blocks below it may have been freed since
+  public synchronized int getHighWaterMark() {
+    return top;
+  }
+
+  public synchronized int getFreeBlocks() {
+    int free = 0;
+    for (int count : freeCounts) {
+      free += count;
+    }
+    return free;
+  }
+}
@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+class OffHeapAllocatorTest {
+
+    @Test
+    void testOffHeapStoreHoldsPayloads() {
+        TypeSystem types = new TypeSystem(4096);
+        OffHeapAllocator store = types.getOffHeapAllocator();
+        ExecutionEnvironment env = new ExecutionEnvironment(1 << 20, Integer.MAX_VALUE, store);
+        try {
+            byte[] reading = { 1, 2, 3, 4, 5 };
+            long bytes = env.allocateObject(reading);
+            long count = env.allocateObject(1_000_000);
+            long ratio = env.allocateObject(0.25);
+            long flag = env.allocateObject(true);
+            assertTrue(Arrays.equals(reading, (byte[]) env.getObject(bytes)));
+            assertEquals(1_000_000, env.getObject(count));
+            assertEquals(0.25, env.getObject(ratio));
+            assertEquals(true, env.getObject(flag));
+            // 16-byte blocks, except the double whose tag and 8 bytes need a 32-byte one
+            assertEquals(4, store.getLiveBlocks());
+            assertEquals(80, store.getUsedBytes());
+
+            // Replacing a payload releases its block; collecting releases the rest
+            env.setObject(count, 7);
+            assertEquals(7, env.getObject(count));
+            assertEquals(4, store.getLiveBlocks());
+            env.setGlobalVariable("bytes", bytes);
+            env.collectGarbage();
+            assertEquals(1, store.getLiveBlocks());
+            assertEquals(null, env.getObject(count));
+            assertTrue(Arrays.equals(reading, (byte[]) env.getObject(bytes)));
+
+            // A full region is reclaimed by a collection before allocation gives up
+            for (int i = 0; i < 1000; i++) {
+                env.allocateObject(new byte[100]);
+            }
+            assertTrue(store.getHighWaterMark() <= store.getCapacity());
+            assertThrows(RuntimeException.class, () -> env.allocateObject(new byte[8192]));
+
+            long address = types.allocateOffHeap(10);
+            types.verifyMemoryAccess(address, 10);
+            assertThrows(RuntimeException.class, () -> types.verifyMemoryAccess(address, 11));
+            assertThrows(RuntimeException.class, () -> types.verifyMemoryAccess(address + 16, 1));
+            types.freeOffHeap(address);
+            assertThrows(RuntimeException.class, () -> types.verifyMemoryAccess(address, 1));
+            assertThrows(RuntimeException.class, () -> types.freeOffHeap(address));
+        } finally {
+            env.shutdown();
+        }
+    }
+
+    @Test
+    void testFreedBlocksServeOtherSizeClasses() {
+        OffHeapAllocator store = new OffHeapAllocator(ByteBuffer.allocateDirect(4096));
+        // 256 blocks of 16 bytes fill the region; freed, they merge back into one block
+        int[] small = new int[256];
+        for (int i = 0; i < small.length; i++) {
+            small[i] = store.allocate(5);
+        }
+        assertEquals(-1, store.tryAllocate(5));
+        for (int i = 0; i < small.length; i += 2) {
+            store.free(small[i]);
+        }
+        // Half the region is free, but in blocks too small for this
+        assertEquals(-1, store.tryAllocate(100));
+        for (int i = 1; i < small.length; i += 2) {
+            store.free(small[i]);
+        }
+        assertEquals(1, store.getFreeBlocks());
+        int whole = store.allocate(4096 - OffHeapAllocator.HEADER_SIZE);
+        store.free(whole);
+
+        // A region that is not a power of two still splits and merges within its bounds
+        OffHeapAllocator odd = new OffHeapAllocator(ByteBuffer.allocateDirect(48));
+        int[] blocks = { odd.allocate(5), odd.allocate(5), odd.allocate(5) };
+        assertEquals(-1, odd.tryAllocate(5));
+        for (int block : blocks) {
+            odd.free(block);
+        }
+        assertEquals(2, odd.getFreeBlocks());
+        assertEquals(32 - OffHeapAllocator.HEADER_SIZE, odd.length(odd.allocate(32 - OffHeapAllocator.HEADER_SIZE)));
+
+        // Through the environment: a region filled with Integers, once collected, takes
+        // byte arrays, and a value that finds no room is kept on the heap instead
+        ExecutionEnvironment env = new ExecutionEnvironment(1 << 16, Integer.MAX_VALUE);
+        try {
+            for (int i = 0; i < 4096; i++) {
+                env.allocateObject(i);
+            }
+            env.collectGarbage();
+            assertEquals(0, env.getOffHeapAllocator().getUsedBytes());
+            long bytes = env.allocateObject(new byte[100]);
+            assertEquals(1, env.getOffHeapAllocator().getLiveBlocks());
+            env.setGlobalVariable("bytes", bytes);
+            long big = env.allocateObject(new byte[30_000]);
+            env.setGlobalVariable("big", big);
+            long overflow = env.allocateObject(new byte[30_000]);
+            assertEquals(2, env.getOffHeapAllocator().getLiveBlocks());
+            assertEquals(30_000, ((byte[]) env.getObject(overflow)).length);
+        } finally {
+            env.shutdown();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Table-driven Pratt parser over a TokenBuffer. An operator or symbol token is encoded
+// as (firstChar << 1 | length - 1), so classifying it is one array read, and the parse
+// never builds the "KIND:value" strings the list-based Parser matches on. Builds the
+// same Parser.Node trees, with identifiers resolved to their lexed Symbols ids and to
+// frame slots in the parser's Scope.
+public final class PrattParser {
+  private static final int TABLE_SIZE = 256;
+  private static final int NOT_AN_OPERATOR = 0;
+
+  // Binding powers, loosest first; all infix operators are left-associative
+  private static final int LOWEST = 0;
+  private static final int OR = 1;
+  private static final int AND = 2;
+  private static final int EQUALITY = 3;
+  private static final int COMPARISON = 4;
+  private static final int ADDITIVE = 5;
+  private static final int MULTIPLICATIVE = 6;
+  private static final int PREFIX = 7;
+
+  private static final int[] INFIX_PRECEDENCE = new int[TABLE_SIZE];
+  private static final String[] OPERATOR_NAMES = new String[TABLE_SIZE];
+
+  private static final int MINUS = code('-', 1);
+  private static final int LEFT_PAREN = code('(', 1);
+  private static final int RIGHT_PAREN = code(')', 1);
+  private static final int SEMICOLON = code(';', 1);
+  private static final int LOGICAL_AND = code('&', 2);
+  private static final int LOGICAL_OR = code('|', 2);
+
+  static {
+    infix("||", OR);
+    infix("&&", AND);
+    infix("==", EQUALITY);
+    infix("!=", EQUALITY);
+    infix("<=", COMPARISON);
+    infix(">=", COMPARISON);
+    infix("+", ADDITIVE);
+    infix("-", ADDITIVE);
+    infix("*", MULTIPLICATIVE);
+    infix("/", MULTIPLICATIVE);
+    infix("%", MULTIPLICATIVE);
+  }
+
+  private final TokenBuffer tokens;
+  private final Scope scope;
+  private final int size;
+  private int current = 0;
+  private int nodeCount = 0;
+
+  public PrattParser(TokenBuffer tokens) {
+    this(tokens, new Scope());
+  }
+
+  // Shares the scope with other parsers, for code that runs against one frame
+  public PrattParser(TokenBuffer tokens, Scope scope) {
+    this.tokens = tokens;
+    this.scope = scope;
+    this.size = tokens.size();
+  }
+
+  public Scope getScope() {
+    return scope;
+  }
+
+  // Parses one statement: an expression with an optional trailing ';'
+  public Parser.Node parse() {
+    Parser.Node node = parseExpression();
+    if (peekCode() == SEMICOLON) {
+      current++;
+    }
+    if (current < size) {
+      throw new RuntimeException("Unexpected token: " + describe(current));
+    }
+    return node;
+  }
+
+  // Parses a whole script: expressions separated by ';', the last one optionally unterminated
+  public List<Parser.Node> parseStatements() {
+    List<Parser.Node> statements = new ArrayList<>();
+    while (current < size) {
+      if (peekCode() == SEMICOLON) {
+        current++;
+        continue;
+      }
+      statements.add(parseExpression(LOWEST));
+      if (current < size) {
+        if (peekCode() != SEMICOLON) {
+          throw new RuntimeException("Unexpected token: " + describe(current));
+        }
+        current++;
+      }
+    }
+    return statements;
+  }
+
+  // Nodes built so far, for callers that size the parsed tree
+  int nodeCount() {
+    return nodeCount;
+  }
+
+  public Parser.Node parseExpression() {
+    return parseExpression(LOWEST);
+  }
+
+  private Parser.Node parseExpression(int minPrecedence) {
+    Parser.Node left = parsePrefix();
+    while (true) {
+      int code = peekCode();
+      int precedence = INFIX_PRECEDENCE[code];
+      if (precedence <= minPrecedence) {
+        return left;
+      }
+      current++;
+      Parser.Node right = parseExpression(precedence);
+      nodeCount++;
+      left = code == LOGICAL_AND || code == LOGICAL_OR
+          ? new Parser.LogicalNode(left, OPERATOR_NAMES[code], right)
+          : new Parser.BinaryNode(left, OPERATOR_NAMES[code], right);
+    }
+  }
+
+  private Parser.Node parsePrefix() {
+    if (current >= size) {
+      throw new RuntimeException("Unexpected end of input");
+    }
+    int index = current;
+    switch (tokens.kind(index)) {
+      case TokenBuffer.NUMBER:
+        current++;
+        nodeCount++;
+        return new Parser.NumberNode(parseIntLiteral(tokens.getSource(), tokens.start(index), tokens.end(index)));
+      case TokenBuffer.IDENTIFIER:
+        current++;
+        nodeCount++;
+        return new Parser.VariableNode(tokens.symbol(index), scope.resolve(tokens.symbol(index)));
+      case TokenBuffer.OPERATOR:
+        if (peekCode() == MINUS) {
+          current++;
+          nodeCount++;
+          return new Parser.UnaryNode("-", parseExpression(PREFIX));
+        }
+        break;
+      case TokenBuffer.SYMBOL:
+        if (peekCode() == LEFT_PAREN) {
+          current++;
+          Parser.Node expr = parseExpression(LOWEST);
+          if (peekCode() != RIGHT_PAREN) {
+            throw new RuntimeException("Expected ')' after expression");
+          }
+          current++;
+          return expr;
+        }
+        break;
+      default:
+        break;
+    }
+    throw new RuntimeException("Unexpected token: " + describe(index));
+  }
+
+  // Operator/symbol code of the current token, NOT_AN_OPERATOR for other kinds or past the end
+  private int peekCode() {
+    if (current >= size) {
+      return NOT_AN_OPERATOR;
+    }
+    int kind = tokens.kind(current);
+    if (kind != TokenBuffer.OPERATOR && kind != TokenBuffer.SYMBOL) {
+      return NOT_AN_OPERATOR;
+    }
+    return code(tokens.firstChar(current), tokens.length(current));
+  }
+
+  private String describe(int index) {
+    return TokenBuffer.kindName(tokens.kind(index)) + ":" + tokens.text(index);
+  }
+
+  private static int code(char first, int length) {
+    return first << 1 | (length - 1);
+  }
+
+  private static void infix(String operator, int precedence) {
+    int code = code(operator.charAt(0), operator.length());
+    INFIX_PRECEDENCE[code] = precedence;
+    OPERATOR_NAMES[code] = operator;
+  }
+
+  // Decimal literals are read straight from the source with Integer.parseInt's range
+  // rules; hex and binary literals are 32-bit unsigned patterns (0xFFFFFFFF == -1)
+  static int parseIntLiteral(CharSequence source, int start, int end) {
+    if (end - start > 2 && source.charAt(start) == '0') {
+      char prefix = source.charAt(start + 1);
+      if (prefix == 'x' || prefix == 'X') {
+        return Integer.parseUnsignedInt(Lexers.decodeNumber(source, start + 2, end), 16);
+      }
+      if (prefix == 'b' || prefix == 'B') {
+        return Integer.parseUnsignedInt(Lexers.decodeNumber(source, start + 2, end), 2);
+      }
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      char c = source.charAt(i);
+      if (c == '_') {
+        continue;
+      }
+      int digit = Character.digit(c, 10);
+      if (digit < 0) {
+        throw new NumberFormatException("For input string: \"" + Lexers.decodeNumber(source, start, end) + "\"");
+      }
+      value = value * 10 + digit;
+      if (value > Integer.MAX_VALUE) {
+        throw new NumberFormatException("For input string: \"" + Lexers.decodeNumber(source, start, end) + "\"");
+      }
+    }
+    return (int) value;
+  }
+}
@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+class PrattParserTest {
+
+    @Test
+    void testPrattParserPrecedence() {
+        assertEquals(14, evaluatePratt("2 + 3 * 4"));
+        assertEquals(20, evaluatePratt("(2 + 3) * 4;"));
+        assertEquals(1, evaluatePratt("10 - 4 - 5"));
+        assertEquals(2, evaluatePratt("17 % 5 * 1"));
+        assertEquals(-6, evaluatePratt("-2 * 3"));
+        assertEquals(31, evaluatePratt("0x1F"));
+        assertEquals(true, evaluatePratt("1 + 1 == 2 && 3 >= 2 * 2 || 4 <= 4"));
+        assertEquals(false, evaluatePratt("1 != 1 || 2 == 3"));
+        // The right side is never evaluated, so its division by zero does not throw
+        assertEquals(false, evaluatePratt("1 == 2 && 1 / 0 == 0"));
+        assertEquals(true, evaluatePratt("1 == 1 || 1 / 0 == 0"));
+    }
+
+    @Test
+    void testPrattParserErrors() {
+        assertThrows(RuntimeException.class, () -> evaluatePratt(""));
+        assertThrows(RuntimeException.class, () -> evaluatePratt("(1 + 2"));
+        assertThrows(RuntimeException.class, () -> evaluatePratt("1 2"));
+        assertThrows(RuntimeException.class, () -> evaluatePratt("1 + ;"));
+        assertThrows(RuntimeException.class, () -> evaluatePratt("1 && 2"));
+    }
+
+    @Test
+    void testPrattParserMatchesParser() {
+        String[] fragments = { "1", "7", "42", "0", "+", "-", "*", "/", "(", ")", " " };
+        Random random = new Random(11);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder source = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                source.append(fragments[random.nextInt(fragments.length)]).append(' ');
+            }
+            String text = source.toString();
+            Object expected;
+            try {
+                expected = new Parser(new Lexers(text).tokenize()).parse().evaluate();
+            } catch (RuntimeException e) {
+                expected = e.getClass();
+            }
+            Object actual;
+            try {
+                actual = new PrattParser(new Lexers(text).tokenizeToBuffer()).parse().evaluate();
+            } catch (RuntimeException e) {
+                actual = e.getClass();
+            }
+            // The Pratt parser also accepts prefix minus, which Parser rejects
+            if (!(expected == RuntimeException.class && text.contains("-"))) {
+                assertEquals(expected, actual, "source: " + text);
+            }
+        }
+    }
+
+    private static Object evaluatePratt(String source) {
+        return new PrattParser(new Lexers(source).tokenizeToBuffer()).parse().evaluate();
+    }
+}
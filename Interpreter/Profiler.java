@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Sampling profiler for scripts and methods. While it runs, script statements, loops,
+// Node.run() calls and methods invoked through the Interpreter push an entry onto a
+// per-thread shadow stack and count the evaluation. A daemon thread samples every
+// shadow stack each interval: the top entry gets a self sample, every entry on the
+// stack a total sample, and the stack as a whole is counted under its collapsed form
+// ("Outer.run;Script.BinaryNode 12"), which flame-graph tools render as is. Times are
+// samples times the interval, so they are estimates. When stopped, instrumented code
+// only reads one volatile flag. Samples read other threads' stacks without locking and
+// may see a frame that is just being pushed or popped.
+public final class Profiler {
+  public static final long DEFAULT_INTERVAL_MICROS = 1000;
+
+  private static final ThreadLocal<ShadowStack> STACKS = ThreadLocal.withInitial(Profiler::newStack);
+  private static final Set<ShadowStack> stacks = ConcurrentHashMap.newKeySet();
+  private static final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+  private static final Map<String, LongAdder> collapsed = new ConcurrentHashMap<>();
+  private static volatile boolean enabled;
+  private static volatile long intervalNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_INTERVAL_MICROS);
+  private static ScheduledExecutorService sampler;
+
+  private Profiler() {
+  }
+
+  public static synchronized void start(long intervalMicros) {
+    if (intervalMicros <= 0) {
+      throw new IllegalArgumentException("Sampling interval must be positive: " + intervalMicros);
+    }
+    stop();
+    intervalNanos = TimeUnit.MICROSECONDS.toNanos(intervalMicros);
+    sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "profiler-sampler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    sampler.scheduleAtFixedRate(Profiler::sample, intervalMicros, intervalMicros, TimeUnit.MICROSECONDS);
+    enabled = true;
+  }
+
+  public static void start() {
+    start(DEFAULT_INTERVAL_MICROS);
+  }
+
+  // Keeps what was collected; reset() discards it
+  public static synchronized void stop() {
+    enabled = false;
+    if (sampler != null) {
+      sampler.shutdownNow();
+      sampler = null;
+    }
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void reset() {
+    entries.clear();
+    collapsed.clear();
+  }
+
+  // Pushes an entry for site, labelled "owner.name" (or just name) the first time it is seen.
+  // Callers check isEnabled() first and pair every enter() with an exit() in a finally block.
+  static void enter(Object site, String owner, String name) {
+    Entry entry = entries.get(site);
+    if (entry == null) {
+      entry = entries.computeIfAbsent(site, key -> new Entry(owner == null ? name : owner + "." + name));
+    }
+    entry.evaluations.increment();
+    STACKS.get().push(entry);
+  }
+
+  static void exit() {
+    STACKS.get().pop();
+  }
+
+  static Object evaluate(Parser.Node node, String owner, Frame frame) {
+    enter(node, owner, node.getClass().getSimpleName());
+    try {
+      return node.evaluate(frame);
+    } finally {
+      exit();
+    }
+  }
+
+  static Object execute(MethodNode method, String owner, ExecutionEnvironment env, Object... args) {
+    enter(method, owner, method.getName());
+    try {
+      return env.execute(method, args);
+    } finally {
+      exit();
+    }
+  }
+
+  // Takes one sample of every live thread's stack; run by the sampler thread
+  static void sample() {
+    StringBuilder key = new StringBuilder();
+    for (ShadowStack stack : stacks) {
+      if (!stack.thread.isAlive()) {
+        stacks.remove(stack);
+        continue;
+      }
+      Entry[] frames = stack.frames;
+      int depth = Math.min(stack.depth, frames.length);
+      if (depth == 0) {
+        continue;
+      }
+      key.setLength(0);
+      for (int i = 0; i < depth; i++) {
+        Entry entry = frames[i];
+        if (i > 0) {
+          key.append(';');
+        }
+        key.append(entry.label);
+        // Recursive entries count once towards total time
+        if (indexOf(frames, entry, i) == i) {
+          entry.totalSamples.increment();
+        }
+      }
+      frames[depth - 1].selfSamples.increment();
+      collapsed.computeIfAbsent(key.toString(), k -> new LongAdder()).increment();
+    }
+  }
+
+  private static int indexOf(Entry[] frames, Entry entry, int limit) {
+    for (int i = 0; i < limit; i++) {
+      if (frames[i] == entry) {
+        return i;
+      }
+    }
+    return limit;
+  }
+
+  // Collapsed stack -> sample count, in the order flame-graph tools expect
+  public static Map<String, Long> getCollapsedStacks() {
+    Map<String, Long> result = new TreeMap<>();
+    collapsed.forEach((stack, count) -> result.put(stack, count.sum()));
+    return result;
+  }
+
+  // One "frame;frame;frame count" line per distinct stack, the input format of flamegraph.pl
+  public static void writeCollapsedStacks(Writer out) throws IOException {
+    for (Map.Entry<String, Long> stack : getCollapsedStacks().entrySet()) {
+      out.write(stack.getKey() + " " + stack.getValue() + "\n");
+    }
+    out.flush();
+  }
+
+  public static List<Entry> getEntries() {
+    return new ArrayList<>(entries.values());
+  }
+
+  private static ShadowStack newStack() {
+    ShadowStack stack = new ShadowStack(Thread.currentThread());
+    stacks.add(stack);
+    return stack;
+  }
+
+  public static final class Entry {
+    private final String label;
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder selfSamples = new LongAdder();
+    private final LongAdder totalSamples = new LongAdder();
+
+    Entry(String label) {
+      this.label = label;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+
+    public long getEvaluations() {
+      return evaluations.sum();
+    }
+
+    // Estimated time with this entry on top of the stack
+    public long getSelfTimeNanos() {
+      return selfSamples.sum() * intervalNanos;
+    }
+
+    // Estimated time with this entry anywhere on the stack
+    public long getTotalTimeNanos() {
+      return totalSamples.sum() * intervalNanos;
+    }
+  }
+
+  // Written only by its thread; frames are stored before depth is raised so samplers see them
+  private static final class ShadowStack {
+    final Thread thread;
+    volatile Entry[] frames = new Entry[16];
+    volatile int depth;
+
+    ShadowStack(Thread thread) {
+      this.thread = thread;
+    }
+
+    void push(Entry entry) {
+      Entry[] current = frames;
+      if (depth == current.length) {
+        current = Arrays.copyOf(current, depth * 2);
+        frames = current;
+      }
+      current[depth] = entry;
+      depth++;
+    }
+
+    // Popped slots keep their entry until overwritten, so a racing sample never reads null
+    void pop() {
+      depth--;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class ProfilerTest {
+
+    @Test
+    void testProfilerCountsAndExportsCollapsedStacks() throws Exception {
+        Interpreter interpreter = new Interpreter();
+        Profiler.reset();
+        // The sampler thread never fires within the test; samples are taken by the leaf method
+        Profiler.start(TimeUnit.SECONDS.toMicros(60));
+        try {
+            ClassNode inner = new ClassNode("Inner");
+            inner.addMethod(new MethodNode("leaf", new String[] { "int" }, "int") {
+                @Override
+                public Object execute(ExecutionEnvironment env, Object... args) {
+                    Profiler.sample();
+                    return args[0];
+                }
+            });
+            ClassNode outer = new ClassNode("Outer");
+            outer.addMethod(new MethodNode("run", new String[] { "int" }, "int") {
+                @Override
+                public Object execute(ExecutionEnvironment env, Object... args) {
+                    return interpreter.executeMethod("Inner", "leaf", args[0]);
+                }
+            });
+            interpreter.loadClass(inner);
+            interpreter.loadClass(outer);
+            CallHandle run = interpreter.lookup("Outer", "run");
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i, run.invoke(i));
+            }
+            interpreter.setGlobalVariable("x", 4);
+            interpreter.runScript("x + 2 * 3");
+            interpreter.runScript("x + 2 * 3");
+
+            assertEquals(Map.of("Outer.run;Inner.leaf", 3L), Profiler.getCollapsedStacks());
+            StringWriter out = new StringWriter();
+            Profiler.writeCollapsedStacks(out);
+            assertEquals("Outer.run;Inner.leaf 3\n", out.toString());
+
+            Map<String, Profiler.Entry> entries = new HashMap<>();
+            for (Profiler.Entry entry : Profiler.getEntries()) {
+                entries.put(entry.getLabel(), entry);
+            }
+            long sampled = 3 * TimeUnit.SECONDS.toNanos(60);
+            assertEquals(3, entries.get("Outer.run").getEvaluations());
+            assertEquals(0, entries.get("Outer.run").getSelfTimeNanos());
+            assertEquals(sampled, entries.get("Outer.run").getTotalTimeNanos());
+            assertEquals(sampled, entries.get("Inner.leaf").getSelfTimeNanos());
+            assertEquals(2, entries.get("Script.BinaryNode").getEvaluations());
+
+            // Stopped, nothing more is counted
+            Profiler.stop();
+            run.invoke(7);
+            assertEquals(3, entries.get("Outer.run").getEvaluations());
+        } finally {
+            Profiler.stop();
+            Profiler.reset();
+            interpreter.shutdown();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.Objects;
+
+// Dispatch loop for Bytecode. Arithmetic and comparisons run on the int register file
+// with no boxing; only REF registers hold Objects. Results are boxed once, on return.
+public final class RegisterVM {
+  private RegisterVM() {
+  }
+
+  public static Object execute(Bytecode program) {
+    return execute(program, Frame.EMPTY);
+  }
+
+  public static Object execute(Bytecode program, Frame frame) {
+    int[] code = program.code;
+    Object[] constants = program.constants;
+    int[] ints = new int[program.intRegisters];
+    Object[] refs = new Object[program.refRegisters];
+    long[] timers = new long[program.timerRegisters];
+    int pc = 0;
+    try {
+      while (true) {
+        switch (code[pc]) {
+          case Bytecode.CONST:
+            ints[code[pc + 1]] = code[pc + 2];
+            pc += 3;
+            break;
+          case Bytecode.LOAD_VAR:
+            refs[code[pc + 1]] = frame.get(code[pc + 2]);
+            pc += 3;
+            break;
+          case Bytecode.BOX_INT:
+            refs[code[pc + 1]] = ints[code[pc + 2]];
+            pc += 3;
+            break;
+          case Bytecode.BOX_BOOL:
+            refs[code[pc + 1]] = ints[code[pc + 2]] != 0;
+            pc += 3;
+            break;
+          case Bytecode.UNBOX_INT:
+            ints[code[pc + 1]] = (Integer) refs[code[pc + 2]];
+            pc += 3;
+            break;
+          case Bytecode.UNBOX_BOOL: {
+            Object value = refs[code[pc + 2]];
+            if (!(value instanceof Boolean)) {
+              throw new RuntimeException((String) constants[code[pc + 3]]);
+            }
+            ints[code[pc + 1]] = (Boolean) value ? 1 : 0;
+            pc += 4;
+            break;
+          }
+          case Bytecode.ADD:
+            ints[code[pc + 1]] = ints[code[pc + 2]] + ints[code[pc + 3]];
+            pc += 4;
+            break;
+          case Bytecode.SUB:
+            ints[code[pc + 1]] = ints[code[pc + 2]] - ints[code[pc + 3]];
+            pc += 4;
+            break;
+          case Bytecode.MUL:
+            ints[code[pc + 1]] = ints[code[pc + 2]] * ints[code[pc + 3]];
+            pc += 4;
+            break;
+          case Bytecode.DIV:
+            ints[code[pc + 1]] = ints[code[pc + 2]] / ints[code[pc + 3]];
+            pc += 4;
+            break;
+          case Bytecode.MOD:
+            ints[code[pc + 1]] = ints[code[pc + 2]] % ints[code[pc + 3]];
+            pc += 4;
+            break;
+          case Bytecode.LE:
+            ints[code[pc + 1]] = ints[code[pc + 2]] <= ints[code[pc + 3]] ? 1 : 0;
+            pc += 4;
+            break;
+          case Bytecode.GE:
+            ints[code[pc + 1]] = ints[code[pc + 2]] >= ints[code[pc + 3]] ? 1 : 0;
+            pc += 4;
+            break;
+          case Bytecode.EQ:
+            ints[code[pc + 1]] = ints[code[pc + 2]] == ints[code[pc + 3]] ? 1 : 0;
+            pc += 4;
+            break;
+          case Bytecode.NE:
+            ints[code[pc + 1]] = ints[code[pc + 2]] != ints[code[pc + 3]] ? 1 : 0;
+            pc += 4;
+            break;
+          case Bytecode.EQ_REF:
+            ints[code[pc + 1]] = Objects.equals(refs[code[pc + 2]], refs[code[pc + 3]]) ? 1 : 0;
+            pc += 4;
+            break;
+          case Bytecode.NE_REF:
+            ints[code[pc + 1]] = Objects.equals(refs[code[pc + 2]], refs[code[pc + 3]]) ? 0 : 1;
+            pc += 4;
+            break;
+          case Bytecode.NEG:
+            ints[code[pc + 1]] = -ints[code[pc + 2]];
+            pc += 3;
+            break;
+          case Bytecode.MOVE:
+            ints[code[pc + 1]] = ints[code[pc + 2]];
+            pc += 3;
+            break;
+          case Bytecode.JUMP:
+            pc = code[pc + 1];
+            break;
+          case Bytecode.JUMP_IF_FALSE:
+            pc = ints[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+            break;
+          case Bytecode.JUMP_IF_TRUE:
+            pc = ints[code[pc + 1]] != 0 ? code[pc + 2] : pc + 3;
+            break;
+          case Bytecode.DEADLINE_START:
+            timers[code[pc + 1]] = System.currentTimeMillis();
+            pc += 2;
+            break;
+          case Bytecode.DEADLINE_CHECK: {
+            int deadlineMs = code[pc + 2];
+            if (System.currentTimeMillis() - timers[code[pc + 1]] > deadlineMs) {
+              throw new RuntimeException("Deadline exceeded: " + deadlineMs + "ms");
+            }
+            pc += 3;
+            break;
+          }
+          case Bytecode.LOOP_BEGIN:
+            ((EmbeddedLoopNode) constants[code[pc + 1]]).begin();
+            pc += 2;
+            break;
+          case Bytecode.LOOP_NEXT:
+            pc = ((EmbeddedLoopNode) constants[code[pc + 1]]).nextIteration() ? pc + 3 : code[pc + 2];
+            break;
+          case Bytecode.LOOP_RECORD:
+            ((EmbeddedLoopNode) constants[code[pc + 1]]).recordIteration(refs[code[pc + 2]]);
+            pc += 3;
+            break;
+          case Bytecode.LOOP_RESULT:
+            refs[code[pc + 1]] = ((EmbeddedLoopNode) constants[code[pc + 2]]).result();
+            pc += 3;
+            break;
+          case Bytecode.EVALUATE:
+            refs[code[pc + 1]] = ((Parser.Node) constants[code[pc + 2]]).evaluate(frame);
+            pc += 3;
+            break;
+          case Bytecode.RETURN: {
+            int register = code[pc + 1];
+            switch (program.resultKind) {
+              case Bytecode.INT:
+                return ints[register];
+              case Bytecode.BOOL:
+                return ints[register] != 0;
+              default:
+                return refs[register];
+            }
+          }
+          default:
+            throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+        }
+      }
+    } catch (RuntimeException e) {
+      // Same rollback EmbeddedLoopNode does when its body throws, for every enclosing loop
+      int[] handlers = program.handlers;
+      for (int i = 0; i < handlers.length; i += 3) {
+        if (pc >= handlers[i] && pc < handlers[i + 1]) {
+          ((EmbeddedLoopNode) constants[handlers[i + 2]]).rollbackIteration();
+        }
+      }
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+class RegisterVMTest {
+
+    @Test
+    void testRegisterVMMatchesTreeWalker() {
+        Random random = new Random(17);
+        for (int i = 0; i < 20000; i++) {
+            String source = TestPrograms.randomExpression(random, 4);
+            Parser.Node node = new PrattParser(new Lexers(source).tokenizeToBuffer()).parse();
+            Parser.Node optimized = AstOptimizer.optimize(node);
+            Parser.Node deadline = new Parser.DeadlineNode(1000, node);
+            assertEquals(TestPrograms.outcome(node), vmOutcome(node), "source: " + source);
+            assertEquals(TestPrograms.outcome(optimized), vmOutcome(optimized), "optimized source: " + source);
+            assertEquals(TestPrograms.outcome(deadline), vmOutcome(deadline), "deadline source: " + source);
+        }
+        assertEquals("RuntimeException: Deadline exceeded: -1ms",
+                vmOutcome(new Parser.DeadlineNode(-1, new Parser.NumberNode(1))));
+    }
+
+    @Test
+    void testRegisterVMLoops() {
+        Random random = new Random(19);
+        for (int i = 0; i < 2000; i++) {
+            String condition = random.nextInt(4) == 0 ? TestPrograms.randomExpression(random, 2) : "1 <= 2";
+            String body = TestPrograms.randomExpression(random, 3);
+            int maxIterations = random.nextInt(5);
+            EmbeddedLoopNode walked = TestPrograms.loop(condition, body, maxIterations);
+            EmbeddedLoopNode compiled = TestPrograms.loop(condition, body, maxIterations);
+            assertEquals(TestPrograms.outcome(walked), vmOutcome(compiled), "loop: " + condition + " / " + body);
+            assertEquals(walked.getIterationHistory(), compiled.getIterationHistory());
+            assertEquals(walked.getMetrics().iterations, compiled.getMetrics().iterations);
+        }
+
+        // An inner loop whose body fails rolls back both loops' history
+        Parser.Node failing = new PrattParser(new Lexers("1 / 0").tokenizeToBuffer()).parse();
+        Parser.Node always = new PrattParser(new Lexers("1 == 1").tokenizeToBuffer()).parse();
+        EmbeddedLoopNode inner = new EmbeddedLoopNode(always, failing, 3, 1000);
+        EmbeddedLoopNode outer = new EmbeddedLoopNode(always, inner, 3, 1000);
+        assertEquals(ArithmeticException.class, vmOutcome(outer));
+        assertTrue(outer.getIterationHistory().isEmpty());
+        assertTrue(inner.getIterationHistory().isEmpty());
+    }
+
+    private static Object vmOutcome(Parser.Node node) {
+        try {
+            return RegisterVM.execute(BytecodeCompiler.compile(node));
+        } catch (RuntimeException e) {
+            return TestPrograms.failure(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.Arrays;
+
+// Variable layout of one compilation unit. The parser resolves every identifier to a
+// slot here as it builds the tree, so evaluation indexes a Frame instead of hashing a
+// name. Slots are dense and handed out in first-use order; the scope only grows, and
+// nodes keep the slot they were built with.
+public final class Scope {
+  public static final int UNRESOLVED = -1;
+
+  private final SymbolMap<Integer> slots = new SymbolMap<>();
+  private volatile int[] symbols = new int[8];
+  private volatile int size = 0;
+
+  // Slot of the symbol, assigning the next free one on first use
+  public synchronized int resolve(int symbol) {
+    Integer slot = slots.get(symbol);
+    if (slot != null) {
+      return slot;
+    }
+    if (size == symbols.length) {
+      symbols = Arrays.copyOf(symbols, size * 2);
+    }
+    symbols[size] = symbol;
+    slots.put(symbol, size);
+    return size++;
+  }
+
+  public int slotOf(String name) {
+    Integer slot = slots.get(name);
+    return slot == null ? UNRESOLVED : slot;
+  }
+
+  public int symbolAt(int slot) {
+    if (slot < 0 || slot >= size) {
+      throw new IndexOutOfBoundsException("Slot " + slot + " outside scope of size " + size);
+    }
+    return symbols[slot];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Frame newFrame() {
+    return new Frame(size);
+  }
+
+  // Frame holding the value bound to each slot's name, or null where there is none
+  public Frame bind(SymbolMap<Object> values) {
+    int count = size;
+    Frame frame = new Frame(count);
+    for (int slot = 0; slot < count; slot++) {
+      frame.set(slot, values.get(symbolAt(slot)));
+    }
+    return frame;
+  }
+}
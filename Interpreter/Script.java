@@ -0,0 +1,79 @@
+import java.util.List;
+
+// Parsed statements of one source together with the Scope their variables resolved
+// to. Variables live in the Frame passed to run(), so a cached Script can run on
+// several threads at once. Each statement counts its invocations while JitCompiler
+// tiering is on and runs compiled once past the threshold; the counts are not
+// synchronized, so racing threads may compile a statement a little late or twice.
+public final class Script {
+  private final List<Parser.Node> statements;
+  private final Scope scope;
+  private final int[] invocations;
+  private final JitCompiler.CompiledCode[] compiled;
+  private final boolean[] uncompilable;
+
+  public Script(List<Parser.Node> statements, Scope scope) {
+    this.statements = List.copyOf(statements);
+    this.scope = scope;
+    this.invocations = new int[statements.size()];
+    this.compiled = new JitCompiler.CompiledCode[statements.size()];
+    this.uncompilable = new boolean[statements.size()];
+  }
+
+  public List<Parser.Node> getStatements() {
+    return statements;
+  }
+
+  public Scope getScope() {
+    return scope;
+  }
+
+  public Frame newFrame() {
+    return scope.newFrame();
+  }
+
+  // Runs every statement against the frame; the value of the last one, or null if empty
+  public Object run(Frame frame) {
+    Object result = null;
+    for (int i = 0; i < statements.size(); i++) {
+      result = runStatement(i, frame);
+    }
+    return result;
+  }
+
+  private Object runStatement(int index, Frame frame) {
+    if (Profiler.isEnabled()) {
+      Parser.Node statement = statements.get(index);
+      Profiler.enter(statement, "Script", statement.getClass().getSimpleName());
+      try {
+        return tieredStatement(index, frame);
+      } finally {
+        Profiler.exit();
+      }
+    }
+    return tieredStatement(index, frame);
+  }
+
+  private Object tieredStatement(int index, Frame frame) {
+    JitCompiler.CompiledCode code = compiled[index];
+    if (code != null) {
+      return code.execute(frame);
+    }
+    Parser.Node statement = statements.get(index);
+    if (JitCompiler.isEnabled() && !uncompilable[index] &&
+        ++invocations[index] >= JitCompiler.getInvocationThreshold()) {
+      code = JitCompiler.compile(statement);
+      if (code != null) {
+        compiled[index] = code;
+        return code.execute(frame);
+      }
+      uncompilable[index] = true;
+    }
+    return statement.evaluate(frame);
+  }
+
+  // Compiled code of a statement, or null while it is interpreted
+  public JitCompiler.CompiledCode getCompiledCode(int index) {
+    return compiled[index];
+  }
+}
@@ -0,0 +1,160 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Content-addressed cache of parsed scripts, keyed by the SHA-256 of the source text.
+// Entries are kept in LRU order and evicted once their estimated size passes the byte
+// bound. Cached statement lists are unmodifiable, nodes only change their own
+// TypeFeedback state, and variables live in per-activation frames, so one Script can
+// be shared by every thread that submits the same source.
+public final class ScriptCache {
+  // Rough footprint of a parsed node, and of a key plus its map entry
+  private static final int NODE_BYTES = 32;
+  private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+  private final long maxBytes;
+  private final LinkedHashMap<Digest, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long currentBytes = 0;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public ScriptCache(long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  // Parsed and optimized statements of the source, lexing and parsing it only on a miss
+  public Script compile(String source) {
+    Digest key = Digest.of(source);
+    synchronized (this) {
+      Entry cached = entries.get(key);
+      if (cached != null) {
+        hits.incrementAndGet();
+        return cached.script;
+      }
+    }
+    misses.incrementAndGet();
+
+    // Parse outside the lock; two threads missing on the same source both parse it
+    PrattParser parser = new PrattParser(new Lexers(source).tokenizeToBuffer());
+    Script script = new Script(AstOptimizer.optimize(parser.parseStatements()), parser.getScope());
+    long bytes = ENTRY_OVERHEAD_BYTES + (long) parser.nodeCount() * NODE_BYTES;
+    if (bytes > maxBytes) {
+      return script;
+    }
+
+    synchronized (this) {
+      Entry existing = entries.get(key);
+      if (existing != null) {
+        return existing.script;
+      }
+      entries.put(key, new Entry(script, bytes));
+      currentBytes += bytes;
+      Iterator<Entry> eldest = entries.values().iterator();
+      while (currentBytes > maxBytes) {
+        currentBytes -= eldest.next().bytes;
+        eldest.remove();
+        evictions.incrementAndGet();
+      }
+    }
+    return script;
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    currentBytes = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getEstimatedBytes() {
+    return currentBytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  public Map<String, Long> getStats() {
+    return Map.of(
+        "hits", getHitCount(),
+        "misses", getMissCount(),
+        "evictions", getEvictionCount(),
+        "entries", (long) size(),
+        "estimatedBytes", getEstimatedBytes());
+  }
+
+  private static final class Entry {
+    final Script script;
+    final long bytes;
+
+    Entry(Script script, long bytes) {
+      this.script = script;
+      this.bytes = bytes;
+    }
+  }
+
+  private static final class Digest {
+    private final byte[] hash;
+    private final int hashCode;
+
+    private Digest(byte[] hash) {
+      this.hash = hash;
+      this.hashCode = Arrays.hashCode(hash);
+    }
+
+    // Hashes the raw UTF-16 chars; a charset encoder would map every unpaired
+    // surrogate to the same replacement byte and let distinct sources collide
+    static Digest of(String source) {
+      MessageDigest sha;
+      try {
+        sha = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException("SHA-256 not available", e);
+      }
+      byte[] chunk = new byte[Math.min(source.length(), 4096) * 2];
+      for (int offset = 0; offset < source.length(); offset += chunk.length / 2) {
+        int count = Math.min(chunk.length / 2, source.length() - offset);
+        for (int i = 0; i < count; i++) {
+          char c = source.charAt(offset + i);
+          chunk[2 * i] = (byte) c;
+          chunk[2 * i + 1] = (byte) (c >>> 8);
+        }
+        sha.update(chunk, 0, count * 2);
+      }
+      return new Digest(sha.digest());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Digest && Arrays.equals(hash, ((Digest) o).hash);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
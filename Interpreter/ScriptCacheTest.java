@@ -0,0 +1,29 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScriptCacheTest {
+
+    @Test
+    void testScriptCache() {
+        ScriptCache cache = new ScriptCache(4096);
+        Script first = cache.compile("1 + 2; 3 * 4");
+        assertEquals(2, first.getStatements().size());
+        assertEquals(12, first.getStatements().get(1).evaluate());
+        assertSame(first, cache.compile("1 + 2; 3 * 4"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertThrows(UnsupportedOperationException.class, () -> first.getStatements().add(null));
+
+        // Each 41-term script is estimated at ~2.7KB, so only the most recently used one fits
+        String big = "1" + " + 1".repeat(40);
+        cache.compile(big);
+        cache.compile(big + " + 2");
+        assertEquals(1, cache.size());
+        assertTrue(cache.getEvictionCount() >= 2);
+        assertTrue(cache.getEstimatedBytes() <= cache.getMaxBytes());
+        assertEquals(43, cache.compile(big + " + 2").getStatements().get(0).evaluate());
+    }
+}
@@ -0,0 +1,402 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Pull-based lexer over a Reader, CharBuffer or memory-mapped file. Input is read
+// through a fixed-size window and unicode escapes are decoded in the same pass, so
+// memory stays bounded by the window plus the longest token.
+//
+// Cursor use: while (lexer.nextToken()) { lexer.kind(); lexer.rawText(); ... }
+// Iterator use yields the legacy "KIND:value" strings of Lexers.tokenize().
+public class StreamingLexer implements Iterator<String>, Closeable {
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+  private static final int MAX_RETAINED_TOKEN_CAPACITY = 64 * 1024;
+
+  private final Readable input;
+  private final CharBuffer raw;
+  private boolean inputExhausted = false;
+
+  private char currentChar;
+  private char nextChar;
+  private long position = 0;
+
+  private StringBuilder tokenText = new StringBuilder();
+  private int tokenKind = -1;
+  private int tokenSymbol = Symbols.NONE;
+  private long tokenStart;
+  private long tokenEnd;
+
+  private boolean lookaheadValid = false;
+  private boolean lookaheadAvailable = false;
+
+  public StreamingLexer(Readable input) {
+    this(input, DEFAULT_BUFFER_SIZE);
+  }
+
+  StreamingLexer(Readable input, int bufferSize) {
+    if (bufferSize < 8) {
+      throw new IllegalArgumentException("Buffer size must be at least 8 chars: " + bufferSize);
+    }
+    this.input = input;
+    this.raw = CharBuffer.allocate(bufferSize);
+    this.raw.flip();
+    this.currentChar = readDecoded();
+    this.nextChar = readDecoded();
+  }
+
+  public static StreamingLexer fromFileChannel(FileChannel channel) throws IOException {
+    return new StreamingLexer(new MappedChannelReadable(channel));
+  }
+
+  public static StreamingLexer open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return fromFileChannel(channel);
+    } catch (IOException | RuntimeException e) {
+      // Mapping or the first read failed; nothing else will close the channel
+      try {
+        channel.close();
+      } catch (IOException closeFailure) {
+        e.addSuppressed(closeFailure);
+      }
+      throw e;
+    }
+  }
+
+  // ---- raw input window ----
+
+  private boolean ensureRaw(int count) {
+    while (raw.remaining() < count && !inputExhausted) {
+      raw.compact();
+      try {
+        int read = input.read(raw);
+        if (read < 0) {
+          inputExhausted = true;
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } finally {
+        raw.flip();
+      }
+    }
+    return raw.remaining() >= count;
+  }
+
+  // Next char with unicode escapes decoded; '\0' marks end of input like in Lexers
+  private char readDecoded() {
+    if (!ensureRaw(1)) {
+      return '\0';
+    }
+    char c = raw.get();
+    if (c == '\\' && ensureRaw(1) && raw.get(raw.position()) == 'u') {
+      if (!ensureRaw(5)) {
+        throw new RuntimeException("Invalid unicode escape at position " + (position + 1));
+      }
+      raw.get();
+      int codePoint = 0;
+      for (int j = 0; j < 4; j++) {
+        int digit = Character.digit(raw.get(), 16);
+        if (digit < 0) {
+          throw new RuntimeException("Invalid unicode escape at position " + (position + 1));
+        }
+        codePoint = codePoint * 16 + digit;
+      }
+      return (char) codePoint;
+    }
+    return c;
+  }
+
+  private void advance() {
+    currentChar = nextChar;
+    nextChar = readDecoded();
+    position++;
+  }
+
+  private void consume() {
+    tokenText.append(currentChar);
+    advance();
+  }
+
+  // ---- scanning, mirrors Lexers ----
+
+  private void skipWhitespaceAndComments() {
+    while (currentChar != '\0') {
+      if (Lexers.isWhitespace(currentChar)) {
+        advance();
+      } else if (currentChar == '/') {
+        if (nextChar == '/') {
+          while (currentChar != '\0' && currentChar != '\n')
+            advance();
+        } else if (nextChar == '*') {
+          advance();
+          advance();
+          while (currentChar != '\0') {
+            if (currentChar == '*' && nextChar == '/') {
+              advance();
+              advance();
+              break;
+            }
+            advance();
+          }
+        } else {
+          break;
+        }
+      } else {
+        break;
+      }
+    }
+  }
+
+  private void readIdentifier() {
+    while (currentChar != '\0' && Lexers.isIdentifierPart(currentChar)) {
+      consume();
+    }
+  }
+
+  private void readNumber() {
+    boolean isHex = false, isBinary = false;
+
+    if (currentChar == '0') {
+      if (nextChar == 'x' || nextChar == 'X') {
+        isHex = true;
+        consume();
+        consume();
+      } else if (nextChar == 'b' || nextChar == 'B') {
+        isBinary = true;
+        consume();
+        consume();
+      }
+    }
+    while (currentChar != '\0') {
+      if (currentChar == '_') {
+        consume();
+        continue;
+      }
+      if (isHex && !Lexers.isDigit(currentChar) &&
+          !(currentChar >= 'a' && currentChar <= 'f') &&
+          !(currentChar >= 'A' && currentChar <= 'F'))
+        break;
+      if (isBinary && currentChar != '0' && currentChar != '1')
+        break;
+      if (!isHex && !isBinary && !Lexers.isDigit(currentChar))
+        break;
+      consume();
+    }
+  }
+
+  private void readString() {
+    char quote = currentChar;
+    consume();
+    while (currentChar != '\0' && currentChar != quote) {
+      if (currentChar == '\\') {
+        consume();
+      }
+      consume();
+    }
+    if (currentChar == quote)
+      consume();
+    else
+      throw new RuntimeException("Unterminated string at position " + position);
+  }
+
+  // Moves the cursor to the next token; returns false at end of input
+  public boolean nextToken() {
+    if (lookaheadValid) {
+      lookaheadValid = false;
+      return lookaheadAvailable;
+    }
+    return scanToken();
+  }
+
+  private boolean scanToken() {
+    if (tokenText.capacity() > MAX_RETAINED_TOKEN_CAPACITY) {
+      tokenText = new StringBuilder();
+    }
+    tokenText.setLength(0);
+    tokenKind = -1;
+    tokenSymbol = Symbols.NONE;
+
+    while (currentChar != '\0') {
+      if (Lexers.isWhitespace(currentChar) ||
+          (currentChar == '/' && (nextChar == '/' || nextChar == '*'))) {
+        skipWhitespaceAndComments();
+        continue;
+      }
+
+      tokenStart = position;
+      if (Lexers.isIdentifierStart(currentChar)) {
+        readIdentifier();
+        if (Lexers.isKeyword(tokenText, 0, tokenText.length())) {
+          tokenKind = TokenBuffer.KEYWORD;
+        } else {
+          tokenKind = TokenBuffer.IDENTIFIER;
+          tokenSymbol = Symbols.GLOBAL.intern(tokenText, 0, tokenText.length());
+        }
+      } else if (Lexers.isDigit(currentChar)) {
+        readNumber();
+        tokenKind = TokenBuffer.NUMBER;
+      } else if (currentChar == '"' || currentChar == '\'') {
+        readString();
+        tokenKind = TokenBuffer.STRING;
+      } else if ((currentChar == '=' || currentChar == '!' || currentChar == '>' || currentChar == '<') &&
+          nextChar == '=') {
+        consume();
+        consume();
+        tokenKind = TokenBuffer.OPERATOR;
+      } else if ((currentChar == '&' || currentChar == '|') && nextChar == currentChar) {
+        consume();
+        consume();
+        tokenKind = TokenBuffer.OPERATOR;
+      } else if (currentChar == '+' || currentChar == '-' || currentChar == '*' ||
+          currentChar == '/' || currentChar == '%' || currentChar == '=' ||
+          currentChar == ';') {
+        consume();
+        tokenKind = TokenBuffer.OPERATOR;
+      } else if (currentChar == '(' || currentChar == ')' || currentChar == '{' ||
+          currentChar == '}') {
+        consume();
+        tokenKind = TokenBuffer.SYMBOL;
+      } else {
+        throw new RuntimeException("Unexpected character: '" + currentChar + "' at position " + position);
+      }
+      tokenEnd = position;
+      return true;
+    }
+    return false;
+  }
+
+  public int kind() {
+    checkToken();
+    return tokenKind;
+  }
+
+  // Offsets in decoded chars, same coordinates as TokenBuffer.start()/end()
+  public long start() {
+    checkToken();
+    return tokenStart;
+  }
+
+  public long end() {
+    checkToken();
+    return tokenEnd;
+  }
+
+  // Symbols id of an IDENTIFIER token, Symbols.NONE otherwise
+  public int symbol() {
+    checkToken();
+    return tokenSymbol;
+  }
+
+  // Raw token chars; only valid until the cursor moves
+  public CharSequence rawText() {
+    checkToken();
+    return tokenText;
+  }
+
+  public String text() {
+    checkToken();
+    switch (tokenKind) {
+      case TokenBuffer.NUMBER:
+        return Lexers.decodeNumber(tokenText, 0, tokenText.length());
+      case TokenBuffer.STRING:
+        return Lexers.decodeString(tokenText, 1, tokenText.length() - 1);
+      default:
+        return tokenText.toString();
+    }
+  }
+
+  private void checkToken() {
+    if (tokenKind < 0) {
+      throw new IllegalStateException("No current token");
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (!lookaheadValid) {
+      lookaheadAvailable = scanToken();
+      lookaheadValid = true;
+    }
+    return lookaheadAvailable;
+  }
+
+  @Override
+  public String next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    lookaheadValid = false;
+    return TokenBuffer.kindName(tokenKind) + ":" + text();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (input instanceof Closeable) {
+      ((Closeable) input).close();
+    }
+  }
+
+  // Decodes a FileChannel through read-only mappings of bounded size; bytes of a
+  // char split across two regions are carried into the next mapping.
+  private static final class MappedChannelReadable implements Readable, Closeable {
+    private static final long REGION_SIZE = 16L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+    private final long size;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long offset = 0;
+    private boolean finished = false;
+
+    MappedChannelReadable(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.size = channel.size();
+    }
+
+    @Override
+    public int read(CharBuffer target) throws IOException {
+      int before = target.position();
+      while (target.hasRemaining() && !finished) {
+        if (region == null) {
+          if (offset >= size) {
+            if (decoder.flush(target).isOverflow()) {
+              break;
+            }
+            finished = true;
+            break;
+          }
+          regionStart = offset;
+          region = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(REGION_SIZE, size - offset));
+        }
+        boolean lastRegion = regionStart + region.limit() >= size;
+        CoderResult result = decoder.decode(region, target, lastRegion);
+        offset = regionStart + region.position();
+        if (result.isError()) {
+          result.throwException();
+        }
+        if (result.isOverflow()) {
+          break;
+        }
+        region = null;
+      }
+      int read = target.position() - before;
+      return read == 0 && finished ? -1 : read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,197 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Map keyed by Symbols ids with open addressing over primitive int keys, so a
+// lookup is an array probe with no boxing or string hashing. Reads are lock-free;
+// writers synchronize and publish a new table on resize. A removed key keeps its
+// slot with a null value until the next resize.
+public final class SymbolMap<V> {
+  private static final int EMPTY = 0;
+
+  private volatile Table<V> table;
+  private volatile int size;
+
+  public SymbolMap() {
+    this(16);
+  }
+
+  public SymbolMap(int expectedSize) {
+    int capacity = 16;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    this.table = new Table<>(capacity);
+  }
+
+  public V get(int symbol) {
+    Table<V> current = table;
+    int slot = current.find(symbol);
+    return slot < 0 ? null : current.values.get(slot);
+  }
+
+  public V get(String name) {
+    int symbol = Symbols.GLOBAL.lookup(name);
+    return symbol == Symbols.NONE ? null : get(symbol);
+  }
+
+  public boolean containsKey(int symbol) {
+    return get(symbol) != null;
+  }
+
+  public synchronized V put(int symbol, V value) {
+    if (value == null) {
+      return remove(symbol);
+    }
+    Table<V> current = table;
+    int slot = current.find(symbol);
+    if (slot >= 0) {
+      V previous = current.values.getAndSet(slot, value);
+      if (previous == null) {
+        size++;
+      }
+      return previous;
+    }
+    if ((current.used + 1) * 2 > current.capacity()) {
+      current = current.resize();
+      table = current;
+    }
+    current.insert(symbol, value);
+    size++;
+    return null;
+  }
+
+  public V put(String name, V value) {
+    return put(Symbols.GLOBAL.intern(name), value);
+  }
+
+  public synchronized V remove(int symbol) {
+    Table<V> current = table;
+    int slot = current.find(symbol);
+    if (slot < 0) {
+      return null;
+    }
+    V previous = current.values.getAndSet(slot, null);
+    if (previous != null) {
+      size--;
+    }
+    return previous;
+  }
+
+  public synchronized void clear() {
+    table = new Table<>(16);
+    size = 0;
+  }
+
+  public synchronized void putAll(SymbolMap<? extends V> other) {
+    other.forEach(this::put);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public synchronized SymbolMap<V> copy() {
+    SymbolMap<V> copy = new SymbolMap<>(size);
+    forEach(copy::put);
+    return copy;
+  }
+
+  public void forEach(Visitor<? super V> visitor) {
+    Table<V> current = table;
+    for (int i = 0; i < current.capacity(); i++) {
+      int key = current.keys.get(i);
+      if (key != EMPTY) {
+        V value = current.values.get(i);
+        if (value != null) {
+          visitor.visit(key - 1, value);
+        }
+      }
+    }
+  }
+
+  // Snapshot keyed by name, for callers that still expose String-keyed maps
+  public Map<String, V> toNameMap() {
+    Map<String, V> result = new HashMap<>();
+    forEach((symbol, value) -> result.put(Symbols.GLOBAL.name(symbol), value));
+    return result;
+  }
+
+  public interface Visitor<V> {
+    void visit(int symbol, V value);
+  }
+
+  // Keys are stored as symbol + 1 so that 0 can mark an empty slot
+  private static final class Table<V> {
+    final AtomicIntegerArray keys;
+    final AtomicReferenceArray<V> values;
+    int used;
+
+    Table(int capacity) {
+      this.keys = new AtomicIntegerArray(capacity);
+      this.values = new AtomicReferenceArray<>(capacity);
+    }
+
+    int capacity() {
+      return keys.length();
+    }
+
+    // Symbol ids are dense, so scramble them to spread neighbours across the table
+    static int slotOf(int symbol, int mask) {
+      int hash = symbol * 0x9E3779B9;
+      return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    int find(int symbol) {
+      int stored = symbol + 1;
+      int mask = keys.length() - 1;
+      for (int i = slotOf(symbol, mask);; i = (i + 1) & mask) {
+        int key = keys.get(i);
+        if (key == stored) {
+          return i;
+        }
+        if (key == EMPTY) {
+          return -1;
+        }
+      }
+    }
+
+    // Value is published before the key so a reader that sees the key sees the value
+    void insert(int symbol, V value) {
+      int mask = keys.length() - 1;
+      int i = slotOf(symbol, mask);
+      while (keys.get(i) != EMPTY) {
+        i = (i + 1) & mask;
+      }
+      values.set(i, value);
+      keys.set(i, symbol + 1);
+      used++;
+    }
+
+    Table<V> resize() {
+      int live = 0;
+      for (int i = 0; i < capacity(); i++) {
+        if (values.get(i) != null) {
+          live++;
+        }
+      }
+      int capacity = 16;
+      while (capacity < (live + 1) * 4) {
+        capacity <<= 1;
+      }
+      Table<V> resized = new Table<>(capacity);
+      for (int i = 0; i < capacity(); i++) {
+        V value = values.get(i);
+        if (value != null) {
+          resized.insert(keys.get(i) - 1, value);
+        }
+      }
+      return resized;
+    }
+  }
+}
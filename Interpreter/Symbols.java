@@ -0,0 +1,138 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Global identifier intern table: every identifier gets a dense int id the first
+// time it is lexed, and the lexer, parser and runtime key on that id afterwards.
+// Lookups are lock-free and can run on a source slice without building a String;
+// only inserting a new symbol takes the lock.
+public final class Symbols {
+  public static final Symbols GLOBAL = new Symbols();
+
+  public static final int NONE = -1;
+
+  private volatile AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(1024);
+  private volatile String[] names = new String[512];
+  private volatile int count = 0;
+
+  public int intern(String name) {
+    return intern(name, 0, name.length());
+  }
+
+  public int intern(CharSequence text, int start, int end) {
+    int hash = hash(text, start, end);
+    int symbol = find(slots, text, start, end, hash);
+    return symbol != NONE ? symbol : insert(text, start, end, hash);
+  }
+
+  // Id of an already interned name, or NONE
+  public int lookup(String name) {
+    return find(slots, name, 0, name.length(), hash(name, 0, name.length()));
+  }
+
+  public String name(int symbol) {
+    if (symbol < 0 || symbol >= count) {
+      throw new IllegalArgumentException("Unknown symbol: " + symbol);
+    }
+    return names[symbol];
+  }
+
+  public int size() {
+    return count;
+  }
+
+  // Same as String.hashCode() so interned names can reuse their cached hash
+  private static int hash(CharSequence text, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + text.charAt(i);
+    }
+    return hash;
+  }
+
+  private static int slotOf(int hash, int mask) {
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  private static int find(AtomicReferenceArray<Entry> table, CharSequence text, int start, int end, int hash) {
+    int mask = table.length() - 1;
+    for (int i = slotOf(hash, mask);; i = (i + 1) & mask) {
+      Entry entry = table.get(i);
+      if (entry == null) {
+        return NONE;
+      }
+      if (entry.hash == hash && matches(entry.name, text, start, end)) {
+        return entry.symbol;
+      }
+    }
+  }
+
+  private static boolean matches(String name, CharSequence text, int start, int end) {
+    int length = end - start;
+    if (name.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (name.charAt(i) != text.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private synchronized int insert(CharSequence text, int start, int end, int hash) {
+    // Another thread may have interned it, or a resize hid it from the lock-free probe
+    int symbol = find(slots, text, start, end, hash);
+    if (symbol != NONE) {
+      return symbol;
+    }
+    symbol = count;
+    String name = text.subSequence(start, end).toString();
+    String[] currentNames = names;
+    if (symbol == currentNames.length) {
+      currentNames = Arrays.copyOf(currentNames, symbol * 2);
+    }
+    currentNames[symbol] = name;
+    names = currentNames;
+    count = symbol + 1;
+
+    AtomicReferenceArray<Entry> table = slots;
+    if ((symbol + 1) * 2 > table.length()) {
+      table = rehash(table, table.length() * 2);
+    }
+    place(table, new Entry(name, hash, symbol));
+    slots = table;
+    return symbol;
+  }
+
+  private static AtomicReferenceArray<Entry> rehash(AtomicReferenceArray<Entry> table, int capacity) {
+    AtomicReferenceArray<Entry> resized = new AtomicReferenceArray<>(capacity);
+    for (int i = 0; i < table.length(); i++) {
+      Entry entry = table.get(i);
+      if (entry != null) {
+        place(resized, entry);
+      }
+    }
+    return resized;
+  }
+
+  private static void place(AtomicReferenceArray<Entry> table, Entry entry) {
+    int mask = table.length() - 1;
+    int i = slotOf(entry.hash, mask);
+    while (table.get(i) != null) {
+      i = (i + 1) & mask;
+    }
+    table.set(i, entry);
+  }
+
+  private static final class Entry {
+    final String name;
+    final int hash;
+    final int symbol;
+
+    Entry(String name, int hash, int symbol) {
+      this.name = name;
+      this.hash = hash;
+      this.symbol = symbol;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+import java.util.Random;
+
+// Programs and outcome helpers shared by the evaluator test classes
+final class TestPrograms {
+
+    private TestPrograms() {
+    }
+
+    // Unbound variables evaluate to null, so "a" exercises the non-int operand paths
+    static String randomExpression(Random random, int depth) {
+        String[] leaves = { "0", "1", "2", "2147483647", "a" };
+        String[] operators = { "+", "-", "*", "/", "%", "==", "!=", "<=", ">=", "&&", "||" };
+        int choice = depth == 0 ? 0 : random.nextInt(4);
+        switch (choice) {
+            case 0:
+                return leaves[random.nextInt(leaves.length)];
+            case 1:
+                return "-" + randomExpression(random, depth - 1);
+            default:
+                return "(" + randomExpression(random, depth - 1) + " " + operators[random.nextInt(operators.length)]
+                        + " " + randomExpression(random, depth - 1) + ")";
+        }
+    }
+
+    static Object outcome(Parser.Node node) {
+        return outcome(node, Frame.EMPTY);
+    }
+
+    static Object outcome(Parser.Node node, Frame frame) {
+        try {
+            return node.run(frame);
+        } catch (RuntimeException e) {
+            return failure(e);
+        }
+    }
+
+    // Messages of the interpreter's own errors are compared; JVM-raised ones (casts, / by zero)
+    // can lose theirs once hot, so only their type is
+    static Object failure(RuntimeException e) {
+        return e.getClass() == RuntimeException.class ? "RuntimeException: " + e.getMessage() : e.getClass();
+    }
+
+    static EmbeddedLoopNode loop(String condition, String body, int maxIterations) {
+        return new EmbeddedLoopNode(new PrattParser(new Lexers(condition).tokenizeToBuffer()).parse(),
+                new PrattParser(new Lexers(body).tokenizeToBuffer()).parse(), maxIterations, 1000);
+    }
+
+    static ClassNode scalingClass(String name, String methodName, int factor) {
+        ClassNode clazz = new ClassNode(name);
+        clazz.addMethod(new MethodNode(methodName, new String[] { "int" }, "int") {
+            @Override
+            public Object execute(ExecutionEnvironment env, Object... args) {
+                return (Integer) args[0] * factor;
+            }
+        });
+        return clazz;
+    }
+}
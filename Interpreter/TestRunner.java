@@ -9,7 +9,25 @@ import org.junit.platform.engine.discovery.DiscoverySelectors;
 public class TestRunner {
   public static void main(String[] args) {
     LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
-        .selectors(DiscoverySelectors.selectClass(lexersTest.class))
+        .selectors(
+            DiscoverySelectors.selectClass(lexersTest.class),
+            DiscoverySelectors.selectClass(IncrementalDocumentTest.class),
+            DiscoverySelectors.selectClass(PrattParserTest.class),
+            DiscoverySelectors.selectClass(ScriptCacheTest.class),
+            DiscoverySelectors.selectClass(FrameTest.class),
+            DiscoverySelectors.selectClass(AstSnapshotTest.class),
+            DiscoverySelectors.selectClass(AstOptimizerTest.class),
+            DiscoverySelectors.selectClass(RegisterVMTest.class),
+            DiscoverySelectors.selectClass(TypeFeedbackTest.class),
+            DiscoverySelectors.selectClass(JitCompilerTest.class),
+            DiscoverySelectors.selectClass(CallSiteTest.class),
+            DiscoverySelectors.selectClass(CallHandleTest.class),
+            DiscoverySelectors.selectClass(ProfilerTest.class),
+            DiscoverySelectors.selectClass(IncrementalCollectorTest.class),
+            DiscoverySelectors.selectClass(HandleTableTest.class),
+            DiscoverySelectors.selectClass(OffHeapAllocatorTest.class),
+            DiscoverySelectors.selectClass(ActivationArenaTest.class),
+            DiscoverySelectors.selectClass(AllocationQuotaTest.class))
         .build();
 
     Launcher launcher = LauncherFactory.create();
@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Typed token stream: kind + [start, end) offsets into the lexed source, kept in
+// parallel int arrays so lexing does not allocate a String per token. Identifiers
+// also carry their Symbols id, interned once at lex time.
+public final class TokenBuffer {
+  public static final int KEYWORD = 0;
+  public static final int IDENTIFIER = 1;
+  public static final int NUMBER = 2;
+  public static final int STRING = 3;
+  public static final int OPERATOR = 4;
+  public static final int SYMBOL = 5;
+
+  private static final String[] KIND_NAMES = {
+      "KEYWORD", "IDENTIFIER", "NUMBER", "STRING", "OPERATOR", "SYMBOL" };
+
+  private final String source;
+  private int[] kinds;
+  private int[] starts;
+  private int[] ends;
+  private int[] symbols;
+  private int size;
+
+  public TokenBuffer(String source, int initialCapacity) {
+    this.source = source;
+    int capacity = Math.max(initialCapacity, 16);
+    this.kinds = new int[capacity];
+    this.starts = new int[capacity];
+    this.ends = new int[capacity];
+    this.symbols = new int[capacity];
+  }
+
+  void add(int kind, int start, int end) {
+    add(kind, start, end, Symbols.NONE);
+  }
+
+  void add(int kind, int start, int end, int symbol) {
+    if (size == kinds.length) {
+      int capacity = size * 2;
+      kinds = Arrays.copyOf(kinds, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      symbols = Arrays.copyOf(symbols, capacity);
+    }
+    kinds[size] = kind;
+    starts[size] = start;
+    ends[size] = end;
+    symbols[size] = symbol;
+    size++;
+  }
+
+  // Tokens [fromToken, toToken) re-based onto source[sourceStart, sourceEnd)
+  TokenBuffer slice(int fromToken, int toToken, int sourceStart, int sourceEnd) {
+    TokenBuffer slice = new TokenBuffer(source.substring(sourceStart, sourceEnd), toToken - fromToken);
+    for (int i = fromToken; i < toToken; i++) {
+      slice.add(kinds[i], starts[i] - sourceStart, ends[i] - sourceStart, symbols[i]);
+    }
+    return slice;
+  }
+
+  // Joins buffers lexed from consecutive ranges of the same source
+  static TokenBuffer concat(String source, TokenBuffer[] parts) {
+    int total = 0;
+    for (TokenBuffer part : parts) {
+      total += part.size;
+    }
+    TokenBuffer joined = new TokenBuffer(source, total);
+    for (TokenBuffer part : parts) {
+      System.arraycopy(part.kinds, 0, joined.kinds, joined.size, part.size);
+      System.arraycopy(part.starts, 0, joined.starts, joined.size, part.size);
+      System.arraycopy(part.ends, 0, joined.ends, joined.size, part.size);
+      System.arraycopy(part.symbols, 0, joined.symbols, joined.size, part.size);
+      joined.size += part.size;
+    }
+    return joined;
+  }
+
+  public String getSource() {
+    return source;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int kind(int index) {
+    checkIndex(index);
+    return kinds[index];
+  }
+
+  public int start(int index) {
+    checkIndex(index);
+    return starts[index];
+  }
+
+  public int end(int index) {
+    checkIndex(index);
+    return ends[index];
+  }
+
+  // Symbols id of an IDENTIFIER token, Symbols.NONE for other kinds
+  public int symbol(int index) {
+    checkIndex(index);
+    return symbols[index];
+  }
+
+  // First source char of the token; operators and symbols are identified by it
+  public char firstChar(int index) {
+    checkIndex(index);
+    return source.charAt(starts[index]);
+  }
+
+  public int length(int index) {
+    checkIndex(index);
+    return ends[index] - starts[index];
+  }
+
+  // Compares the raw token slice without materializing it
+  public boolean textEquals(int index, String text) {
+    checkIndex(index);
+    int length = ends[index] - starts[index];
+    return length == text.length() && source.regionMatches(starts[index], text, 0, length);
+  }
+
+  // Decoded token text, same as the value part of the legacy "KIND:value" strings
+  public String text(int index) {
+    checkIndex(index);
+    switch (kinds[index]) {
+      case NUMBER:
+        return Lexers.decodeNumber(source, starts[index], ends[index]);
+      case STRING:
+        return Lexers.decodeString(source, starts[index] + 1, ends[index] - 1);
+      default:
+        return source.substring(starts[index], ends[index]);
+    }
+  }
+
+  public static String kindName(int kind) {
+    return KIND_NAMES[kind];
+  }
+
+  // Adapter to the legacy List<String> format ("KEYWORD:int", "NUMBER:42", ...)
+  public List<String> toStringList() {
+    List<String> tokens = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      tokens.add(KIND_NAMES[kinds[i]] + ":" + text(i));
+    }
+    return tokens;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Token index " + index + " out of range [0, " + size + ")");
+    }
+  }
+}
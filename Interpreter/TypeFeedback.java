@@ -0,0 +1,65 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Type feedback for the self-specializing Parser nodes. A node whose operand types are
+// only known at run time (variables, == over them) starts UNINITIALIZED, rewrites
+// itself to the kind of the first values it sees, and from then on runs a guarded
+// path for that kind. When a guard fails it deoptimizes to GENERIC for good. Nodes
+// are shared between threads and their state is written without locking: every
+// specialized path re-checks its guard, so a stale state only costs a deoptimization,
+// and the counters are approximate under such races.
+public final class TypeFeedback {
+  static final byte UNINITIALIZED = 0;
+  static final byte INT = 1;
+  static final byte BOOLEAN = 2;
+  static final byte GENERIC = 3;
+
+  private static final LongAdder rewrites = new LongAdder();
+  private static final LongAdder deoptimizations = new LongAdder();
+  private static volatile boolean enabled = true;
+
+  private TypeFeedback() {
+  }
+
+  static byte kindOf(Object value) {
+    if (value instanceof Integer) {
+      return INT;
+    }
+    return value instanceof Boolean ? BOOLEAN : GENERIC;
+  }
+
+  // New state of an UNINITIALIZED node that saw values of this kind
+  static byte specialize(byte kind) {
+    if (!enabled) {
+      return UNINITIALIZED;
+    }
+    rewrites.increment();
+    return kind;
+  }
+
+  static byte deoptimize() {
+    deoptimizations.increment();
+    return GENERIC;
+  }
+
+  // Disabling leaves nodes that have not specialized yet on the generic path
+  public static void setEnabled(boolean value) {
+    enabled = value;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static long getRewriteCount() {
+    return rewrites.sum();
+  }
+
+  public static long getDeoptimizationCount() {
+    return deoptimizations.sum();
+  }
+
+  public static void resetCounters() {
+    rewrites.reset();
+    deoptimizations.reset();
+  }
+}
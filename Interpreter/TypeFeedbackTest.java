@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Random;
+
+class TypeFeedbackTest {
+
+    @Test
+    void testPrimitiveEvaluationMatchesBoxed() {
+        Random random = new Random(23);
+        for (int i = 0; i < 20000; i++) {
+            String source = TestPrograms.randomExpression(random, 4);
+            Parser.Node node = new PrattParser(new Lexers(source).tokenizeToBuffer()).parse();
+            Object boxed = TestPrograms.outcome(node);
+            Object asInt;
+            try {
+                asInt = node.evaluateInt();
+            } catch (RuntimeException e) {
+                asInt = TestPrograms.failure(e);
+            }
+            Object asBoolean;
+            try {
+                asBoolean = node.evaluateBoolean();
+            } catch (RuntimeException e) {
+                asBoolean = TestPrograms.failure(e);
+            }
+            // Same outcome as casting the boxed result
+            Object expectedInt = boxed == null ? NullPointerException.class
+                    : boxed instanceof Boolean ? ClassCastException.class : boxed;
+            Object expectedBoolean = boxed == null ? NullPointerException.class
+                    : boxed instanceof Integer ? ClassCastException.class : boxed;
+            assertEquals(expectedInt, asInt, "source: " + source);
+            assertEquals(expectedBoolean, asBoolean, "source: " + source);
+        }
+    }
+
+    @Test
+    void testTypeFeedbackSpecializesAndDeoptimizes() {
+        TypeFeedback.resetCounters();
+        PrattParser parser = new PrattParser(new Lexers("a * b + 1; a == b").tokenizeToBuffer());
+        List<Parser.Node> statements = parser.parseStatements();
+        Parser.BinaryNode product = (Parser.BinaryNode) ((Parser.BinaryNode) statements.get(0)).getLeft();
+        Parser.BinaryNode equals = (Parser.BinaryNode) statements.get(1);
+        Frame frame = parser.getScope().newFrame();
+        frame.set(parser.getScope().slotOf("a"), 6000);
+        frame.set(parser.getScope().slotOf("b"), 7000);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(42_000_001, statements.get(0).run(frame));
+            assertEquals(false, statements.get(1).run(frame));
+        }
+        assertEquals(TypeFeedback.INT, product.getState());
+        assertEquals(TypeFeedback.INT, equals.getState());
+        // Four variable reads and two binary nodes specialize once; the outer + is statically typed
+        assertEquals(6, TypeFeedback.getRewriteCount());
+        assertEquals(0, TypeFeedback.getDeoptimizationCount());
+
+        // A failed guard gives the generic result, and the node stays generic
+        frame.set(parser.getScope().slotOf("a"), true);
+        assertEquals(false, statements.get(1).run(frame));
+        assertThrows(ClassCastException.class, () -> statements.get(0).run(frame));
+        assertEquals(TypeFeedback.GENERIC, product.getState());
+        assertEquals(TypeFeedback.GENERIC, equals.getState());
+        assertEquals(4, TypeFeedback.getDeoptimizationCount());
+        frame.set(parser.getScope().slotOf("a"), 7000);
+        assertEquals(true, statements.get(1).run(frame));
+    }
+
+    @Test
+    void testSpecializedTreesMatchFreshTrees() {
+        Random random = new Random(29);
+        Object[] values = { 0, 2, -7, 2147483647, true, false, null };
+        for (int i = 0; i < 5000; i++) {
+            String source = TestPrograms.randomExpression(random, 4);
+            PrattParser parser = new PrattParser(new Lexers(source).tokenizeToBuffer());
+            Parser.Node reused = parser.parse();
+            int slot = parser.getScope().slotOf("a");
+            for (int round = 0; round < 8; round++) {
+                Frame frame = parser.getScope().newFrame();
+                if (slot != Scope.UNRESOLVED) {
+                    // Mostly ints, so nodes specialize before they see another kind
+                    frame.set(slot, round < 5 ? values[random.nextInt(4)] : values[random.nextInt(values.length)]);
+                }
+                Parser.Node fresh = new PrattParser(new Lexers(source).tokenizeToBuffer()).parse();
+                assertEquals(TestPrograms.outcome(fresh, frame), TestPrograms.outcome(reused, frame), "source: " + source);
+            }
+        }
+    }
+}
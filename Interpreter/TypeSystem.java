@@ -1,12 +1,19 @@
 import java.util.*;
 import java.nio.ByteBuffer;
-import sun.misc.Unsafe;
 
 public class TypeSystem {
+  // Sizes of the built-in types in bytes, also behind heap object size estimates
+  static final int INT_SIZE = 4;
+  static final int BOOLEAN_SIZE = 1;
+  static final int REFERENCE_SIZE = 8; // Reference size on 64-bit JVM
+  // Header of every object on a 64-bit JVM; objects are padded to OBJECT_ALIGNMENT
+  static final int OBJECT_HEADER_SIZE = 16;
+  static final int OBJECT_ALIGNMENT = 8;
+
   private final Map<String, Type> typeTable;
   private final Map<String, DeadlineInfo> deadlineTable;
-  private final Unsafe unsafe;
   private final ByteBuffer offHeapBuffer;
+  private final OffHeapAllocator offHeap;
   private final int maxOffHeapSize;
   private final boolean allowDynamicClassLoading = false;
 
@@ -15,20 +22,15 @@ public class TypeSystem {
     this.deadlineTable = new HashMap<>();
     this.maxOffHeapSize = maxOffHeapSize;
     this.offHeapBuffer = ByteBuffer.allocateDirect(maxOffHeapSize);
-
-    try {
-      this.unsafe = getUnsafe();
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to initialize unsafe", e);
-    }
+    this.offHeap = new OffHeapAllocator(offHeapBuffer);
 
     // Initialize primitive types
     initializePrimitiveTypes();
   }
 
   private void initializePrimitiveTypes() {
-    typeTable.put("int", new PrimitiveType("int", 4));
-    typeTable.put("boolean", new PrimitiveType("boolean", 1));
+    typeTable.put("int", new PrimitiveType("int", INT_SIZE));
+    typeTable.put("boolean", new PrimitiveType("boolean", BOOLEAN_SIZE));
     typeTable.put("String", new ReferenceType("String"));
     typeTable.put("void", new VoidType());
   }
@@ -47,6 +49,34 @@ public class TypeSystem {
     deadlineTable.put(methodName, new DeadlineInfo(deadlineMs));
   }
 
+  // Shallow size estimate of a heap object: the header plus the value's own contents, with
+  // elements and handles counted as references and strings at a byte per character.
+  // Objects the value refers to are not included.
+  public static int shallowSize(Object value) {
+    long contents;
+    if (value instanceof byte[]) {
+      contents = ((byte[]) value).length;
+    } else if (value instanceof Object[]) {
+      contents = (long) ((Object[]) value).length * REFERENCE_SIZE;
+    } else if (value instanceof Integer) {
+      contents = INT_SIZE;
+    } else if (value instanceof Boolean) {
+      contents = BOOLEAN_SIZE;
+    } else if (value instanceof Double || value instanceof Long) {
+      contents = Long.BYTES;
+    } else if (value instanceof CharSequence) {
+      contents = ((CharSequence) value).length();
+    } else if (value instanceof Collection) {
+      contents = (long) ((Collection<?>) value).size() * REFERENCE_SIZE;
+    } else if (value instanceof Map) {
+      contents = (long) ((Map<?, ?>) value).size() * 2 * REFERENCE_SIZE;
+    } else {
+      contents = REFERENCE_SIZE;
+    }
+    long size = (OBJECT_HEADER_SIZE + contents + OBJECT_ALIGNMENT - 1) & -OBJECT_ALIGNMENT;
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
   public boolean checkTypeCompatibility(String sourceType, String targetType) {
     Type source = typeTable.get(sourceType);
     Type target = typeTable.get(targetType);
@@ -58,21 +88,20 @@ public class TypeSystem {
     return source.isAssignableTo(target);
   }
 
+  // Addresses are offsets into the off-heap buffer, shared with ExecutionEnvironment's object store
   public long allocateOffHeap(int size) {
     if (size > maxOffHeapSize) {
       throw new RuntimeException("Allocation size " + size + " exceeds maximum " + maxOffHeapSize);
     }
-
-    long address = unsafe.allocateMemory(size);
-    if (address == 0) {
-      throw new RuntimeException("Failed to allocate off-heap memory");
-    }
-
-    return address;
+    return offHeap.allocate(size);
   }
 
   public void freeOffHeap(long address) {
-    unsafe.freeMemory(address);
+    offHeap.free(toOffset(address));
+  }
+
+  public OffHeapAllocator getOffHeapAllocator() {
+    return offHeap;
   }
 
   public boolean isDeadlineExceeded(String methodName, long startTime) {
@@ -128,7 +157,7 @@ public class TypeSystem {
 
   public static class ReferenceType extends Type {
     public ReferenceType(String name) {
-      super(name, 8); // Reference size on 64-bit JVM
+      super(name, REFERENCE_SIZE);
     }
 
     @Override
@@ -175,17 +204,16 @@ public class TypeSystem {
     }
   }
 
-  private static Unsafe getUnsafe() throws Exception {
-    java.lang.reflect.Field f = Unsafe.class.getDeclaredField("theUnsafe");
-    f.setAccessible(true);
-    return (Unsafe) f.get(null);
+  // Memory safety checks: the range must lie within one live off-heap allocation
+  public void verifyMemoryAccess(long address, int size) {
+    offHeap.checkAccess(toOffset(address), 0, size);
   }
 
-  // Memory safety checks
-  public void verifyMemoryAccess(long address, int size) {
-    if (address < 0 || address + size > maxOffHeapSize) {
+  private int toOffset(long address) {
+    if (address < 0 || address >= maxOffHeapSize) {
       throw new RuntimeException("Memory access out of bounds");
     }
+    return (int) address;
   }
 
   public void verifyTypeSafety(Object value, String expectedType) {
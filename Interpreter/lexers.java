@@ -3,12 +3,18 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Lexers {
   private final String source;
+  private final int limit;
   private int position = 0;
   private char currentChar;
 
+  // Below this size parallel lexing is not worth the pre-scan and task overhead
+  private static final int MIN_PARALLEL_CHUNK = 64 * 1024;
+
   private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
       "abstract", "assert", "boolean", "break", "byte", "case", "catch",
       "char", "class", "const", "continue", "default", "do", "double",
@@ -21,13 +27,97 @@ public class Lexers {
       "module", "open", "requires", "exports", "opens", "uses", "provides",
       "var", "record", "yield", "sealed", "permits", "non-sealed"));
 
+  // ASCII character classes, precomputed from the same Character predicates the
+  // lexer used per char; non-ASCII chars still go through the Unicode methods.
+  private static final int IDENTIFIER_START = 1;
+  private static final int IDENTIFIER_PART = 2;
+  private static final int DIGIT = 4;
+  private static final int WHITESPACE = 8;
+  private static final byte[] CHAR_CLASS = new byte[128];
+
+  static {
+    // '\0' is the end marker, so it never continues an identifier
+    for (char c = 1; c < 128; c++) {
+      int flags = 0;
+      if (Character.isUnicodeIdentifierStart(c) || c == '_')
+        flags |= IDENTIFIER_START;
+      if (Character.isUnicodeIdentifierPart(c))
+        flags |= IDENTIFIER_PART;
+      if (Character.isDigit(c))
+        flags |= DIGIT;
+      if (Character.isWhitespace(c))
+        flags |= WHITESPACE;
+      CHAR_CLASS[c] = (byte) flags;
+    }
+  }
+
+  static boolean isIdentifierStart(char c) {
+    return c < 128 ? (CHAR_CLASS[c] & IDENTIFIER_START) != 0 : Character.isUnicodeIdentifierStart(c);
+  }
+
+  static boolean isIdentifierPart(char c) {
+    return c < 128 ? (CHAR_CLASS[c] & IDENTIFIER_PART) != 0 : Character.isUnicodeIdentifierPart(c);
+  }
+
+  static boolean isDigit(char c) {
+    return c < 128 ? (CHAR_CLASS[c] & DIGIT) != 0 : Character.isDigit(c);
+  }
+
+  static boolean isWhitespace(char c) {
+    return c < 128 ? (CHAR_CLASS[c] & WHITESPACE) != 0 : Character.isWhitespace(c);
+  }
+
+  // Perfect hash over KEYWORDS keyed on length and the first two and last two chars.
+  // The multiplier is searched once at class load so the table stays collision-free
+  // if the keyword list changes.
+  private static final int KEYWORD_HASH_BITS = 9;
+  private static final String[] KEYWORD_TABLE = new String[1 << KEYWORD_HASH_BITS];
+  private static final int KEYWORD_HASH_MULTIPLIER = findKeywordHashMultiplier();
+  private static final int MAX_KEYWORD_LENGTH = KEYWORDS.stream().mapToInt(String::length).max().getAsInt();
+
+  private static int keywordKey(CharSequence text, int start, int length) {
+    return (((length * 31 + text.charAt(start)) * 31 + text.charAt(start + 1)) * 31 +
+        text.charAt(start + length - 2)) * 31 + text.charAt(start + length - 1);
+  }
+
+  private static int findKeywordHashMultiplier() {
+    for (int multiplier = 1; multiplier > 0; multiplier += 2) {
+      Arrays.fill(KEYWORD_TABLE, null);
+      boolean collisionFree = true;
+      for (String keyword : KEYWORDS) {
+        int slot = (keywordKey(keyword, 0, keyword.length()) * multiplier) >>> (32 - KEYWORD_HASH_BITS);
+        if (KEYWORD_TABLE[slot] != null) {
+          collisionFree = false;
+          break;
+        }
+        KEYWORD_TABLE[slot] = keyword;
+      }
+      if (collisionFree) {
+        return multiplier;
+      }
+    }
+    throw new IllegalStateException("No perfect hash for keyword table");
+  }
+
   public Lexers(String source) {
     this.source = preprocessUnicodeEscapes(source);
+    this.limit = this.source.length();
     this.currentChar = this.source.isEmpty() ? '\0' : this.source.charAt(position);
   }
 
+  // Lexes [from, to) of an already unescaped source, keeping offsets global
+  private Lexers(String decodedSource, int from, int to) {
+    this.source = decodedSource;
+    this.limit = to;
+    this.position = from;
+    this.currentChar = from < to ? decodedSource.charAt(from) : '\0';
+  }
+
   private String preprocessUnicodeEscapes(String input) {
-    StringBuilder sb = new StringBuilder();
+    if (input.indexOf("\\u") < 0) {
+      return input;
+    }
+    StringBuilder sb = new StringBuilder(input.length());
     int i = 0;
     while (i < input.length()) {
       char c = input.charAt(i);
@@ -49,18 +139,18 @@ public class Lexers {
 
   private void advance() {
     position++;
-    currentChar = position < source.length() ? source.charAt(position) : '\0';
+    currentChar = position < limit ? source.charAt(position) : '\0';
   }
 
   private char peekNext(int offset) {
     int pos = position + offset;
-    return pos < source.length() ? source.charAt(pos) : '\0';
+    return pos < limit ? source.charAt(pos) : '\0';
   }
 
   // white space or commments ka handling........
   private void skipWhitespaceAndComments() {
     while (currentChar != '\0') {
-      if (Character.isWhitespace(currentChar)) {
+      if (isWhitespace(currentChar)) {
         advance();
       } else if (currentChar == '/') {
         if (peekNext(1) == '/') {
@@ -86,33 +176,31 @@ public class Lexers {
     }
   }
 
-  private String readIdentifier() {
-    StringBuilder id = new StringBuilder();
-    while (currentChar != '\0' && (Character.isUnicodeIdentifierPart(currentChar) ||
-        (id.length() == 0 && Character.isUnicodeIdentifierStart(currentChar)))) {
-      id.append(currentChar);
-      advance();
+  // Scans the source directly; the table handles ASCII, anything else falls back
+  private void readIdentifier() {
+    int end = position;
+    while (end < limit) {
+      char c = source.charAt(end);
+      if (!isIdentifierPart(c))
+        break;
+      end++;
     }
-    return id.toString();
+    position = end;
+    currentChar = position < limit ? source.charAt(position) : '\0';
   }
 
   // hex ka handling yaha pe.........
-  private String readNumber() {
-    StringBuilder num = new StringBuilder();
+  private void readNumber() {
     boolean isHex = false, isBinary = false;
 
     if (currentChar == '0') {
       if (peekNext(1) == 'x' || peekNext(1) == 'X') {
         isHex = true;
-        num.append(currentChar);
         advance();
-        num.append(currentChar);
         advance();
       } else if (peekNext(1) == 'b' || peekNext(1) == 'B') {
         isBinary = true;
-        num.append(currentChar);
         advance();
-        num.append(currentChar);
         advance();
       }
     }
@@ -122,59 +210,105 @@ public class Lexers {
         advance();
         continue;
       }
-      if (isHex && !Character.isDigit(currentChar) &&
+      if (isHex && !isDigit(currentChar) &&
           !(currentChar >= 'a' && currentChar <= 'f') &&
           !(currentChar >= 'A' && currentChar <= 'F'))
         break;
       if (isBinary && currentChar != '0' && currentChar != '1')
         break;
-      if (!isHex && !isBinary && !Character.isDigit(currentChar))
+      if (!isHex && !isBinary && !isDigit(currentChar))
         break;
-      num.append(currentChar);
       advance();
     }
-    return num.toString().replace("_", "");
   }
 
   // yeh space , new , quations within string ka scene...........
-  private String readString() {
+  // Only scans; the escapes are decoded lazily by decodeString().
+  private void readString() {
     char quote = currentChar;
     advance();
-    StringBuilder str = new StringBuilder();
     while (currentChar != '\0' && currentChar != quote) {
       if (currentChar == '\\') {
         advance();
-        switch (currentChar) {
+      }
+      advance();
+    }
+    if (currentChar == quote)
+      advance();
+    else
+      throw new RuntimeException("Unterminated string at position " + position);
+  }
+
+  private boolean isKeyword(int start, int end) {
+    return isKeyword(source, start, end);
+  }
+
+  static boolean isKeyword(CharSequence text, int start, int end) {
+    int length = end - start;
+    if (length < 2 || length > MAX_KEYWORD_LENGTH) {
+      return false;
+    }
+    String keyword = KEYWORD_TABLE[(keywordKey(text, start, length) * KEYWORD_HASH_MULTIPLIER) >>> (32 - KEYWORD_HASH_BITS)];
+    if (keyword == null || keyword.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (text.charAt(start + i) != keyword.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static String decodeNumber(CharSequence source, int start, int end) {
+    StringBuilder num = new StringBuilder(end - start);
+    for (int i = start; i < end; i++) {
+      char c = source.charAt(i);
+      if (c != '_') {
+        num.append(c);
+      }
+    }
+    return num.toString();
+  }
+
+  static String decodeString(CharSequence source, int start, int end) {
+    StringBuilder str = new StringBuilder(end - start);
+    for (int i = start; i < end; i++) {
+      char c = source.charAt(i);
+      if (c == '\\' && i + 1 < end) {
+        c = source.charAt(++i);
+        switch (c) {
           case 'n':
             str.append('\n');
             break;
           case 't':
             str.append('\t');
             break;
-          case '"':
-            str.append('\"');
-            break;
           default:
-            str.append(currentChar);
+            str.append(c);
         }
       } else {
-        str.append(currentChar);
+        str.append(c);
       }
-      advance();
     }
-    if (currentChar == quote)
-      advance();
-    else
-      throw new RuntimeException("Unterminated string at position " + position);
     return str.toString();
   }
 
   public List<String> tokenize() {
-    List<String> tokens = new ArrayList<>();
-    currentChar = source.isEmpty() ? '\0' : source.charAt(position);
+    return tokenizeToBuffer().toStringList();
+  }
+
+  public TokenBuffer tokenizeToBuffer() {
+    TokenBuffer tokens = new TokenBuffer(source, source.length() / 4);
+    lexInto(tokens);
+    return tokens;
+  }
+
+  private void lexInto(TokenBuffer tokens) {
+    currentChar = position < limit ? source.charAt(position) : '\0';
 
     while (currentChar != '\0') {
-      if (Character.isWhitespace(currentChar)) {
+      if (isWhitespace(currentChar)) {
         skipWhitespaceAndComments();
         continue;
       }
@@ -189,53 +323,165 @@ public class Lexers {
         }
       }
 
-      if (Character.isUnicodeIdentifierStart(currentChar) || currentChar == '_') {
-        String identifier = readIdentifier();
-        tokens.add(KEYWORDS.contains(identifier) ? "KEYWORD:" + identifier : "IDENTIFIER:" + identifier);
-      } else if (Character.isDigit(currentChar)) {
-        tokens.add("NUMBER:" + readNumber());
+      int start = position;
+      if (isIdentifierStart(currentChar)) {
+        readIdentifier();
+        if (isKeyword(start, position)) {
+          tokens.add(TokenBuffer.KEYWORD, start, position);
+        } else {
+          tokens.add(TokenBuffer.IDENTIFIER, start, position, Symbols.GLOBAL.intern(source, start, position));
+        }
+      } else if (isDigit(currentChar)) {
+        readNumber();
+        tokens.add(TokenBuffer.NUMBER, start, position);
       } else if (currentChar == '"' || currentChar == '\'') {
-        tokens.add("STRING:" + readString());
-      } else if (currentChar == '=' && peekNext(1) == '=') {
-        advance();
-        advance();
-        tokens.add("OPERATOR:==");
-      } else if (currentChar == '!' && peekNext(1) == '=') {
-        advance();
+        readString();
+        tokens.add(TokenBuffer.STRING, start, position);
+      } else if ((currentChar == '=' || currentChar == '!' || currentChar == '>' || currentChar == '<') &&
+          peekNext(1) == '=') {
         advance();
-        tokens.add("OPERATOR:!=");
-      } else if (currentChar == '>' && peekNext(1) == '=') {
         advance();
+        tokens.add(TokenBuffer.OPERATOR, start, position);
+      } else if ((currentChar == '&' || currentChar == '|') && peekNext(1) == currentChar) {
         advance();
-        tokens.add("OPERATOR:>=");
-      } else if (currentChar == '<' && peekNext(1) == '=') {
         advance();
-        advance();
-        tokens.add("OPERATOR:<=");
-      } else if (currentChar == '&' && peekNext(1) == '&') {
-        advance();
-        advance();
-        tokens.add("OPERATOR:&&");
-      } else if (currentChar == '|' && peekNext(1) == '|') {
-        advance();
-        advance();
-        tokens.add("OPERATOR:||");
+        tokens.add(TokenBuffer.OPERATOR, start, position);
       } else if (currentChar == '+' || currentChar == '-' || currentChar == '*' ||
           currentChar == '/' || currentChar == '%' || currentChar == '=' ||
           currentChar == ';') {
-        tokens.add("OPERATOR:" + currentChar);
         advance();
+        tokens.add(TokenBuffer.OPERATOR, start, position);
       } else if (currentChar == '(' || currentChar == ')' || currentChar == '{' ||
           currentChar == '}') {
-        tokens.add("SYMBOL:" + currentChar);
         advance();
-      } else if (currentChar == '\0') {
-        break;
+        tokens.add(TokenBuffer.SYMBOL, start, position);
       } else {
         throw new RuntimeException("Unexpected character: '" + currentChar + "' at position " + position);
       }
     }
-    return tokens;
+  }
+
+  public List<String> tokenizeParallel() {
+    return tokenizeParallelToBuffer(ForkJoinPool.commonPool()).toStringList();
+  }
+
+  public TokenBuffer tokenizeParallelToBuffer(ForkJoinPool pool) {
+    int chunkSize = Math.max(MIN_PARALLEL_CHUNK, source.length() / (pool.getParallelism() * 4));
+    return tokenizeParallelToBuffer(pool, chunkSize);
+  }
+
+  // Same tokens (and same first error) as tokenizeToBuffer(), lexed in chunks split
+  // at whitespace that a pre-scan proved to be outside strings and comments
+  TokenBuffer tokenizeParallelToBuffer(ForkJoinPool pool, int chunkSize) {
+    int[] bounds = findSplitPoints(source, position, chunkSize);
+    if (bounds.length <= 2) {
+      return tokenizeToBuffer();
+    }
+    TokenBuffer[] parts = new TokenBuffer[bounds.length - 1];
+    RuntimeException[] errors = new RuntimeException[bounds.length - 1];
+    pool.invoke(new LexChunks(source, bounds, 0, parts.length, parts, errors));
+    for (int i = 0; i < parts.length; i++) {
+      if (errors[i] != null) {
+        throw errors[i];
+      }
+    }
+    position = limit;
+    currentChar = '\0';
+    return TokenBuffer.concat(source, parts);
+  }
+
+  // Chunk bounds {from, p1, ..., end}. A split point is a whitespace char outside
+  // any string or comment, so no token or comment can straddle it. Lexing stops at
+  // a '\0' unless it is escaped inside a string, so nothing after that is split.
+  static int[] findSplitPoints(String source, int from, int chunkSize) {
+    int end = source.length();
+    List<Integer> points = new ArrayList<>();
+    points.add(from);
+    int nextTarget = from + chunkSize;
+    char quote = 0;
+    boolean lineComment = false;
+    boolean blockComment = false;
+    for (int i = from; i < end; i++) {
+      char c = source.charAt(i);
+      if (c == '\0') {
+        end = i;
+        break;
+      }
+      if (lineComment) {
+        if (c != '\n')
+          continue;
+        lineComment = false;
+      }
+      if (blockComment) {
+        if (c == '*' && i + 1 < end && source.charAt(i + 1) == '/') {
+          blockComment = false;
+          i++;
+        }
+      } else if (quote != 0) {
+        if (c == '\\') {
+          i++;
+        } else if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '/' && i + 1 < end && source.charAt(i + 1) == '/') {
+        lineComment = true;
+        i++;
+      } else if (c == '/' && i + 1 < end && source.charAt(i + 1) == '*') {
+        blockComment = true;
+        i++;
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (i >= nextTarget && isWhitespace(c) && !isIdentifierPart(c)) {
+        points.add(i);
+        nextTarget = i + chunkSize;
+      }
+    }
+    points.add(end);
+    int[] bounds = new int[points.size()];
+    for (int i = 0; i < bounds.length; i++) {
+      bounds[i] = points.get(i);
+    }
+    return bounds;
+  }
+
+  private static final class LexChunks extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final String source;
+    private final int[] bounds;
+    private final int fromChunk;
+    private final int toChunk;
+    private final TokenBuffer[] parts;
+    private final RuntimeException[] errors;
+
+    LexChunks(String source, int[] bounds, int fromChunk, int toChunk, TokenBuffer[] parts,
+        RuntimeException[] errors) {
+      this.source = source;
+      this.bounds = bounds;
+      this.fromChunk = fromChunk;
+      this.toChunk = toChunk;
+      this.parts = parts;
+      this.errors = errors;
+    }
+
+    @Override
+    protected void compute() {
+      if (toChunk - fromChunk > 1) {
+        int mid = (fromChunk + toChunk) >>> 1;
+        invokeAll(new LexChunks(source, bounds, fromChunk, mid, parts, errors),
+            new LexChunks(source, bounds, mid, toChunk, parts, errors));
+        return;
+      }
+      int from = bounds[fromChunk];
+      int to = bounds[fromChunk + 1];
+      TokenBuffer tokens = new TokenBuffer(source, (to - from) / 4);
+      try {
+        new Lexers(source, from, to).lexInto(tokens);
+      } catch (RuntimeException e) {
+        errors[fromChunk] = e;
+      }
+      parts[fromChunk] = tokens;
+    }
   }
 
   // iska main method.....
@@ -2,8 +2,16 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals; 
 import static org.junit.jupiter.api.Assertions.assertThrows; 
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 class lexersTest {
 
@@ -44,6 +52,15 @@ class lexersTest {
         assertEquals(expected, lexer.tokenize());
     }
 
+    @Test
+    void testKeywordNearMisses() {
+        Lexers lexer = new Lexers("exports extends export extend synchronized synchronizedX do d0 caf\u00e9");
+        List<String> expected = Arrays.asList("KEYWORD:exports", "KEYWORD:extends", "IDENTIFIER:export",
+                "IDENTIFIER:extend", "KEYWORD:synchronized", "IDENTIFIER:synchronizedX", "KEYWORD:do",
+                "IDENTIFIER:d0", "IDENTIFIER:caf\u00e9");
+        assertEquals(expected, lexer.tokenize());
+    }
+
     @Test
     void testIdentifiers() {
         Lexers lexer = new Lexers("variableName myVar _anotherVar var123");
@@ -52,6 +69,17 @@ class lexersTest {
         assertEquals(expected, lexer.tokenize());
     }
 
+    @Test
+    void testIdentifiersAreInterned() {
+        TokenBuffer first = new Lexers("sensor + int").tokenizeToBuffer();
+        TokenBuffer second = new Lexers("(sensor)").tokenizeToBuffer();
+        int symbol = first.symbol(0);
+        assertEquals(symbol, second.symbol(1));
+        assertEquals("sensor", Symbols.GLOBAL.name(symbol));
+        assertEquals(Symbols.NONE, first.symbol(1));
+        assertEquals(Symbols.NONE, first.symbol(2));
+    }
+
     @Test
     void testDecimalNumbers() {
         Lexers lexer = new Lexers("123 4567 0 987654321");
@@ -173,4 +201,101 @@ class lexersTest {
         List<String> expected = Arrays.asList("KEYWORD:int", "IDENTIFIER:x", "OPERATOR:=", "NUMBER:10", "OPERATOR:;");
         assertEquals(expected, lexer.tokenize());
     }
+
+    @Test
+    void testTypedTokenOffsets() {
+        TokenBuffer tokens = new Lexers("int x = 0x1_F;").tokenizeToBuffer();
+        assertEquals(5, tokens.size());
+        assertEquals(TokenBuffer.KEYWORD, tokens.kind(0));
+        assertEquals(TokenBuffer.IDENTIFIER, tokens.kind(1));
+        assertEquals(4, tokens.start(1));
+        assertEquals(5, tokens.end(1));
+        assertEquals(TokenBuffer.NUMBER, tokens.kind(3));
+        assertEquals("0x1F", tokens.text(3));
+        assertEquals(TokenBuffer.OPERATOR, tokens.kind(4));
+        assertEquals(';', tokens.firstChar(4));
+    }
+
+    @Test
+    void testTypedTokensMatchStringAdapter() {
+        String source = "int x = 0b1010 + 0x1AF; String msg = \"Hello\\nWorld\"; // comment\n if(x >= 10){}";
+        assertEquals(new Lexers(source).tokenize(), new Lexers(source).tokenizeToBuffer().toStringList());
+    }
+
+    @Test
+    void testStreamingLexerMatchesTokenize() {
+        String source = "int \\u0078 = 0b1010 + 0x1_AF; String msg = \"Hello\\nWorld\"; /* c */ if(x >= 10){}";
+        List<String> streamed = new ArrayList<>();
+        // Tiny window so tokens and escapes straddle refills
+        StreamingLexer lexer = new StreamingLexer(new StringReader(source), 8);
+        lexer.forEachRemaining(streamed::add);
+        assertEquals(new Lexers(source).tokenize(), streamed);
+    }
+
+    @Test
+    void testStreamingLexerOverMappedFile() throws IOException {
+        String source = "int caf\u00e9 = 42; // \u00fc\n String s = \"\u00e9t\u00e9\";";
+        Path file = Files.createTempFile("lexer", ".java");
+        try {
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            List<String> streamed = new ArrayList<>();
+            try (StreamingLexer lexer = StreamingLexer.open(file)) {
+                lexer.forEachRemaining(streamed::add);
+            }
+            assertEquals(new Lexers(source).tokenize(), streamed);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testParallelLexingMatchesSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            String[] sources = {
+                    "", "   \t\n  \r  ", "// This is a comment\n", "/* This is a \n multi-line \n comment */",
+                    "   // comment 1\n  /* comment 2 */  \t  // comment 3\n", "int class public void",
+                    "variableName myVar _anotherVar var123", "123 4567 0 987654321", "0x1A 0XFF 0x0 0xABCDEF",
+                    "0b1010 0B1111 0b0 0b100101", "1_000_000 0x1_A_F 0b101_010",
+                    "\"Hello\" \"World\\n\" \"\\\"Quoted\\\"\" ''", "\"Unterminated",
+                    "== != >= <= && || + - * / %", "( )", "\\u0041\\u0042\\u0043", "@",
+                    "int x = 0b1010 + 0x1AF; String msg = \"Hello\\nWorld\"; // comment\n if(x >= 10){}",
+                    "\"\\u0048\\u0065\\u006C\\u006C\\u006F\"", "0x\\u0031\\u0041",
+                    "int \\u0078 = 10; // \\u0048\\u0065\\u006C\\u006C\\u006F" };
+            for (String source : sources) {
+                assertParallelMatchesSequential(pool, source);
+            }
+
+            String[] fragments = { "a", "1", " ", "\n", "\t", "/", "*", "\"", "'", "\\", "+", "=", "&", "|",
+                    ";", "(", "}", "int", "\u00e9", "\u2003", "@", "0x", "/*", "*/", "//", "\u0000" };
+            Random random = new Random(7);
+            for (int i = 0; i < 5000; i++) {
+                StringBuilder source = new StringBuilder();
+                int length = random.nextInt(40);
+                for (int j = 0; j < length; j++) {
+                    source.append(fragments[random.nextInt(fragments.length)]);
+                }
+                assertParallelMatchesSequential(pool, source.toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertParallelMatchesSequential(ForkJoinPool pool, String source) {
+        Object sequential;
+        try {
+            sequential = new Lexers(source).tokenize();
+        } catch (RuntimeException e) {
+            sequential = e.getMessage();
+        }
+        Object parallel;
+        try {
+            // Chunk size 1 splits at every safe point
+            parallel = new Lexers(source).tokenizeParallelToBuffer(pool, 1).toStringList();
+        } catch (RuntimeException e) {
+            parallel = e.getMessage();
+        }
+        assertEquals(sequential, parallel, "source: " + source);
+    }
 }
@@ -1,18 +1,113 @@
 import java.util.List;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Objects;
 
 public class Parser {
   private final List<String> tokens;
   private int current = 0;
-  private final Map<String, Object> symbolTable = new HashMap<>();
-  private final List<Object> executionHistory = new ArrayList<>();
+  private final Scope scope;
+  private final List<Frame> executionHistory = new ArrayList<>();
   private int checkpointCounter = 0;
 
   // AST Node classes
-  abstract static class Node {
-    abstract Object evaluate();
+  public abstract static class Node {
+    // Variables are read from the frame by the slot the parser's Scope assigned them
+    abstract Object evaluate(Frame frame);
+
+    // Evaluation with no variables bound
+    final Object evaluate() {
+      return evaluate(Frame.EMPTY);
+    }
+
+    // Primitive entry points. The defaults cast the result of evaluate() the way the
+    // arithmetic does; number, variable, arithmetic and comparison nodes override them
+    // so that only the value handed back to the caller is ever boxed.
+    public int evaluateInt(Frame frame) {
+      return (Integer) evaluate(frame);
+    }
+
+    // Language ints are 32-bit, so this only widens evaluateInt()
+    public long evaluateLong(Frame frame) {
+      return evaluateInt(frame);
+    }
+
+    public boolean evaluateBoolean(Frame frame) {
+      return (Boolean) evaluate(frame);
+    }
+
+    public final int evaluateInt() {
+      return evaluateInt(Frame.EMPTY);
+    }
+
+    public final long evaluateLong() {
+      return evaluateLong(Frame.EMPTY);
+    }
+
+    public final boolean evaluateBoolean() {
+      return evaluateBoolean(Frame.EMPTY);
+    }
+
+    // True when evaluate() can only return an Integer or throw, so evaluateInt() never fails its cast
+    boolean isIntTyped() {
+      return false;
+    }
+
+    boolean isBooleanTyped() {
+      return false;
+    }
+
+    // Speculative entry points for specialized parents: the value if it has the expected
+    // type, otherwise an UnexpectedResultException carrying it, so the parent can
+    // deoptimize and carry on generically without evaluating this node again
+    int speculateInt(Frame frame) throws UnexpectedResultException {
+      if (isIntTyped()) {
+        return evaluateInt(frame);
+      }
+      Object value = evaluate(frame);
+      if (value instanceof Integer) {
+        return (Integer) value;
+      }
+      throw new UnexpectedResultException(value);
+    }
+
+    boolean speculateBoolean(Frame frame) throws UnexpectedResultException {
+      if (isBooleanTyped()) {
+        return evaluateBoolean(frame);
+      }
+      Object value = evaluate(frame);
+      if (value instanceof Boolean) {
+        return (Boolean) value;
+      }
+      throw new UnexpectedResultException(value);
+    }
+
+    // Tree-walking entry points for callers outside this package
+    public final Object run(Frame frame) {
+      if (Profiler.isEnabled()) {
+        return Profiler.evaluate(this, null, frame);
+      }
+      return evaluate(frame);
+    }
+
+    public final Object run() {
+      return evaluate(Frame.EMPTY);
+    }
+  }
+
+  // Thrown on a failed speculation; carries the already computed value, so it has no stack trace
+  static final class UnexpectedResultException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Object result;
+
+    UnexpectedResultException(Object result) {
+      super(null, null, false, false);
+      this.result = result;
+    }
+
+    Object getResult() {
+      return result;
+    }
   }
 
   static class DeadlineNode extends Node {
@@ -24,52 +119,453 @@ public class Parser {
       this.body = body;
     }
 
+    int getDeadlineMs() {
+      return deadlineMs;
+    }
+
+    Node getBody() {
+      return body;
+    }
+
     @Override
-    Object evaluate() {
+    Object evaluate(Frame frame) {
       long startTime = System.currentTimeMillis();
-      Object result = body.evaluate();
+      Object result = body.evaluate(frame);
+      checkDeadline(startTime);
+      return result;
+    }
+
+    @Override
+    public int evaluateInt(Frame frame) {
+      if (!body.isIntTyped()) {
+        return super.evaluateInt(frame);
+      }
+      long startTime = System.currentTimeMillis();
+      int result = body.evaluateInt(frame);
+      checkDeadline(startTime);
+      return result;
+    }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) {
+      if (!body.isBooleanTyped()) {
+        return super.evaluateBoolean(frame);
+      }
+      long startTime = System.currentTimeMillis();
+      boolean result = body.evaluateBoolean(frame);
+      checkDeadline(startTime);
+      return result;
+    }
+
+    @Override
+    boolean isIntTyped() {
+      return body.isIntTyped();
+    }
+
+    @Override
+    boolean isBooleanTyped() {
+      return body.isBooleanTyped();
+    }
+
+    private void checkDeadline(long startTime) {
       long endTime = System.currentTimeMillis();
 
       if (endTime - startTime > deadlineMs) {
         throw new RuntimeException("Deadline exceeded: " + deadlineMs + "ms");
       }
-      return result;
     }
   }
 
   static class BinaryNode extends Node {
+    private static final int UNKNOWN = -1;
+    private static final int ADD = 0;
+    private static final int SUB = 1;
+    private static final int MUL = 2;
+    private static final int DIV = 3;
+    private static final int MOD = 4;
+    private static final int LE = 5;
+    private static final int GE = 6;
+    private static final int EQ = 7;
+    private static final int NE = 8;
+
     private final Node left;
     private final String operator;
     private final Node right;
+    // Resolved once here instead of a string switch per evaluation
+    private final int op;
+    private final boolean leftIntTyped;
+    private final boolean rightIntTyped;
+    private final boolean booleanOperands;
+    // TypeFeedback state, used when the operand types are only known at run time
+    private byte state = TypeFeedback.UNINITIALIZED;
 
     BinaryNode(Node left, String operator, Node right) {
       this.left = left;
       this.operator = operator;
       this.right = right;
+      this.op = opcode(operator);
+      this.leftIntTyped = left.isIntTyped();
+      this.rightIntTyped = right.isIntTyped();
+      this.booleanOperands = left.isBooleanTyped() && right.isBooleanTyped();
     }
 
-    @Override
-    Object evaluate() {
-      Object leftVal = left.evaluate();
-      Object rightVal = right.evaluate();
+    byte getState() {
+      return state;
+    }
 
+    private static int opcode(String operator) {
       switch (operator) {
         case "+":
-          return (Integer) leftVal + (Integer) rightVal;
+          return ADD;
         case "-":
-          return (Integer) leftVal - (Integer) rightVal;
+          return SUB;
         case "*":
-          return (Integer) leftVal * (Integer) rightVal;
+          return MUL;
         case "/":
-          return (Integer) leftVal / (Integer) rightVal;
+          return DIV;
+        case "%":
+          return MOD;
+        case "<=":
+          return LE;
+        case ">=":
+          return GE;
+        case "==":
+          return EQ;
+        case "!=":
+          return NE;
         default:
-          throw new RuntimeException("Unknown operator: " + operator);
+          return UNKNOWN;
+      }
+    }
+
+    Node getLeft() {
+      return left;
+    }
+
+    String getOperator() {
+      return operator;
+    }
+
+    Node getRight() {
+      return right;
+    }
+
+    @Override
+    Object evaluate(Frame frame) {
+      if (isIntTyped()) {
+        return evaluateInt(frame);
+      }
+      if (isBooleanTyped()) {
+        return evaluateBoolean(frame);
+      }
+      left.evaluate(frame);
+      right.evaluate(frame);
+      throw new RuntimeException("Unknown operator: " + operator);
+    }
+
+    @Override
+    public int evaluateInt(Frame frame) {
+      if (!isIntTyped()) {
+        return super.evaluateInt(frame);
+      }
+      long operands = intOperands(frame);
+      int leftVal = (int) (operands >>> 32);
+      int rightVal = (int) operands;
+      switch (op) {
+        case ADD:
+          return leftVal + rightVal;
+        case SUB:
+          return leftVal - rightVal;
+        case MUL:
+          return leftVal * rightVal;
+        case DIV:
+          return leftVal / rightVal;
+        default:
+          return leftVal % rightVal;
+      }
+    }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) {
+      switch (op) {
+        case LE:
+        case GE: {
+          long operands = intOperands(frame);
+          int leftVal = (int) (operands >>> 32);
+          int rightVal = (int) operands;
+          return op == LE ? leftVal <= rightVal : leftVal >= rightVal;
+        }
+        case EQ:
+        case NE: {
+          boolean equal;
+          if (leftIntTyped && rightIntTyped) {
+            equal = left.evaluateInt(frame) == right.evaluateInt(frame);
+          } else if (booleanOperands) {
+            equal = left.evaluateBoolean(frame) == right.evaluateBoolean(frame);
+          } else {
+            equal = dynamicEquals(frame);
+          }
+          return op == EQ ? equal : !equal;
+        }
+        default:
+          return super.evaluateBoolean(frame);
+      }
+    }
+
+    @Override
+    boolean isIntTyped() {
+      return op >= ADD && op <= MOD;
+    }
+
+    @Override
+    boolean isBooleanTyped() {
+      return op >= LE;
+    }
+
+    // Both operands as ints, left in the high half. An operand that may not be an int is
+    // cast only after both sides are evaluated, as in the boxed evaluation, so errors
+    // surface in the same order.
+    private long intOperands(Frame frame) {
+      if (leftIntTyped) {
+        int leftVal = left.evaluateInt(frame);
+        return pack(leftVal, right.evaluateInt(frame));
+      }
+      if (state == TypeFeedback.INT) {
+        return speculativeIntOperands(frame);
+      }
+      Object boxedLeft = left.evaluate(frame);
+      if (rightIntTyped) {
+        int rightVal = right.evaluateInt(frame);
+        if (state == TypeFeedback.UNINITIALIZED) {
+          specialize(boxedLeft, Integer.valueOf(0));
+        }
+        return pack((Integer) boxedLeft, rightVal);
+      }
+      Object boxedRight = right.evaluate(frame);
+      if (state == TypeFeedback.UNINITIALIZED) {
+        specialize(boxedLeft, boxedRight);
+      }
+      return pack((Integer) boxedLeft, (Integer) boxedRight);
+    }
+
+    // Int specialization: no boxed values while both sides keep producing ints. A failed
+    // guard hands over the value it saw, so nothing is evaluated twice.
+    private long speculativeIntOperands(Frame frame) {
+      int leftVal;
+      try {
+        leftVal = left.speculateInt(frame);
+      } catch (UnexpectedResultException e) {
+        state = TypeFeedback.deoptimize();
+        Object boxedRight = right.evaluate(frame);
+        return pack((Integer) e.getResult(), (Integer) boxedRight);
+      }
+      try {
+        return pack(leftVal, right.speculateInt(frame));
+      } catch (UnexpectedResultException e) {
+        state = TypeFeedback.deoptimize();
+        return pack(leftVal, (Integer) e.getResult());
+      }
+    }
+
+    // == and != where at least one operand's type is only known at run time
+    private boolean dynamicEquals(Frame frame) {
+      if (state == TypeFeedback.INT) {
+        int leftVal;
+        try {
+          leftVal = left.speculateInt(frame);
+        } catch (UnexpectedResultException e) {
+          state = TypeFeedback.deoptimize();
+          return Objects.equals(e.getResult(), right.evaluate(frame));
+        }
+        try {
+          return leftVal == right.speculateInt(frame);
+        } catch (UnexpectedResultException e) {
+          state = TypeFeedback.deoptimize();
+          return Objects.equals(leftVal, e.getResult());
+        }
+      }
+      if (state == TypeFeedback.BOOLEAN) {
+        boolean leftVal;
+        try {
+          leftVal = left.speculateBoolean(frame);
+        } catch (UnexpectedResultException e) {
+          state = TypeFeedback.deoptimize();
+          return Objects.equals(e.getResult(), right.evaluate(frame));
+        }
+        try {
+          return leftVal == right.speculateBoolean(frame);
+        } catch (UnexpectedResultException e) {
+          state = TypeFeedback.deoptimize();
+          return Objects.equals(leftVal, e.getResult());
+        }
+      }
+      Object boxedLeft = left.evaluate(frame);
+      Object boxedRight = right.evaluate(frame);
+      if (state == TypeFeedback.UNINITIALIZED) {
+        specialize(boxedLeft, boxedRight);
+      }
+      return Objects.equals(boxedLeft, boxedRight);
+    }
+
+    private void specialize(Object boxedLeft, Object boxedRight) {
+      byte kind = TypeFeedback.kindOf(boxedLeft);
+      if (kind != TypeFeedback.kindOf(boxedRight) || kind == TypeFeedback.BOOLEAN && op != EQ && op != NE) {
+        kind = TypeFeedback.GENERIC;
+      }
+      state = TypeFeedback.specialize(kind);
+    }
+
+    private static long pack(int leftVal, int rightVal) {
+      return (long) leftVal << 32 | (rightVal & 0xFFFFFFFFL);
+    }
+  }
+
+  // && and || only evaluate the right side when the left one does not decide the result
+  static class LogicalNode extends Node {
+    private final Node left;
+    private final String operator;
+    private final Node right;
+    private final boolean and;
+
+    LogicalNode(Node left, String operator, Node right) {
+      this.left = left;
+      this.operator = operator;
+      this.right = right;
+      this.and = operator.equals("&&");
+    }
+
+    Node getLeft() {
+      return left;
+    }
+
+    String getOperator() {
+      return operator;
+    }
+
+    Node getRight() {
+      return right;
+    }
+
+    @Override
+    Object evaluate(Frame frame) {
+      return evaluateBoolean(frame);
+    }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) {
+      boolean leftVal = asBoolean(left, frame);
+      if (and ? !leftVal : leftVal) {
+        return leftVal;
+      }
+      return asBoolean(right, frame);
+    }
+
+    @Override
+    boolean isBooleanTyped() {
+      return true;
+    }
+
+    private boolean asBoolean(Node operand, Frame frame) {
+      if (operand.isBooleanTyped()) {
+        return operand.evaluateBoolean(frame);
+      }
+      Object value = operand.evaluate(frame);
+      if (!(value instanceof Boolean)) {
+        throw new RuntimeException("Operator " + operator + " expects boolean operands");
+      }
+      return (Boolean) value;
+    }
+  }
+
+  static class UnaryNode extends Node {
+    private final String operator;
+    private final Node operand;
+    private final boolean negate;
+
+    UnaryNode(String operator, Node operand) {
+      this.operator = operator;
+      this.operand = operand;
+      this.negate = operator.equals("-");
+    }
+
+    String getOperator() {
+      return operator;
+    }
+
+    Node getOperand() {
+      return operand;
+    }
+
+    @Override
+    Object evaluate(Frame frame) {
+      if (negate) {
+        return evaluateInt(frame);
       }
+      operand.evaluate(frame);
+      throw new RuntimeException("Unknown operator: " + operator);
+    }
+
+    @Override
+    public int evaluateInt(Frame frame) {
+      return negate ? -operand.evaluateInt(frame) : super.evaluateInt(frame);
+    }
+
+    @Override
+    boolean isIntTyped() {
+      return negate;
+    }
+  }
+
+  // Left behind by AstOptimizer where an arithmetic identity drops the operation:
+  // the operand must still be an Integer, and the result may be a fixed value (x * 0)
+  static class IntCheckNode extends Node {
+    private final Node operand;
+    private final Integer result;
+
+    IntCheckNode(Node operand, Integer result) {
+      this.operand = operand;
+      this.result = result;
+    }
+
+    Node getOperand() {
+      return operand;
+    }
+
+    Integer getResult() {
+      return result;
+    }
+
+    @Override
+    Object evaluate(Frame frame) {
+      Object value = operand.evaluate(frame);
+      // Unboxing fails the same way the arithmetic on this operand would have, null included
+      ((Integer) value).intValue();
+      return result != null ? result : value;
+    }
+
+    @Override
+    public int evaluateInt(Frame frame) {
+      int value = operand.evaluateInt(frame);
+      return result != null ? result : value;
+    }
+
+    @Override
+    boolean isIntTyped() {
+      return true;
     }
   }
 
   public Parser(List<String> tokens) {
+    this(tokens, new Scope());
+  }
+
+  public Parser(List<String> tokens, Scope scope) {
     this.tokens = tokens;
+    this.scope = scope;
+  }
+
+  public Scope getScope() {
+    return scope;
   }
 
   private String peek() {
@@ -94,6 +590,16 @@ public class Parser {
     return false;
   }
 
+  // Parses one statement: an expression with an optional trailing ';'
+  public Node parse() {
+    Node node = peek() != null && peek().equals("SYMBOL:@") ? parseDeadline() : parseExpression();
+    match("OPERATOR:;");
+    if (peek() != null) {
+      throw new RuntimeException("Unexpected token: " + peek());
+    }
+    return node;
+  }
+
   private Node parseDeadline() {
     // Expect @Deadline(ms=X)
     if (!match("SYMBOL:@")) {
@@ -158,7 +664,8 @@ public class Parser {
 
     if (match("IDENTIFIER:")) {
       String identifier = tokens.get(current - 1).substring(11);
-      return new VariableNode(identifier);
+      int symbol = Symbols.GLOBAL.intern(identifier);
+      return new VariableNode(symbol, scope.resolve(symbol));
     }
 
     if (match("SYMBOL:(")) {
@@ -172,51 +679,157 @@ public class Parser {
     throw new RuntimeException("Unexpected token: " + peek());
   }
 
-  // Time-travel debugging support
-  public void checkpoint() {
-    executionHistory.add(symbolTable.clone());
+  // Time-travel debugging support, over the frame the caller evaluates with
+  public void checkpoint(Frame frame) {
+    executionHistory.add(frame.copy());
     checkpointCounter++;
   }
 
-  public void stepBack() {
+  public void stepBack(Frame frame) {
     if (checkpointCounter > 0) {
       checkpointCounter--;
-      symbolTable.clear();
-      symbolTable.putAll((Map<String, Object>) executionHistory.get(checkpointCounter));
+      frame.restore(executionHistory.get(checkpointCounter));
     }
   }
 
-  public void replay(int steps) {
+  public void replay(Frame frame, int steps) {
     if (checkpointCounter + steps < executionHistory.size()) {
       checkpointCounter += steps;
-      symbolTable.clear();
-      symbolTable.putAll((Map<String, Object>) executionHistory.get(checkpointCounter));
+      frame.restore(executionHistory.get(checkpointCounter));
     }
   }
 
   static class NumberNode extends Node {
     private final int value;
+    // Boxed once, for callers that still go through evaluate()
+    private final Integer boxed;
 
     NumberNode(int value) {
       this.value = value;
+      this.boxed = value;
+    }
+
+    int getValue() {
+      return value;
+    }
+
+    @Override
+    Object evaluate(Frame frame) {
+      return boxed;
+    }
+
+    @Override
+    public int evaluateInt(Frame frame) {
+      return value;
+    }
+
+    @Override
+    boolean isIntTyped() {
+      return true;
+    }
+  }
+
+  static class BooleanNode extends Node {
+    private final boolean value;
+
+    BooleanNode(boolean value) {
+      this.value = value;
+    }
+
+    boolean getValue() {
+      return value;
     }
 
     @Override
-    Object evaluate() {
+    Object evaluate(Frame frame) {
       return value;
     }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) {
+      return value;
+    }
+
+    @Override
+    boolean isBooleanTyped() {
+      return true;
+    }
   }
 
+  // Specializes on the kind of value its slot holds; a read of another kind deoptimizes it
   static class VariableNode extends Node {
-    private final String name;
+    private final int symbol;
+    private final int slot;
+    private byte state = TypeFeedback.UNINITIALIZED;
 
-    VariableNode(String name) {
-      this.name = name;
+    VariableNode(int symbol, int slot) {
+      this.symbol = symbol;
+      this.slot = slot;
+    }
+
+    int getSymbol() {
+      return symbol;
+    }
+
+    int getSlot() {
+      return slot;
+    }
+
+    byte getState() {
+      return state;
     }
 
     @Override
-    Object evaluate() {
-      return symbolTable.get(name);
+    Object evaluate(Frame frame) {
+      Object value = frame.get(slot);
+      if (state != TypeFeedback.GENERIC) {
+        observe(TypeFeedback.kindOf(value));
+      }
+      return value;
+    }
+
+    // Values are stored boxed, so this only unboxes
+    @Override
+    public int evaluateInt(Frame frame) {
+      Object value = frame.get(slot);
+      if (state != TypeFeedback.INT) {
+        observe(TypeFeedback.kindOf(value));
+      }
+      return (Integer) value;
+    }
+
+    @Override
+    int speculateInt(Frame frame) throws UnexpectedResultException {
+      Object value = frame.get(slot);
+      if (value instanceof Integer) {
+        if (state != TypeFeedback.INT) {
+          observe(TypeFeedback.INT);
+        }
+        return (Integer) value;
+      }
+      observe(TypeFeedback.kindOf(value));
+      throw new UnexpectedResultException(value);
+    }
+
+    @Override
+    boolean speculateBoolean(Frame frame) throws UnexpectedResultException {
+      Object value = frame.get(slot);
+      if (value instanceof Boolean) {
+        if (state != TypeFeedback.BOOLEAN) {
+          observe(TypeFeedback.BOOLEAN);
+        }
+        return (Boolean) value;
+      }
+      observe(TypeFeedback.kindOf(value));
+      throw new UnexpectedResultException(value);
+    }
+
+    private void observe(byte kind) {
+      if (state == TypeFeedback.UNINITIALIZED) {
+        state = TypeFeedback.specialize(kind);
+      } else if (state != kind && state != TypeFeedback.GENERIC) {
+        state = TypeFeedback.deoptimize();
+      }
     }
   }
 }
\ No newline at end of file
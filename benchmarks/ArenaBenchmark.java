@@ -0,0 +1,97 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import Interpreter.*;
+
+import java.util.concurrent.TimeUnit;
+
+// A method that allocates a window of temporary readings per call and publishes a
+// summary to a global every SUMMARY_INTERVAL calls, run with and without activation
+// arenas. collectedObjects counts what the collector had to sweep; the heap size each
+// iteration ends with is printed as the steady state.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ArenaBenchmark {
+  private static final int WINDOW = 32;
+  private static final int SUMMARY_INTERVAL = 16;
+
+  @Param({ "false", "true" })
+  private boolean arenas;
+
+  private ExecutionEnvironment env;
+  private int calls;
+  private long freedBefore;
+
+  @Setup
+  public void setup() {
+    int[] slots = new int[WINDOW + 1];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = Symbols.GLOBAL.intern("reading" + i);
+    }
+    env = new ExecutionEnvironment(4 * 1024 * 1024, 256 * 1024);
+    env.setArenaAllocation(arenas);
+    env.registerMethod("aggregate", new MethodNode("aggregate", new String[] { "int" }, "int") {
+      @Override
+      public Object execute(ExecutionEnvironment env, Object... args) {
+        int base = (Integer) args[0];
+        Object[] window = new Object[WINDOW];
+        for (int i = 0; i < WINDOW; i++) {
+          window[i] = env.allocateObject(base + i);
+          // Locals are what keeps a script's temporaries alive without arenas
+          setLocalVariable(slots[i], window[i]);
+        }
+        long readings = env.allocateObject(window);
+        setLocalVariable(slots[WINDOW], readings);
+        int sum = 0;
+        for (Object reading : (Object[]) env.getObject(readings)) {
+          sum += (Integer) env.getObject((Long) reading);
+        }
+        if (base % SUMMARY_INTERVAL == 0) {
+          env.setGlobalVariable("summary", env.allocateObject(new Object[] { readings, env.allocateObject(sum) }));
+        }
+        return sum;
+      }
+    });
+  }
+
+  @TearDown
+  public void tearDown() {
+    env.shutdown();
+  }
+
+  @TearDown(Level.Iteration)
+  public void reportHeap() {
+    System.out.println("heap objects: " + env.getHeapObjectCount() + ", off-heap bytes: " +
+        env.getOffHeapAllocator().getUsedBytes() + ", promoted: " + env.getPromotionCount());
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class GcWork {
+    public long collectedObjects;
+  }
+
+  @Benchmark
+  public Object testActivation(GcWork work) {
+    Object result = env.executeMethod("aggregate", calls++);
+    long freed = env.getCollector().getFreedCount();
+    work.collectedObjects += freed - freedBefore;
+    freedBefore = freed;
+    return result;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(ArenaBenchmark.class.getSimpleName())
+        .build();
+    new Runner(opt).run();
+  }
+}
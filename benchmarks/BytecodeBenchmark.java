@@ -0,0 +1,70 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import Interpreter.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Tree-walking evaluate() vs the register VM vs JIT-compiled code on the same unoptimized trees
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BytecodeBenchmark {
+  @Param({ "arithmetic", "loop" })
+  private String script;
+
+  private Parser.Node tree;
+  private Bytecode program;
+  private JitCompiler.CompiledCode compiled;
+
+  @Setup
+  public void setup() {
+    if (script.equals("arithmetic")) {
+      tree = new PrattParser(new Lexers(arithmetic(400)).tokenizeToBuffer()).parse();
+    } else {
+      Parser.Node condition = new PrattParser(new Lexers("1 <= 2 && 3 >= 2").tokenizeToBuffer()).parse();
+      Parser.Node body = new PrattParser(new Lexers(arithmetic(20)).tokenizeToBuffer()).parse();
+      tree = new EmbeddedLoopNode(condition, body, 10000, 60000);
+    }
+    program = BytecodeCompiler.compile(tree);
+    compiled = JitCompiler.compile(tree);
+  }
+
+  private static String arithmetic(int terms) {
+    StringBuilder sb = new StringBuilder("1");
+    for (int i = 1; i < terms; i++) {
+      sb.append(i % 3 == 0 ? " - " : " + ").append('(').append(i).append(" * 7 % 5 + ").append(i).append(" / 3)");
+    }
+    return "(" + sb + ") >= 0 || 1 != 2";
+  }
+
+  @Benchmark
+  public void testTreeWalk(Blackhole bh) {
+    bh.consume(tree.run());
+  }
+
+  @Benchmark
+  public void testRegisterVM(Blackhole bh) {
+    bh.consume(RegisterVM.execute(program));
+  }
+
+  @Benchmark
+  public void testJit(Blackhole bh) {
+    bh.consume(compiled.execute(Frame.EMPTY));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(BytecodeBenchmark.class.getSimpleName())
+        .build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,120 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import Interpreter.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Host-to-script calls by name through executeMethod vs a prepared CallHandle. The
+// argument stays above the Integer cache range, so every boxed call allocates. The
+// batch benchmarks report time per element of a BATCH-reading column, sequential and
+// split across the fork-join pool.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CallHandleBenchmark {
+  private static final int BATCH = 10_000;
+
+  private Interpreter interpreter;
+  private CallHandle increment;
+  private CallHandle pureIncrement;
+  private int value = 1000;
+  private final int[] readings = new int[BATCH];
+  private final int[] results = new int[BATCH];
+
+  @Setup
+  public void setup() {
+    interpreter = new Interpreter();
+    ClassNode testClass = new ClassNode("TestClass");
+    testClass.addMethod(new MethodNode("increment", new String[] { "int" }, "int") {
+      @Override
+      public Object execute(ExecutionEnvironment env, Object... args) {
+        return (Integer) args[0] + 1;
+      }
+
+      @Override
+      public int executeInt(ExecutionEnvironment env, int arg) {
+        return arg + 1;
+      }
+    });
+    testClass.addMethod(new MethodNode("pureIncrement", new String[] { "int" }, "int") {
+      @Override
+      public Object execute(ExecutionEnvironment env, Object... args) {
+        return (Integer) args[0] + 1;
+      }
+
+      @Override
+      public int executeInt(ExecutionEnvironment env, int arg) {
+        return arg + 1;
+      }
+
+      @Override
+      public boolean isSideEffectFree() {
+        return true;
+      }
+    });
+    interpreter.loadClass(testClass);
+    increment = interpreter.lookup("TestClass", "increment");
+    pureIncrement = interpreter.lookup("TestClass", "pureIncrement");
+    for (int i = 0; i < BATCH; i++) {
+      readings[i] = 1000 + i;
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    interpreter.shutdown();
+  }
+
+  @Benchmark
+  public Object testExecuteMethod() {
+    return interpreter.executeMethod("TestClass", "increment", value);
+  }
+
+  @Benchmark
+  public Object testHandleInvoke() {
+    return increment.invoke(value);
+  }
+
+  @Benchmark
+  public int testHandleInvokeInt() {
+    return increment.invokeInt(value);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public int[] testExecuteMethodPerElement() {
+    for (int i = 0; i < BATCH; i++) {
+      results[i] = (Integer) interpreter.executeMethod("TestClass", "increment", readings[i]);
+    }
+    return results;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public int[] testBatch() {
+    increment.invokeIntBatch(readings, results);
+    return results;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public int[] testParallelBatch() {
+    pureIncrement.invokeIntBatch(readings, results);
+    return results;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(CallHandleBenchmark.class.getSimpleName())
+        .build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,125 @@
+package benchmarks;
+
+import Interpreter.*;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Mutator threads against the concurrent collector. Each thread owns a set of live
+// objects and keeps moving them between a global, a method local, a class field and a
+// heap cell while allocating garbage, and after every move checks that none of its live
+// objects was reclaimed. Reports the marker's pauses and exits with status 1 if any live
+// object went missing. A new object is kept in a HandleScope only until it is stored;
+// from then on the thread's handle to it is not a root.
+// Usage: ConcurrentGCStressTest [threads] [seconds] [liveObjectsPerThread]
+public class ConcurrentGCStressTest {
+  private static final int GARBAGE_PER_MOVE = 16;
+
+  public static void main(String[] args) throws InterruptedException {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int live = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+    ExecutionEnvironment env = new ExecutionEnvironment(16 * 1024 * 1024, 5_000);
+    IncrementalCollector collector = env.getCollector();
+    collector.setConcurrent(true);
+    long end = System.currentTimeMillis() + seconds * 1000L;
+    AtomicLong moves = new AtomicLong();
+    AtomicLong lost = new AtomicLong();
+
+    Thread[] mutators = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      int id = t;
+      mutators[t] = new Thread(() -> mutate(env, id, live, end, moves, lost), "mutator-" + t);
+      mutators[t].start();
+    }
+    for (Thread mutator : mutators) {
+      mutator.join();
+    }
+    env.shutdown();
+
+    long[] pauses = collector.getRecentPauseNanos();
+    System.out.printf("%d threads, %d moves, %d cycles, %d objects freed, %d live objects lost%n",
+        threads, moves.get(), collector.getCycleCount(), collector.getFreedCount(), lost.get());
+    if (pauses.length > 0) {
+      System.out.printf("Pauses (last %d of %d): p50 %.1f us, p99 %.1f us, max %.1f us%n",
+          pauses.length, collector.getPauseCount(), percentile(pauses, 0.50) / 1000.0,
+          percentile(pauses, 0.99) / 1000.0, collector.getMaxPauseNanos() / 1000.0);
+    }
+    if (lost.get() > 0) {
+      System.exit(1);
+    }
+  }
+
+  // Object i of a thread lives in one of four homes: 0 the global "live<id>_<i>", 1 a
+  // local of the thread's method, 2 a field of its class, 3 element i of its heap cell
+  private static void mutate(ExecutionEnvironment env, int id, int live, long end,
+      AtomicLong moves, AtomicLong lost) {
+    MethodNode method = new MethodNode("holder" + id, new String[0], "void") {
+      @Override
+      public Object execute(ExecutionEnvironment env, Object... args) {
+        return null;
+      }
+    };
+    env.registerMethod("holder" + id, method);
+    ClassNode clazz = new ClassNode("Holder" + id);
+    env.registerClass("Holder" + id, clazz);
+    int[] symbols = new int[live];
+    for (int i = 0; i < live; i++) {
+      symbols[i] = Symbols.GLOBAL.intern("live" + id + "_" + i);
+      clazz.addField("live" + id + "_" + i, "long");
+    }
+    Object[] cellContents = new Object[live];
+    long cell;
+    long[] objects = new long[live];
+    int[] homes = new int[live];
+    try (HandleScope scope = env.openHandleScope()) {
+      cell = scope.allocate(cellContents.clone());
+      env.setGlobalVariable("cell" + id, cell);
+      for (int i = 0; i < live; i++) {
+        objects[i] = scope.allocate(new Object[] { scope.allocate(id * live + i) });
+        env.setGlobalVariable(symbols[i], objects[i]);
+      }
+    }
+    Random random = new Random(id);
+    while (System.currentTimeMillis() < end) {
+      int i = random.nextInt(live);
+      int next = (homes[i] + 1 + random.nextInt(3)) % 4;
+      // Stored in its next home before it leaves the current one
+      store(env, method, clazz, cell, cellContents, symbols[i], i, next, objects[i]);
+      store(env, method, clazz, cell, cellContents, symbols[i], i, homes[i], 0L);
+      homes[i] = next;
+      for (int g = 0; g < GARBAGE_PER_MOVE; g++) {
+        env.allocateObject(new Object[] { env.allocateObject(g) });
+      }
+      for (int j = 0; j < live; j++) {
+        Object[] fields = (Object[]) env.getObject(objects[j]);
+        if (fields == null || !Integer.valueOf(id * live + j).equals(env.getObject((Long) fields[0]))) {
+          lost.incrementAndGet();
+        }
+      }
+      moves.incrementAndGet();
+    }
+  }
+
+  private static void store(ExecutionEnvironment env, MethodNode method, ClassNode clazz, long cell,
+      Object[] cellContents, int symbol, int i, int home, long value) {
+    if (home == 0) {
+      env.setGlobalVariable(symbol, value);
+    } else if (home == 1) {
+      method.setLocalVariable(symbol, value);
+    } else if (home == 2) {
+      clazz.getField(symbol).setValue(value);
+    } else {
+      // Stored containers are never mutated in place
+      cellContents[i] = value;
+      env.setObject(cell, cellContents.clone());
+    }
+  }
+
+  // pauses are sorted ascending
+  private static long percentile(long[] pauses, double p) {
+    int index = (int) Math.ceil(p * pauses.length) - 1;
+    return pauses[Math.max(0, Math.min(index, pauses.length - 1))];
+  }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import Interpreter.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Allocation per evaluated expression: read gc.alloc.rate.norm (bytes/op) from the GC profiler.
+// Values stay above the Integer cache range, so every boxed intermediate would allocate.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EvaluationAllocationBenchmark {
+  private static final String SENSOR_EXPRESSION =
+      "((4095 * 1000 - 2048 * 3) / 7 + 1500 % 1024) * 3 - (65535 - 4095 * 2) / 3";
+  private static final String THRESHOLD_EXPRESSION =
+      SENSOR_EXPRESSION + " >= 500000 && 4095 * 1000 != 2048 * 2000";
+
+  private Parser.Node sensor;
+  private Parser.Node threshold;
+
+  @Setup
+  public void setup() {
+    sensor = new PrattParser(new Lexers(SENSOR_EXPRESSION).tokenizeToBuffer()).parse();
+    threshold = new PrattParser(new Lexers(THRESHOLD_EXPRESSION).tokenizeToBuffer()).parse();
+  }
+
+  // Boxes the result once, as a value returned to executeMethod would be
+  @Benchmark
+  public void testEvaluateBoxed(Blackhole bh) {
+    bh.consume(sensor.run());
+  }
+
+  @Benchmark
+  public int testEvaluateInt() {
+    return sensor.evaluateInt();
+  }
+
+  @Benchmark
+  public boolean testEvaluateBoolean() {
+    return threshold.evaluateBoolean();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(EvaluationAllocationBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(opt).run();
+  }
+}
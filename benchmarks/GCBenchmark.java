@@ -7,7 +7,9 @@ import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import Interpreter.*;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @State(Scope.Benchmark)
 @BenchmarkMode(Mode.AverageTime)
@@ -18,10 +20,22 @@ import java.util.concurrent.TimeUnit;
 public class GCBenchmark {
   private ExecutionEnvironment env;
   private static final int OBJECT_COUNT = 10000;
+  // The heap ExecutionEnvironment used before HandleTable: boxed ids in a map
+  private ConcurrentHashMap<Long, Object> mapHeap;
+  private AtomicLong nextObjectId;
+  private HandleTable table;
 
   @Setup
   public void setup() {
     env = new ExecutionEnvironment(1024 * 1024, 512 * 1024); // 1MB heap, 512KB threshold
+    mapHeap = new ConcurrentHashMap<>();
+    nextObjectId = new AtomicLong(1);
+    table = new HandleTable();
+  }
+
+  @TearDown
+  public void tearDown() {
+    env.shutdown();
   }
 
   @Benchmark
@@ -32,6 +46,38 @@ public class GCBenchmark {
     }
   }
 
+  // Allocate, look up and free a batch, as a collection cycle would, on each heap layout
+  @Benchmark
+  public long testMapHeap() {
+    long first = nextObjectId.get();
+    for (int i = 0; i < OBJECT_COUNT; i++) {
+      long id = nextObjectId.getAndIncrement();
+      mapHeap.put(id, new byte[100]);
+    }
+    long found = 0;
+    for (long id = first; id < first + OBJECT_COUNT; id++) {
+      found += ((byte[]) mapHeap.get(id)).length;
+    }
+    mapHeap.keySet().removeIf(id -> true);
+    return found;
+  }
+
+  @Benchmark
+  public long testHandleTable() {
+    long[] handles = new long[OBJECT_COUNT];
+    for (int i = 0; i < OBJECT_COUNT; i++) {
+      handles[i] = table.allocate(new byte[100]);
+    }
+    long found = 0;
+    for (long handle : handles) {
+      found += ((byte[]) table.get(handle)).length;
+    }
+    for (long handle : handles) {
+      table.free(handle);
+    }
+    return found;
+  }
+
   @Benchmark
     public void testHotSpotGC() {
         // Same test but using HotSpot's GC
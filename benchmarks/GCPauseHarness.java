@@ -0,0 +1,62 @@
+package benchmarks;
+
+import Interpreter.*;
+
+import java.util.Arrays;
+
+// Pause distribution of the incremental collector under a sustained allocation rate.
+// Every pause is a root scan or one collector step; the mutator keeps a rotating live
+// set reachable from globals, so cycles have real marking and sweeping to do.
+// Usage: GCPauseHarness [workBudget] [seconds] [allocationsPerMs]
+public class GCPauseHarness {
+  private static final int OBJECT_SIZE = 100;
+  private static final int LIVE_SLOTS = 1000;
+
+  public static void main(String[] args) throws InterruptedException {
+    int budget = args.length > 0 ? Integer.parseInt(args[0]) : IncrementalCollector.DEFAULT_WORK_BUDGET;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int perMs = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+    ExecutionEnvironment env = new ExecutionEnvironment(1024 * 1024, 20_000);
+    IncrementalCollector collector = env.getCollector();
+    collector.setWorkBudget(budget);
+    long end = System.currentTimeMillis() + seconds * 1000L;
+    long allocated = 0;
+
+    while (System.currentTimeMillis() < end) {
+      long tick = System.nanoTime();
+      for (int i = 0; i < perMs; i++) {
+        long id = env.allocateObject(new byte[OBJECT_SIZE]);
+        // Every tenth object stays live until its slot is reused
+        if (allocated % 10 == 0) {
+          long list = env.allocateObject(new Object[] { id });
+          env.setGlobalVariable("live" + (allocated / 10 % LIVE_SLOTS), list);
+        }
+        allocated++;
+      }
+      long spare = 1_000_000 - (System.nanoTime() - tick);
+      if (spare > 0) {
+        Thread.sleep(spare / 1_000_000, (int) (spare % 1_000_000));
+      }
+    }
+    env.shutdown();
+
+    long[] pauses = collector.getRecentPauseNanos();
+    if (pauses.length == 0) {
+      System.out.println("No collector pauses; raise the allocation rate or duration");
+      return;
+    }
+    System.out.printf("Budget %d objects/step, %d allocations, %d cycles, %d objects freed%n",
+        budget, allocated, collector.getCycleCount(), collector.getFreedCount());
+    System.out.printf("Pauses (last %d of %d): p50 %.1f us, p99 %.1f us, max %.1f us (lifetime max %.1f us)%n",
+        pauses.length, collector.getPauseCount(), percentile(pauses, 0.50) / 1000.0,
+        percentile(pauses, 0.99) / 1000.0, pauses[pauses.length - 1] / 1000.0,
+        collector.getMaxPauseNanos() / 1000.0);
+  }
+
+  // pauses are sorted ascending
+  private static long percentile(long[] pauses, double p) {
+    int index = (int) Math.ceil(p * pauses.length) - 1;
+    return pauses[Math.max(0, Math.min(index, pauses.length - 1))];
+  }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import Interpreter.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IncrementalBenchmark {
+  @Param({ "10000", "100000" })
+  private int lines;
+
+  private String source;
+  private IncrementalDocument document;
+  private int editOffset;
+
+  @Setup
+  public void setup() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      sb.append("(a + ").append(i).append(") * b - 3; // line ").append(i).append('\n');
+    }
+    source = sb.toString();
+    document = new IncrementalDocument(source);
+    document.statements();
+    // Edit the number literal in the middle line
+    editOffset = source.indexOf("(a + " + (lines / 2) + ")") + 5;
+  }
+
+  @Benchmark
+  public void testFullRelexAndParse(Blackhole bh) {
+    bh.consume(new IncrementalDocument(source).statements());
+  }
+
+  @Benchmark
+  public void testIncrementalEdit(Blackhole bh) {
+    // Insert and remove a digit so the document stays the same size across invocations
+    document.applyEdit(editOffset, 0, "7");
+    bh.consume(document.statementAt(editOffset));
+    document.applyEdit(editOffset, 1, "");
+    bh.consume(document.statementAt(editOffset));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(IncrementalBenchmark.class.getSimpleName())
+        .build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import Interpreter.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LexerBenchmark {
+  private static final String SNIPPET =
+      "int x = 0b1010 + 0x1AF; String msg = \"Hello\\nWorld\"; // comment\n" +
+      "if (x >= 10) { total = total * 31 + x % 7; } /* block */ while (i <= 1_000) { i = i + 1; }\n";
+
+  @Param({ "100", "10000" })
+  private int lines;
+
+  private String source;
+
+  @Setup
+  public void setup() {
+    StringBuilder sb = new StringBuilder(SNIPPET.length() * lines);
+    for (int i = 0; i < lines; i++) {
+      sb.append(SNIPPET);
+    }
+    source = sb.toString();
+  }
+
+  @Benchmark
+  public void testStringTokens(Blackhole bh) {
+    bh.consume(new Lexers(source).tokenize());
+  }
+
+  @Benchmark
+  public void testTypedTokens(Blackhole bh) {
+    bh.consume(new Lexers(source).tokenizeToBuffer());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(LexerBenchmark.class.getSimpleName())
+        .build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import Interpreter.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Lexer throughput in MB/s of source: read the "megabytes" secondary result
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LexerThroughputBenchmark {
+  private static final String ASCII_LINE =
+      "int sensorValue = readSensor(\"temp\") * 0x1F + offset_2; // sample\n" +
+      "if (sensorValue >= threshold && enabled) { counter = counter % 7; }\n";
+  private static final String UNICODE_LINE =
+      "int température = mesureé * 0x1F + décalage; // échantillon\n" +
+      "if (température >= seuil && actif) { compteur = compteur % 7; }\n";
+
+  @Param({ "ascii", "unicode" })
+  private String input;
+
+  private String source;
+
+  @Setup
+  public void setup() {
+    String line = input.equals("ascii") ? ASCII_LINE : UNICODE_LINE;
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < 4 * 1024 * 1024) {
+      sb.append(line);
+    }
+    source = sb.toString();
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Bytes {
+    public double megabytes;
+  }
+
+  @Benchmark
+  public void testLexThroughput(Bytes bytes, Blackhole bh) {
+    bh.consume(new Lexers(source).tokenizeToBuffer());
+    bytes.megabytes += source.length() / (1024.0 * 1024.0);
+  }
+
+  @Benchmark
+  public void testParallelLexThroughput(Bytes bytes, Blackhole bh) {
+    bh.consume(new Lexers(source).tokenizeParallelToBuffer(ForkJoinPool.commonPool()));
+    bytes.megabytes += source.length() / (1024.0 * 1024.0);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(LexerThroughputBenchmark.class.getSimpleName())
+        .build();
+    new Runner(opt).run();
+  }
+}
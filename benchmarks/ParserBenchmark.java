@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import Interpreter.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Parse throughput in tokens/s: read the "tokens" secondary result. Both parsers get
+// pre-lexed input and an expression the list-based Parser can handle (+ - * / only).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParserBenchmark {
+  @Param({ "100000" })
+  private int terms;
+
+  private TokenBuffer tokenBuffer;
+  private List<String> tokenStrings;
+
+  @Setup
+  public void setup() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < terms; i++) {
+      if (i > 0) {
+        sb.append(i % 2 == 0 ? " + " : " - ");
+      }
+      sb.append("(a").append(i % 10).append(" + ").append(i).append(") * b / 3");
+    }
+    sb.append(';');
+    tokenBuffer = new Lexers(sb.toString()).tokenizeToBuffer();
+    tokenStrings = tokenBuffer.toStringList();
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Tokens {
+    public double tokens;
+  }
+
+  @Benchmark
+  public void testListParser(Tokens tokens, Blackhole bh) {
+    bh.consume(new Parser(tokenStrings).parse());
+    tokens.tokens += tokenStrings.size();
+  }
+
+  @Benchmark
+  public void testPrattParser(Tokens tokens, Blackhole bh) {
+    bh.consume(new PrattParser(tokenBuffer).parse());
+    tokens.tokens += tokenBuffer.size();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(ParserBenchmark.class.getSimpleName())
+        .build();
+    new Runner(opt).run();
+  }
+}
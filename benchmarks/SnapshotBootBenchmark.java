@@ -0,0 +1,81 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import Interpreter.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Boot time of a bundled script: from source (read + lex + parse) vs from an AST snapshot
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SnapshotBootBenchmark {
+  @Param({ "20000" })
+  private int statements;
+
+  private Path sourceFile;
+  private Path snapshotFile;
+
+  @Setup
+  public void setup() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < statements; i++) {
+      sb.append("(sensor").append(i % 50).append(" + ").append(i).append(") * gain - offset % 7 >= limit")
+          .append(" && enabled; // reading ").append(i).append('\n');
+    }
+    String source = sb.toString();
+    sourceFile = Files.createTempFile("boot", ".src");
+    Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+
+    List<Parser.Node> parsed = new PrattParser(new Lexers(source).tokenizeToBuffer()).parseStatements();
+    snapshotFile = Files.createTempFile("boot", ".ast");
+    AstSnapshot.write(snapshotFile, parsed, List.of());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(sourceFile);
+    Files.delete(snapshotFile);
+  }
+
+  @Benchmark
+  public void testBootFromSource(Blackhole bh) throws IOException {
+    String source = new String(Files.readAllBytes(sourceFile), StandardCharsets.UTF_8);
+    bh.consume(new PrattParser(new Lexers(source).tokenizeToBuffer()).parseStatements());
+  }
+
+  // Open only: statements are decoded when first executed
+  @Benchmark
+  public void testBootFromSnapshot(Blackhole bh) throws IOException {
+    bh.consume(AstSnapshot.open(snapshotFile).getStatements());
+  }
+
+  // Open and decode every statement, the worst case for a lazy load
+  @Benchmark
+  public void testBootFromSnapshotFullDecode(Blackhole bh) throws IOException {
+    AstSnapshot snapshot = AstSnapshot.open(snapshotFile);
+    for (int i = 0; i < snapshot.statementCount(); i++) {
+      bh.consume(snapshot.getStatement(i));
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(SnapshotBootBenchmark.class.getSimpleName())
+        .build();
+    new Runner(opt).run();
+  }
+}